@@ -0,0 +1,213 @@
+package com.capital.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.capital.domain.product.Product;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Read-through cache of products by {@code (merchantId, sku)} and of product lists
+ * by {@code merchantId}. Entries are evicted least recently used beyond
+ * {@code max-entries} and expire after {@code ttl-ms} as a safety net; freshness
+ * comes from the service mutations calling {@link #invalidate(Long, String)}.
+ * <p>
+ * Every merchant maps to a generation counter that invalidation bumps. A loader
+ * that read the database before an invalidation cannot store its result
+ * afterwards, so a slow reader never reinstates a value a writer replaced.
+ * <p>
+ * Metrics: {@code trading.catalog.cache.hits} and {@code .misses} per kind,
+ * {@code .evictions} per cause, and the entry count.
+ */
+@Component
+public class CatalogCache {
+
+	private static final int GENERATION_STRIPES = 1024;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${trading.catalog-cache.max-entries:10000}")
+	private int maxEntries;
+
+	@Value("${trading.catalog-cache.ttl-ms:60000}")
+	private long ttlMs;
+
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+	private Map<Key, Cached> entries;
+
+	private Counter productHits;
+	private Counter productMisses;
+	private Counter listHits;
+	private Counter listMisses;
+	private Counter sizeEvictions;
+	private Counter expiredEvictions;
+	private Counter invalidations;
+
+	@PostConstruct
+	public void init() {
+		entries = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+				if (size() > maxEntries) {
+					sizeEvictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+		productHits = counter("trading.catalog.cache.hits", "kind", "product");
+		productMisses = counter("trading.catalog.cache.misses", "kind", "product");
+		listHits = counter("trading.catalog.cache.hits", "kind", "list");
+		listMisses = counter("trading.catalog.cache.misses", "kind", "list");
+		sizeEvictions = counter("trading.catalog.cache.evictions", "cause", "size");
+		expiredEvictions = counter("trading.catalog.cache.evictions", "cause", "expired");
+		invalidations = counter("trading.catalog.cache.evictions", "cause", "invalidated");
+		Gauge.builder("trading.catalog.cache.size", this, CatalogCache::size).description("Cached catalog entries")
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @param loader fetches the product on a miss; a {@code null} result is not cached
+	 */
+	public Product product(Long merchantId, String sku, Supplier<Product> loader) {
+		if (sku == null) {
+			return loader.get();
+		}
+		return get(new Key(merchantId, sku), loader, productHits, productMisses);
+	}
+
+	/**
+	 * @param loader fetches the merchant's products on a miss; the result is cached as
+	 *        an unmodifiable copy
+	 */
+	public List<Product> products(Long merchantId, Supplier<List<Product>> loader) {
+		return get(new Key(merchantId, null), () -> {
+			List<Product> products = loader.get();
+			return products == null ? null : Collections.unmodifiableList(products);
+		}, listHits, listMisses);
+	}
+
+	/**
+	 * Drops the product and its merchant's list now and, inside a transaction, again
+	 * once it commits, so readers cannot cache a value the transaction is replacing.
+	 */
+	public void invalidate(Long merchantId, String sku) {
+		evict(merchantId, sku);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					evict(merchantId, sku);
+				}
+			});
+		}
+	}
+
+	public int size() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T get(Key key, Supplier<T> loader, Counter hits, Counter misses) {
+		long now = System.currentTimeMillis();
+		synchronized (entries) {
+			Cached entry = entries.get(key);
+			if (entry != null) {
+				if (entry.expiresAt > now) {
+					hits.increment();
+					return (T) entry.value;
+				}
+				entries.remove(key);
+				expiredEvictions.increment();
+			}
+		}
+		misses.increment();
+		int stripe = stripe(key.merchantId);
+		long generation = generations.get(stripe);
+		T value = loader.get();
+		if (value != null) {
+			synchronized (entries) {
+				if (generations.get(stripe) == generation) {
+					entries.put(key, new Cached(value, now + ttlMs));
+				}
+			}
+		}
+		return value;
+	}
+
+	private void evict(Long merchantId, String sku) {
+		generations.incrementAndGet(stripe(merchantId));
+		synchronized (entries) {
+			if (entries.remove(new Key(merchantId, sku)) != null) {
+				invalidations.increment();
+			}
+			if (entries.remove(new Key(merchantId, null)) != null) {
+				invalidations.increment();
+			}
+		}
+	}
+
+	private static int stripe(Long merchantId) {
+		return Math.floorMod(Objects.hashCode(merchantId), GENERATION_STRIPES);
+	}
+
+	private Counter counter(String name, String tag, String value) {
+		return Counter.builder(name).tag(tag, value).register(meterRegistry);
+	}
+
+	private static final class Key {
+		private final Long merchantId;
+		private final String sku;
+
+		Key(Long merchantId, String sku) {
+			this.merchantId = merchantId;
+			this.sku = sku;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return Objects.equals(merchantId, other.merchantId) && Objects.equals(sku, other.sku);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(merchantId, sku);
+		}
+	}
+
+	private static final class Cached {
+		private final Object value;
+		private final long expiresAt;
+
+		Cached(Object value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
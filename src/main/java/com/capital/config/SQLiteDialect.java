@@ -1,15 +1,25 @@
 package com.capital.config;
 import java.sql.Types;
+import java.util.stream.Collectors;
 
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.model.relational.SqlStringGenerationContext;
 import org.hibernate.dialect.Dialect;
 import org.hibernate.dialect.function.SQLFunctionTemplate;
 import org.hibernate.dialect.function.StandardSQLFunction;
 import org.hibernate.dialect.identity.IdentityColumnSupport;
 import org.hibernate.dialect.identity.IdentityColumnSupportImpl;
+import org.hibernate.dialect.unique.DefaultUniqueDelegate;
+import org.hibernate.dialect.unique.UniqueDelegate;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.exception.spi.SQLExceptionConversionDelegate;
+import org.hibernate.mapping.UniqueKey;
 import org.hibernate.type.StandardBasicTypes;
 
 public class SQLiteDialect extends Dialect {
     
+    private static final int SQLITE_CONSTRAINT = 19;
+    
     public SQLiteDialect() {
         registerColumnType(Types.BIT, "integer");
         registerColumnType(Types.TINYINT, "tinyint");
@@ -45,6 +55,23 @@ public class SQLiteDialect extends Dialect {
         return new SQLiteIdentityColumnSupport();
     }
     
+    @Override
+    public UniqueDelegate getUniqueDelegate() {
+        return new SQLiteUniqueDelegate(this);
+    }
+    
+    /**
+     * The SQLite driver reports no SQL state, so constraint failures are
+     * recognised by their result code; they then surface as Spring's
+     * {@code DataIntegrityViolationException} like on other databases.
+     */
+    @Override
+    public SQLExceptionConversionDelegate buildSQLExceptionConversionDelegate() {
+        return (sqlException, message, sql) -> sqlException.getErrorCode() == SQLITE_CONSTRAINT
+                ? new ConstraintViolationException(message, sqlException, sql, null)
+                : null;
+    }
+    
     @Override
     public boolean hasAlterTable() {
         return false;
@@ -72,6 +99,34 @@ public class SQLiteDialect extends Dialect {
         return "";
     }
     
+    /**
+     * SQLite has no {@code ALTER TABLE ... ADD CONSTRAINT}; unique keys are
+     * created as unique indexes instead, idempotently so schema updates can
+     * re-issue them.
+     */
+    public static class SQLiteUniqueDelegate extends DefaultUniqueDelegate {
+        
+        public SQLiteUniqueDelegate(Dialect dialect) {
+            super(dialect);
+        }
+        
+        @Override
+        public String getAlterTableToAddUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata,
+                SqlStringGenerationContext context) {
+            String columns = uniqueKey.getColumns().stream()
+                    .map(column -> column.getQuotedName(dialect))
+                    .collect(Collectors.joining(", "));
+            return "create unique index if not exists " + dialect.quote(uniqueKey.getName()) + " on "
+                    + context.format(uniqueKey.getTable().getQualifiedTableName()) + " (" + columns + ")";
+        }
+        
+        @Override
+        public String getAlterTableToDropUniqueKeyCommand(UniqueKey uniqueKey, Metadata metadata,
+                SqlStringGenerationContext context) {
+            return "drop index if exists " + dialect.quote(uniqueKey.getName());
+        }
+    }
+    
     public static class SQLiteIdentityColumnSupport extends IdentityColumnSupportImpl {
         @Override
         public boolean supportsIdentityColumns() {
@@ -1,26 +1,45 @@
 package com.capital.controller;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Map;
 
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.capital.domain.dto.AddProductRequest;
+import com.capital.domain.dto.BulkRestockRequest;
 import com.capital.domain.dto.CreateMerchantRequest;
 import com.capital.domain.dto.IncreaseStockRequest;
+import com.capital.domain.dto.ProductPage;
 import com.capital.domain.dto.Result;
 import com.capital.domain.merchant.Merchant;
 import com.capital.domain.product.Product;
 import com.capital.exception.StatusCode;
 import com.capital.exception.TradingException;
+import com.capital.importer.ImportFormat;
+import com.capital.importer.ImportReport;
+import com.capital.importer.ProductImporter;
 import com.capital.service.MerchantService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 
 import io.swagger.v3.oas.annotations.Operation;
 
@@ -28,9 +47,17 @@ import io.swagger.v3.oas.annotations.Operation;
 @RequestMapping("/api/v1/merchants")
 public class MerchantController {
 
+	private static final String NDJSON = "application/x-ndjson";
+
 	@Autowired
 	private MerchantService merchantService;
 
+	@Autowired
+	private ProductImporter productImporter;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	@PostMapping("/{merchantId}/products/add")
 	public Result addProduct(@PathVariable Long merchantId, @Valid @RequestBody AddProductRequest request) {
 
@@ -45,6 +72,18 @@ public class MerchantController {
 		}
 	}
 
+	@PostMapping(value = "/{merchantId}/products/import", consumes = { "text/csv", NDJSON })
+	@Operation(summary = "import products", description = "bulk insert products from a CSV (with header) or NDJSON body; bad rows are reported, not fatal")
+	public Result importProducts(@PathVariable Long merchantId, HttpServletRequest request) throws IOException {
+		try {
+			ImportReport report = productImporter.importProducts(merchantId, request.getInputStream(),
+					ImportFormat.of(request.getContentType()));
+			return Result.success(StatusCode.SUCCESS, report);
+		} catch (TradingException e) {
+			return Result.failure(e.toStatusCode());
+		}
+	}
+
 	@PostMapping("/{merchantId}/products/increaseStock")
 	public Result increaseStock(@PathVariable Long merchantId, @Valid @RequestBody IncreaseStockRequest request) {
 		try {
@@ -55,6 +94,17 @@ public class MerchantController {
 		}
 	}
 
+	@PostMapping("/{merchantId}/products/restock")
+	@Operation(summary = "bulk restock", description = "increase the stock of many SKUs in one transaction and return the new stock per SKU")
+	public Result restock(@PathVariable Long merchantId, @Valid @RequestBody BulkRestockRequest request) {
+		try {
+			Map<String, Integer> stock = merchantService.increaseStock(merchantId, request.getLines());
+			return Result.success(StatusCode.SUCCESS, stock);
+		} catch (TradingException e) {
+			return Result.failure(e.toStatusCode());
+		}
+	}
+
 	@PostMapping("/createMerchant")
 	@Operation(summary = "create merchant", description = "create a new merchant")
 	public Result createMerchant(@Valid @RequestBody CreateMerchantRequest request) {
@@ -76,6 +126,45 @@ public class MerchantController {
 		}
 	}
 
+	@GetMapping("/merchant/{merchantId}/products")
+	@Operation(summary = "list products page", description = "products of the merchant in id order, continuing after the given cursor")
+	public Result findProductPage(@PathVariable Long merchantId, @RequestParam(required = false) Long after,
+			@RequestParam(defaultValue = "100") int limit) {
+		try {
+			ProductPage page = merchantService.findProductPage(merchantId, after, limit);
+			return Result.success(StatusCode.SUCCESS, page);
+		} catch (TradingException e) {
+			return Result.failure(e.toStatusCode());
+		}
+	}
+
+	@GetMapping("/merchant/{merchantId}/products/stream")
+	@Operation(summary = "stream products", description = "all products of the merchant as NDJSON, one product per line")
+	public void streamProducts(@PathVariable Long merchantId, HttpServletResponse response) throws IOException {
+		response.setContentType(NDJSON);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		OutputStream out = response.getOutputStream();
+		// the stream stays open for an error body and is flushed by the buffer, not per row
+		ObjectWriter lines = objectMapper.writer().withRootValueSeparator("\n")
+				.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+		try (SequenceWriter writer = lines.writeValues(out)) {
+			merchantService.streamProducts(merchantId, product -> {
+				try {
+					writer.write(product);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (TradingException e) {
+			// raised before the first row, so nothing has been sent yet
+			response.reset();
+			response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+			objectMapper.writeValue(response.getOutputStream(), Result.failure(e.toStatusCode()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
 	@GetMapping("/{sku}/merchant/{merchantId}")
 	public Result getProductBySku(@PathVariable String sku, @PathVariable Long merchantId) {
 		try {
@@ -10,6 +10,7 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.capital.domain.dto.CheckoutRequest;
 import com.capital.domain.dto.PurchaseRequest;
 import com.capital.domain.dto.Result;
 import com.capital.exception.StatusCode;
@@ -35,4 +36,15 @@ public class TradingController {
 			return Result.failure(e.toStatusCode());
 		}
 	}
+
+	@PostMapping("/checkout")
+	@Operation(summary = "checkout cart", description = "user purchases several products, possibly from several merchants, in one transaction")
+	public Result checkout(@Valid @RequestBody CheckoutRequest request) {
+		try {
+			Map<String, Object> result = transactionService.checkout(request.getUserId(), request.getLines());
+			return Result.success(StatusCode.SUCCESS, result);
+		} catch (TradingException e) {
+			return Result.failure(e.toStatusCode());
+		}
+	}
 }
@@ -0,0 +1,16 @@
+package com.capital.domain.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+
+import lombok.Data;
+
+@Data
+public class BulkRestockRequest {
+	@NotEmpty
+	@Size(max = 10000, message = "A restock must not contain more than 10000 lines")
+	private List<@Valid IncreaseStockRequest> lines;
+}
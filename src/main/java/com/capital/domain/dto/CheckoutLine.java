@@ -0,0 +1,24 @@
+package com.capital.domain.dto;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CheckoutLine {
+	@NotNull
+	private Long merchantId;
+
+	@NotBlank
+	private String sku;
+
+	@NotNull
+	@Min(value = 1, message = "The minimum purchase quantity must not lower than 1")
+	private Integer quantity;
+}
@@ -0,0 +1,20 @@
+package com.capital.domain.dto;
+
+import java.util.List;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+
+import lombok.Data;
+
+@Data
+public class CheckoutRequest {
+	@NotNull
+	private Long userId;
+
+	@NotEmpty
+	@Size(max = 200, message = "A cart must not contain more than 200 lines")
+	private List<@Valid CheckoutLine> lines;
+}
@@ -0,0 +1,19 @@
+package com.capital.domain.dto;
+
+import java.util.List;
+
+import com.capital.domain.product.Product;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One page of a merchant's products in id order. {@code nextCursor} is the id to
+ * pass as {@code after} for the following page, or {@code null} on the last page.
+ */
+@Getter
+@AllArgsConstructor
+public class ProductPage {
+	private List<Product> items;
+	private Long nextCursor;
+}
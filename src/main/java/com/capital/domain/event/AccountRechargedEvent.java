@@ -0,0 +1,15 @@
+package com.capital.domain.event;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class AccountRechargedEvent {
+	private final Long userId;
+	private final Long accountId;
+	private final BigDecimal amount;
+	private final BigDecimal balance;
+}
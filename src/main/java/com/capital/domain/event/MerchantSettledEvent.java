@@ -0,0 +1,20 @@
+package com.capital.domain.event;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when settlement has moved a merchant's monitor baseline to the
+ * current balance and reset its daily sales; {@code dailySales} is the amount
+ * that was reset.
+ */
+@Getter
+@AllArgsConstructor
+public class MerchantSettledEvent {
+	private final Long merchantId;
+	private final Long accountId;
+	private final BigDecimal balance;
+	private final BigDecimal dailySales;
+}
@@ -0,0 +1,26 @@
+package com.capital.domain.event;
+
+import java.math.BigDecimal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published after a purchase has been applied, carrying the post-purchase state
+ * of every row it touched.
+ */
+@Getter
+@AllArgsConstructor
+public class PurchaseCompletedEvent {
+	private final Long userAccountId;
+	private final BigDecimal userBalance;
+	private final Long merchantId;
+	private final Long merchantAccountId;
+	private final BigDecimal merchantBalance;
+	private final BigDecimal merchantDailySales;
+	private final Long productId;
+	private final String sku;
+	private final Integer stockQuantity;
+	private final Integer quantity;
+	private final BigDecimal totalCost;
+}
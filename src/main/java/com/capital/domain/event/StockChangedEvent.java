@@ -0,0 +1,13 @@
+package com.capital.domain.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class StockChangedEvent {
+	private final Long merchantId;
+	private final Long productId;
+	private final String sku;
+	private final Integer stockQuantity;
+}
@@ -6,6 +6,7 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
@@ -34,6 +35,10 @@ public class MerchantAccountMonitor {
 
 	@Column(name = "currency", nullable = false)
 	private String currency = "CNY";
+
+	@Version
+	@Column(name = "version", columnDefinition = "bigint default 0")
+	private Long version;
 	
 	public void resetDailyBalance(BigDecimal preBalance) {
 		this.balance = preBalance;
@@ -5,7 +5,9 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import org.hibernate.annotations.GenericGenerator;
 
@@ -17,7 +19,9 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
-@Table(name = "products")
+@Table(name = "products", indexes = {
+        @Index(name = "uk_products_merchant_sku", columnList = "merchant_id, sku", unique = true),
+        @Index(name = "idx_products_merchant_id", columnList = "merchant_id, id") })
 @Getter
 @Setter
 @NoArgsConstructor
@@ -44,6 +48,9 @@ public class Product {
     private Integer stockQuantity;
     @Column(name = "merchant_id")
     private Long merchantId;
+    @Version
+    @Column(name = "version", columnDefinition = "bigint default 0")
+    private Long version;
     
     public boolean reduceStock(Integer quantity) {
         if (this.stockQuantity >= quantity) {
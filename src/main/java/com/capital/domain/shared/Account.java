@@ -7,6 +7,7 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 
 import org.hibernate.annotations.GenericGenerator;
 
@@ -47,6 +48,10 @@ public class Account {
 	
 	@Column(name = "is_active")
 	private boolean active = true;
+
+	@Version
+	@Column(name = "version", columnDefinition = "bigint default 0")
+	private Long version;
 	
 	public void recharge(BigDecimal amount) {
 		if (amount.compareTo(BigDecimal.ZERO) <= 0) {
@@ -0,0 +1,36 @@
+package com.capital.domain.shared;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Sequence row of one business type for the segment id strategy: every id up to
+ * {@code maxId} has been handed to some instance.
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "id_segments")
+@NoArgsConstructor
+public class IdSegment {
+	@Id
+	@Column(name = "biz_type", length = 64)
+	private String bizType;
+
+	@Column(name = "max_id", nullable = false)
+	private long maxId;
+
+	@Column(name = "step", nullable = false)
+	private int step;
+
+	@Column(name = "updated_at")
+	private LocalDateTime updatedAt;
+}
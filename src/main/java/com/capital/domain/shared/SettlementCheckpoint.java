@@ -0,0 +1,58 @@
+package com.capital.domain.shared;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Progress of one partition of a settlement run: merchants in
+ * {@code (afterId, upToId]} up to {@code lastSettledId} are settled. It is
+ * advanced in the same transaction as the chunk it records.
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "settlement_checkpoints", indexes = @Index(name = "idx_settlement_checkpoints_run", columnList = "run_id, partition_index"))
+@NoArgsConstructor
+public class SettlementCheckpoint {
+	@Id
+	@GeneratedValue(generator = "local-id-generator")
+    @GenericGenerator(
+        name = "local-id-generator",
+        strategy = "com.capital.util.LocalIdIdentifierGenerator"
+    )
+	private Long id;
+
+	@Column(name = "run_id", nullable = false)
+	private Long runId;
+
+	@Column(name = "partition_index", nullable = false)
+	private int partitionIndex;
+
+	@Column(name = "after_id", nullable = false)
+	private long afterId;
+
+	@Column(name = "up_to_id", nullable = false)
+	private long upToId;
+
+	@Column(name = "last_settled_id", nullable = false)
+	private long lastSettledId;
+
+	@Column(name = "completed", nullable = false)
+	private boolean completed;
+
+	@Column(name = "merchants", nullable = false)
+	private int merchants;
+
+	@Column(name = "warnings", nullable = false)
+	private int warnings;
+}
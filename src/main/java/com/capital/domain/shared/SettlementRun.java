@@ -0,0 +1,70 @@
+package com.capital.domain.shared;
+
+import java.time.LocalDateTime;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.GeneratedValue;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+
+import com.capital.enums.SettlementRunStatus;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * History row of one settlement run. A run left {@code RUNNING} by a crash or
+ * {@code FAILED} by a partition is resumed from its checkpoints.
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "settlement_runs", indexes = @Index(name = "idx_settlement_runs_status", columnList = "status, started_at"))
+@NoArgsConstructor
+public class SettlementRun {
+	@Id
+	@GeneratedValue(generator = "local-id-generator")
+    @GenericGenerator(
+        name = "local-id-generator",
+        strategy = "com.capital.util.LocalIdIdentifierGenerator"
+    )
+	private Long id;
+
+	@Enumerated(EnumType.STRING)
+	@Column(name = "status", nullable = false)
+	private SettlementRunStatus status;
+
+	@Column(name = "full_sweep", nullable = false)
+	private boolean fullSweep;
+
+	@Column(name = "partitions", nullable = false)
+	private int partitions;
+
+	@Column(name = "merchants", nullable = false)
+	private int merchants;
+
+	@Column(name = "warnings", nullable = false)
+	private int warnings;
+
+	@Column(name = "executions", nullable = false)
+	private int executions;
+
+	@Column(name = "started_at")
+	private LocalDateTime startedAt;
+
+	@Column(name = "finished_at")
+	private LocalDateTime finishedAt;
+
+	@Column(name = "elapsed_ms", nullable = false)
+	private long elapsedMs;
+
+	@Column(name = "failure", length = 1000)
+	private String failure;
+}
@@ -0,0 +1,344 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import com.capital.domain.dto.CheckoutLine;
+import com.capital.exception.StatusCode;
+import com.capital.journal.AccountImage;
+import com.capital.journal.JournalRecord;
+import com.capital.journal.JournalRecordType;
+import com.capital.journal.ProductImage;
+import com.capital.journal.PurchaseJournal;
+import com.capital.journal.StateImage;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-writer event loop owning a partition of merchants. Commands are fed
+ * through a bounded ring and executed one at a time on the shard thread, so
+ * merchant books and product slots need no locking. A task whose future is
+ * cancelled before the shard reaches it is skipped; once started it cannot be
+ * cancelled.
+ */
+@Slf4j
+class EngineShard implements Runnable {
+
+	private static final int DRAIN_BATCH = 256;
+
+	private final int index;
+	private final ArrayBlockingQueue<ShardTask<?>> ring;
+	private final EngineStateLoader stateLoader;
+	private final EngineWriteBehind writeBehind;
+	private final PurchaseJournal journal;
+	private final Map<Long, MerchantBook> books = new HashMap<>();
+	private final Thread thread;
+
+	private volatile boolean running = true;
+
+	EngineShard(int index, int ringSize, EngineStateLoader stateLoader, EngineWriteBehind writeBehind,
+			PurchaseJournal journal) {
+		this.index = index;
+		this.ring = new ArrayBlockingQueue<>(ringSize);
+		this.stateLoader = stateLoader;
+		this.writeBehind = writeBehind;
+		this.journal = journal;
+		this.thread = new Thread(this, "engine-shard-" + index);
+		this.thread.setDaemon(true);
+	}
+
+	void start() {
+		thread.start();
+	}
+
+	void stop() throws InterruptedException {
+		running = false;
+		thread.join(TimeUnit.SECONDS.toMillis(10));
+	}
+
+	<T> CompletableFuture<T> submit(Function<EngineShard, T> work) {
+		ShardTask<T> task = new ShardTask<>(work);
+		if (!running || !ring.offer(task)) {
+			throw StatusCode.SYSTEM_BUSY.toException();
+		}
+		return task;
+	}
+
+	/**
+	 * Like {@link #submit(Function)} but waits for ring space instead of rejecting;
+	 * used for compensating work that must not be dropped.
+	 */
+	<T> CompletableFuture<T> submitBlocking(Function<EngineShard, T> work) {
+		ShardTask<T> task = new ShardTask<>(work);
+		try {
+			ring.put(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw StatusCode.SYSTEM_BUSY.toException(e);
+		}
+		return task;
+	}
+
+	@Override
+	public void run() {
+		List<ShardTask<?>> batch = new ArrayList<>(DRAIN_BATCH);
+		while (running || !ring.isEmpty()) {
+			try {
+				ShardTask<?> first = ring.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				ring.drainTo(batch, DRAIN_BATCH - 1);
+				for (ShardTask<?> task : batch) {
+					task.execute(this);
+				}
+				batch.clear();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		log.info("Engine shard {} stopped", index);
+	}
+
+	PurchaseReceipt purchase(UserBalance user, Long merchantId, String sku, Integer quantity) {
+		MerchantBook book = book(merchantId);
+		if (book == null) {
+			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		}
+		ProductSlot slot = product(book, sku);
+		if (slot == null) {
+			throw StatusCode.PRODUCT_NOT_FOUND.toException();
+		}
+		if (!slot.isAvailable(quantity)) {
+			throw StatusCode.INSUFFICIENT_STOCK.toException();
+		}
+		BigDecimal totalCost = slot.calculateTotalPrice(quantity);
+		UserBalance.Ledger ledger = user.tryDebit(totalCost);
+		if (ledger == null) {
+			throw StatusCode.INSUFFICIENT_BALANCE.toException();
+		}
+		slot.reduceStock(quantity);
+		book.credit(totalCost);
+
+		// mark dirty before journaling, so a snapshot flush covers every journaled delta
+		writeBehind.markDirty(user);
+		writeBehind.markDirty(book);
+		writeBehind.markDirty(slot);
+		if (journal != null) {
+			journal.append(JournalRecord.of(JournalRecordType.PURCHASE,
+					new AccountImage(user.getAccountId(), ledger.getBalance(), null, ledger.getSequence()),
+					new AccountImage(book.getAccountId(), book.getBalance(), book.getDailySales()),
+					new ProductImage(slot.getId(), slot.getStockQuantity())));
+		}
+		return new PurchaseReceipt(totalCost, quantity, slot.toProduct());
+	}
+
+	/**
+	 * Prices and applies every cart line for this shard's merchant as one step: either
+	 * all lines are taken and the user is debited once, or nothing changes.
+	 */
+	List<PurchaseReceipt> checkout(UserBalance user, Long merchantId, List<CheckoutLine> lines) {
+		MerchantBook book = book(merchantId);
+		if (book == null) {
+			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		}
+		List<ProductSlot> slots = new ArrayList<>(lines.size());
+		Map<ProductSlot, Integer> demand = new LinkedHashMap<>();
+		BigDecimal totalCost = BigDecimal.ZERO;
+		for (CheckoutLine line : lines) {
+			ProductSlot slot = product(book, line.getSku());
+			if (slot == null) {
+				throw StatusCode.PRODUCT_NOT_FOUND.toException();
+			}
+			if (line.getQuantity() <= 0) {
+				throw StatusCode.INSUFFICIENT_STOCK.toException();
+			}
+			slots.add(slot);
+			demand.merge(slot, line.getQuantity(), Integer::sum);
+			totalCost = totalCost.add(slot.calculateTotalPrice(line.getQuantity()));
+		}
+		for (Map.Entry<ProductSlot, Integer> entry : demand.entrySet()) {
+			if (!entry.getKey().isAvailable(entry.getValue())) {
+				throw StatusCode.INSUFFICIENT_STOCK.toException();
+			}
+		}
+		UserBalance.Ledger ledger = user.tryDebit(totalCost);
+		if (ledger == null) {
+			throw StatusCode.INSUFFICIENT_BALANCE.toException();
+		}
+		demand.forEach(ProductSlot::reduceStock);
+		book.credit(totalCost);
+
+		writeBehind.markDirty(user);
+		writeBehind.markDirty(book);
+		demand.keySet().forEach(writeBehind::markDirty);
+		journal(JournalRecordType.PURCHASE, user, ledger, book, demand.keySet());
+
+		List<PurchaseReceipt> receipts = new ArrayList<>(lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			ProductSlot slot = slots.get(i);
+			Integer quantity = lines.get(i).getQuantity();
+			receipts.add(new PurchaseReceipt(slot.calculateTotalPrice(quantity), quantity, slot.toProduct()));
+		}
+		return receipts;
+	}
+
+	/**
+	 * Undoes a {@link #checkout} of this shard after a later part of the same cart failed.
+	 */
+	Void reverse(UserBalance user, Long merchantId, List<PurchaseReceipt> receipts) {
+		MerchantBook book = books.get(merchantId);
+		Map<ProductSlot, Integer> returned = new LinkedHashMap<>();
+		BigDecimal totalCost = BigDecimal.ZERO;
+		for (PurchaseReceipt receipt : receipts) {
+			returned.merge(book.findProductBySku(receipt.getProduct().getSku()), receipt.getQuantity(), Integer::sum);
+			totalCost = totalCost.add(receipt.getTotalCost());
+		}
+		returned.forEach(ProductSlot::increaseStock);
+		book.credit(totalCost.negate());
+		UserBalance.Ledger ledger = user.credit(totalCost);
+
+		writeBehind.markDirty(user);
+		writeBehind.markDirty(book);
+		returned.keySet().forEach(writeBehind::markDirty);
+		journal(JournalRecordType.REVERSAL, user, ledger, book, returned.keySet());
+		return null;
+	}
+
+	private void journal(JournalRecordType type, UserBalance user, UserBalance.Ledger ledger, MerchantBook book,
+			Collection<ProductSlot> slots) {
+		if (journal == null) {
+			return;
+		}
+		StateImage[] images = new StateImage[slots.size() + 2];
+		images[0] = new AccountImage(user.getAccountId(), ledger.getBalance(), null, ledger.getSequence());
+		images[1] = new AccountImage(book.getAccountId(), book.getBalance(), book.getDailySales());
+		int i = 2;
+		for (ProductSlot slot : slots) {
+			images[i++] = new ProductImage(slot.getId(), slot.getStockQuantity());
+		}
+		journal.append(JournalRecord.of(type, images));
+	}
+
+	ProductSlot restock(Long merchantId, String sku, Integer quantity) {
+		MerchantBook book = book(merchantId);
+		if (book == null) {
+			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		}
+		ProductSlot slot = product(book, sku);
+		if (slot != null) {
+			slot.increaseStock(quantity);
+			writeBehind.markDirty(slot);
+			if (journal != null) {
+				journal.append(JournalRecord.of(JournalRecordType.RESTOCK,
+						new ProductImage(slot.getId(), slot.getStockQuantity())));
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Restocks many SKUs of one merchant as one step: every SKU is resolved before
+	 * any stock changes, so an unknown SKU leaves the book untouched.
+	 */
+	Map<String, Integer> restock(Long merchantId, Map<String, Integer> increments) {
+		MerchantBook book = book(merchantId);
+		if (book == null) {
+			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		}
+		Map<ProductSlot, Integer> slots = new LinkedHashMap<>();
+		for (Map.Entry<String, Integer> increment : increments.entrySet()) {
+			ProductSlot slot = product(book, increment.getKey());
+			if (slot == null) {
+				throw StatusCode.PRODUCT_NOT_FOUND.toException();
+			}
+			slots.put(slot, increment.getValue());
+		}
+
+		Map<String, Integer> stock = new LinkedHashMap<>();
+		StateImage[] images = new StateImage[slots.size()];
+		int i = 0;
+		for (Map.Entry<ProductSlot, Integer> entry : slots.entrySet()) {
+			ProductSlot slot = entry.getKey();
+			slot.increaseStock(entry.getValue());
+			writeBehind.markDirty(slot);
+			stock.put(slot.getSku(), slot.getStockQuantity());
+			images[i++] = new ProductImage(slot.getId(), slot.getStockQuantity());
+		}
+		if (journal != null) {
+			journal.append(JournalRecord.of(JournalRecordType.RESTOCK, images));
+		}
+		return stock;
+	}
+
+	Void settleDailySales(Long merchantId, BigDecimal settled) {
+		MerchantBook book = books.get(merchantId);
+		if (book != null) {
+			book.settleDailySales(settled);
+		}
+		return null;
+	}
+
+	private MerchantBook book(Long merchantId) {
+		MerchantBook book = books.get(merchantId);
+		if (book == null) {
+			book = stateLoader.loadMerchant(merchantId);
+			if (book != null) {
+				books.put(merchantId, book);
+			}
+		}
+		return book;
+	}
+
+	private ProductSlot product(MerchantBook book, String sku) {
+		ProductSlot slot = book.findProductBySku(sku);
+		if (slot == null) {
+			// products added after the book was loaded are picked up lazily
+			slot = stateLoader.loadProduct(book.getMerchantId(), sku);
+			if (slot != null) {
+				book.putProduct(slot);
+			}
+		}
+		return slot;
+	}
+
+	private static final class ShardTask<T> extends CompletableFuture<T> {
+		private final Function<EngineShard, T> work;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+
+		private ShardTask(Function<EngineShard, T> work) {
+			this.work = work;
+		}
+
+		/**
+		 * Succeeds only while the task is still queued, in which case it never runs.
+		 */
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return claimed.compareAndSet(false, true) && super.cancel(false);
+		}
+
+		private void execute(EngineShard shard) {
+			if (!claimed.compareAndSet(false, true)) {
+				return;
+			}
+			try {
+				complete(work.apply(shard));
+			} catch (RuntimeException e) {
+				completeExceptionally(e);
+			}
+		}
+	}
+}
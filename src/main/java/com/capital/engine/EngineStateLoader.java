@@ -0,0 +1,63 @@
+package com.capital.engine;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.capital.domain.merchant.Merchant;
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+import com.capital.domain.user.User;
+import com.capital.exception.StatusCode;
+import com.capital.repository.MerchantRepository;
+import com.capital.repository.ProductRepository;
+import com.capital.repository.UserRepository;
+
+/**
+ * Loads engine state from SQLite the first time a user or merchant is touched.
+ */
+@Component
+@ConditionalOnProperty(prefix = "trading.engine", name = "enabled", havingValue = "true")
+@Transactional(readOnly = true)
+public class EngineStateLoader {
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private MerchantRepository merchantRepository;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	public UserBalance loadUser(Long userId) {
+		User user = userRepository.findByIdAndActive(userId, true);
+		if (user == null) {
+			throw StatusCode.USER_NOT_FOUND.toException();
+		}
+		Account account = user.getAccount();
+		if (account == null) {
+			throw StatusCode.ACCOUNT_NOT_FOUND.toException();
+		}
+		return new UserBalance(userId, account);
+	}
+
+	public MerchantBook loadMerchant(Long merchantId) {
+		Merchant merchant = merchantRepository.findById(merchantId).orElse(null);
+		if (merchant == null) {
+			return null;
+		}
+		Account account = merchant.getAccount();
+		MerchantBook book = new MerchantBook(merchantId, account.getId(), account.getBalance(), account.getDailySales());
+		for (Product product : merchant.getProducts()) {
+			book.putProduct(new ProductSlot(product));
+		}
+		return book;
+	}
+
+	public ProductSlot loadProduct(Long merchantId, String sku) {
+		Product product = productRepository.findByMerchantIdAndSku(merchantId, sku);
+		return product == null ? null : new ProductSlot(product);
+	}
+}
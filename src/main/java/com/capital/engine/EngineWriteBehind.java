@@ -0,0 +1,182 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.cache.CatalogCache;
+import com.capital.scheduler.MerchantActivityTracker;
+import com.capital.scheduler.SettlementInvariantChecker;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Persists engine mutations to SQLite off the request path. Shards only mark cells
+ * dirty; a single flusher thread periodically drains the accumulated deltas and
+ * applies them as relative updates, so concurrent writers outside the engine
+ * (e.g. settlement resetting daily sales) are never overwritten.
+ * <p>
+ * The catalog cache reads products from SQLite, so the products of a flush are
+ * invalidated once it has committed rather than when the engine changed them, and
+ * its merchants are marked for the next incremental settlement and checked against
+ * the settlement invariant only then, so neither runs before the sales it is meant
+ * to see are in SQLite.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "trading.engine", name = "enabled", havingValue = "true")
+public class EngineWriteBehind {
+
+	private static final String USER_SQL = "UPDATE accounts SET balance = balance + ?, version = version + 1 WHERE id = ?";
+	private static final String MERCHANT_SQL = "UPDATE accounts SET balance = balance + ?, daily_sales = daily_sales + ?, version = version + 1 WHERE id = ?";
+	private static final String PRODUCT_SQL = "UPDATE products SET stock_quantity = stock_quantity + ?, version = version + 1 WHERE id = ?";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired
+	private MerchantActivityTracker activityTracker;
+
+	@Autowired
+	private SettlementInvariantChecker invariantChecker;
+
+	@Value("${trading.engine.flush-interval-ms:50}")
+	private long flushIntervalMs;
+
+	private final Set<UserBalance> dirtyUsers = ConcurrentHashMap.newKeySet();
+	private final Set<MerchantBook> dirtyMerchants = ConcurrentHashMap.newKeySet();
+	private final Set<ProductSlot> dirtyProducts = ConcurrentHashMap.newKeySet();
+
+	private ScheduledExecutorService flusher;
+
+	@PostConstruct
+	public void start() {
+		flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "engine-write-behind");
+			thread.setDaemon(true);
+			return thread;
+		});
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		flusher.shutdown();
+		flusher.awaitTermination(10, TimeUnit.SECONDS);
+		flush();
+		log.info("Engine write-behind stopped");
+	}
+
+	void markDirty(UserBalance user) {
+		dirtyUsers.add(user);
+	}
+
+	void markDirty(MerchantBook book) {
+		dirtyMerchants.add(book);
+	}
+
+	void markDirty(ProductSlot slot) {
+		dirtyProducts.add(slot);
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("Engine write-behind flush failed, will retry", e);
+		}
+	}
+
+	public synchronized void flush() {
+		List<UserBalance> users = drain(dirtyUsers);
+		List<MerchantBook> merchants = drain(dirtyMerchants);
+		List<ProductSlot> products = drain(dirtyProducts);
+		if (users.isEmpty() && merchants.isEmpty() && products.isEmpty()) {
+			return;
+		}
+
+		List<BigDecimal> userDeltas = new ArrayList<>(users.size());
+		List<Object[]> userArgs = new ArrayList<>(users.size());
+		for (UserBalance user : users) {
+			BigDecimal delta = user.drainPending();
+			userDeltas.add(delta);
+			userArgs.add(new Object[] { delta, user.getAccountId() });
+		}
+		List<BigDecimal> merchantDeltas = new ArrayList<>(merchants.size());
+		List<Object[]> merchantArgs = new ArrayList<>(merchants.size());
+		for (MerchantBook book : merchants) {
+			BigDecimal delta = book.drainPending();
+			merchantDeltas.add(delta);
+			merchantArgs.add(new Object[] { delta, delta, book.getAccountId() });
+		}
+		int[] productDeltas = new int[products.size()];
+		List<Object[]> productArgs = new ArrayList<>(products.size());
+		for (int i = 0; i < products.size(); i++) {
+			ProductSlot slot = products.get(i);
+			productDeltas[i] = slot.drainPending();
+			productArgs.add(new Object[] { productDeltas[i], slot.getId() });
+		}
+
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				jdbcTemplate.batchUpdate(USER_SQL, userArgs);
+				jdbcTemplate.batchUpdate(MERCHANT_SQL, merchantArgs);
+				jdbcTemplate.batchUpdate(PRODUCT_SQL, productArgs);
+			});
+			log.debug("Engine flushed {} users, {} merchants, {} products", users.size(), merchants.size(),
+					products.size());
+		} catch (RuntimeException e) {
+			for (int i = 0; i < users.size(); i++) {
+				users.get(i).restorePending(userDeltas.get(i));
+				dirtyUsers.add(users.get(i));
+			}
+			for (int i = 0; i < merchants.size(); i++) {
+				merchants.get(i).restorePending(merchantDeltas.get(i));
+				dirtyMerchants.add(merchants.get(i));
+			}
+			for (int i = 0; i < products.size(); i++) {
+				products.get(i).restorePending(productDeltas[i]);
+				dirtyProducts.add(products.get(i));
+			}
+			throw e;
+		}
+		products.forEach(slot -> catalogCache.invalidate(slot.getMerchantId(), slot.getSku()));
+		for (MerchantBook book : merchants) {
+			activityTracker.markActive(book.getMerchantId());
+			// the book may be ahead of SQLite; a mismatch is confirmed against the database
+			invariantChecker.checkCommitted(book.getMerchantId(), book.getBalance(), book.getDailySales());
+		}
+	}
+
+	private static <T> List<T> drain(Set<T> dirty) {
+		List<T> drained = new ArrayList<>();
+		Iterator<T> iterator = dirty.iterator();
+		while (iterator.hasNext()) {
+			drained.add(iterator.next());
+			iterator.remove();
+		}
+		return drained;
+	}
+}
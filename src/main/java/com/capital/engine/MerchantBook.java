@@ -0,0 +1,65 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import lombok.Getter;
+
+/**
+ * Resident state of one merchant: its account and its products keyed by sku.
+ * A book belongs to exactly one shard and is only mutated by that shard's thread.
+ */
+@Getter
+public class MerchantBook {
+
+	private final Long merchantId;
+	private final Long accountId;
+
+	private volatile BigDecimal balance;
+	private volatile BigDecimal dailySales;
+
+	private final AtomicReference<BigDecimal> pendingCredit = new AtomicReference<>(BigDecimal.ZERO);
+
+	private final Map<String, ProductSlot> products = new HashMap<>();
+
+	public MerchantBook(Long merchantId, Long accountId, BigDecimal balance, BigDecimal dailySales) {
+		this.merchantId = merchantId;
+		this.accountId = accountId;
+		this.balance = balance == null ? BigDecimal.ZERO : balance;
+		this.dailySales = dailySales == null ? BigDecimal.ZERO : dailySales;
+	}
+
+	ProductSlot findProductBySku(String sku) {
+		return products.get(sku);
+	}
+
+	void putProduct(ProductSlot slot) {
+		products.put(slot.getSku(), slot);
+	}
+
+	void credit(BigDecimal amount) {
+		this.balance = this.balance.add(amount);
+		this.dailySales = this.dailySales.add(amount);
+		this.pendingCredit.accumulateAndGet(amount, BigDecimal::add);
+	}
+
+	/**
+	 * Settlement has reset daily sales in SQLite, where they stood at
+	 * {@code settled}; whatever the book holds beyond that counts towards the new day.
+	 */
+	void settleDailySales(BigDecimal settled) {
+		if (settled != null) {
+			this.dailySales = this.dailySales.subtract(settled);
+		}
+	}
+
+	BigDecimal drainPending() {
+		return this.pendingCredit.getAndSet(BigDecimal.ZERO);
+	}
+
+	void restorePending(BigDecimal delta) {
+		this.pendingCredit.accumulateAndGet(delta, BigDecimal::add);
+	}
+}
@@ -0,0 +1,67 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.capital.domain.product.Product;
+
+import lombok.Getter;
+
+/**
+ * Resident stock of one product. Only the owning shard thread mutates
+ * {@code stockQuantity}; the write-behind thread drains {@code pendingStock}.
+ */
+@Getter
+public class ProductSlot {
+
+	private final Long id;
+	private final Long merchantId;
+	private final String sku;
+	private final String name;
+	private final String description;
+	private final BigDecimal price;
+
+	private volatile int stockQuantity;
+
+	private final AtomicInteger pendingStock = new AtomicInteger();
+
+	public ProductSlot(Product product) {
+		this.id = product.getId();
+		this.merchantId = product.getMerchantId();
+		this.sku = product.getSku();
+		this.name = product.getName();
+		this.description = product.getDescription();
+		this.price = product.getPrice();
+		this.stockQuantity = product.getStockQuantity() == null ? 0 : product.getStockQuantity();
+	}
+
+	public boolean isAvailable(Integer quantity) {
+		return quantity != null && quantity > 0 && this.stockQuantity >= quantity;
+	}
+
+	public BigDecimal calculateTotalPrice(Integer quantity) {
+		return this.price.multiply(BigDecimal.valueOf(quantity));
+	}
+
+	void reduceStock(int quantity) {
+		this.stockQuantity -= quantity;
+		this.pendingStock.addAndGet(-quantity);
+	}
+
+	void increaseStock(int quantity) {
+		this.stockQuantity += quantity;
+		this.pendingStock.addAndGet(quantity);
+	}
+
+	int drainPending() {
+		return this.pendingStock.getAndSet(0);
+	}
+
+	void restorePending(int delta) {
+		this.pendingStock.addAndGet(delta);
+	}
+
+	public Product toProduct() {
+		return new Product(id, sku, name, description, price, stockQuantity, merchantId, null);
+	}
+}
@@ -0,0 +1,249 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.capital.domain.dto.CheckoutLine;
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+import com.capital.journal.AccountImage;
+import com.capital.journal.JournalRecord;
+import com.capital.journal.JournalRecordType;
+import com.capital.journal.PurchaseJournal;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory purchase engine. Merchants are partitioned across single-threaded
+ * shards by id; each shard keeps its merchants' stock and account state resident
+ * and executes purchases without locks. SQLite is updated asynchronously by
+ * {@link EngineWriteBehind}; when the journal is enabled, every mutation is
+ * journaled and only acknowledged once the journal's group commit made it durable.
+ * <p>
+ * A request that times out before its shard task started cancels the task and
+ * fails with {@code SYSTEM_BUSY}; a task already started is waited for, so a
+ * caller is never told a purchase failed that the shard then applies.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "trading.engine", name = "enabled", havingValue = "true")
+public class PurchaseEngine {
+
+	@Autowired
+	private EngineStateLoader stateLoader;
+
+	@Autowired
+	private EngineWriteBehind writeBehind;
+
+	@Autowired(required = false)
+	private PurchaseJournal journal;
+
+	@Value("${trading.engine.shards:4}")
+	private int shardCount;
+
+	@Value("${trading.engine.ring-size:4096}")
+	private int ringSize;
+
+	@Value("${trading.engine.request-timeout-ms:2000}")
+	private long requestTimeoutMs;
+
+	private final Map<Long, UserBalance> users = new ConcurrentHashMap<>();
+
+	private EngineShard[] shards;
+
+	@PostConstruct
+	public void start() {
+		shards = new EngineShard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new EngineShard(i, ringSize, stateLoader, writeBehind, journal);
+			shards[i].start();
+		}
+		log.info("Purchase engine started with {} shards", shardCount);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		for (EngineShard shard : shards) {
+			shard.stop();
+		}
+		log.info("Purchase engine stopped");
+	}
+
+	public PurchaseReceipt purchase(Long userId, Long merchantId, String sku, Integer quantity) {
+		UserBalance user = userBalance(userId);
+		PurchaseReceipt receipt = await(
+				shardFor(merchantId).submit(shard -> shard.purchase(user, merchantId, sku, quantity)));
+		awaitDurable();
+		return receipt;
+	}
+
+	/**
+	 * Checks out a cart that may span several merchants. The lines of each merchant
+	 * run as one step on its shard; when a later step fails, the steps already taken
+	 * are reversed on their shards before the failure is rethrown.
+	 *
+	 * @return one receipt per line, in request order
+	 */
+	public List<PurchaseReceipt> checkout(Long userId, List<CheckoutLine> lines) {
+		UserBalance user = userBalance(userId);
+		Map<Long, List<Integer>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < lines.size(); i++) {
+			groups.computeIfAbsent(lines.get(i).getMerchantId(), id -> new ArrayList<>()).add(i);
+		}
+
+		PurchaseReceipt[] receipts = new PurchaseReceipt[lines.size()];
+		Map<Long, List<PurchaseReceipt>> taken = new LinkedHashMap<>();
+		try {
+			for (Map.Entry<Long, List<Integer>> group : groups.entrySet()) {
+				Long merchantId = group.getKey();
+				List<CheckoutLine> merchantLines = new ArrayList<>(group.getValue().size());
+				group.getValue().forEach(i -> merchantLines.add(lines.get(i)));
+				List<PurchaseReceipt> merchantReceipts = await(
+						shardFor(merchantId).submit(shard -> shard.checkout(user, merchantId, merchantLines)));
+				taken.put(merchantId, merchantReceipts);
+				for (int j = 0; j < merchantReceipts.size(); j++) {
+					receipts[group.getValue().get(j)] = merchantReceipts.get(j);
+				}
+			}
+		} catch (RuntimeException e) {
+			taken.forEach((merchantId, merchantReceipts) -> shardFor(merchantId)
+					.submitBlocking(shard -> shard.reverse(user, merchantId, merchantReceipts)).join());
+			throw e;
+		}
+		awaitDurable();
+		return Arrays.asList(receipts);
+	}
+
+	public Product restock(Long merchantId, String sku, Integer quantity) {
+		ProductSlot slot = await(shardFor(merchantId).submit(shard -> shard.restock(merchantId, sku, quantity)));
+		if (slot == null) {
+			return null;
+		}
+		awaitDurable();
+		return slot.toProduct();
+	}
+
+	/**
+	 * Restocks many SKUs of one merchant in a single step on its shard.
+	 *
+	 * @return the new stock per SKU, in the order of {@code increments}
+	 */
+	public Map<String, Integer> restock(Long merchantId, Map<String, Integer> increments) {
+		Map<String, Integer> stock = await(shardFor(merchantId).submit(shard -> shard.restock(merchantId, increments)));
+		awaitDurable();
+		return stock;
+	}
+
+	public Account recharge(Long userId, BigDecimal amount) {
+		if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+			throw new IllegalArgumentException("Recharge amount must be positive");
+		}
+		UserBalance user = userBalance(userId);
+		UserBalance.Ledger ledger = user.credit(amount);
+		writeBehind.markDirty(user);
+		if (journal != null) {
+			journal.append(JournalRecord.of(JournalRecordType.RECHARGE,
+					new AccountImage(user.getAccountId(), ledger.getBalance(), null, ledger.getSequence())));
+		}
+		awaitDurable();
+		return user.toAccount();
+	}
+
+	/**
+	 * Takes the settled amount off the book once settlement has committed; sales
+	 * made since then, flushed or not, stay in the new day.
+	 */
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onMerchantSettled(MerchantSettledEvent event) {
+		shardFor(event.getMerchantId()).submitBlocking(
+				shard -> shard.settleDailySales(event.getMerchantId(), event.getDailySales()));
+	}
+
+	public int shardOf(Long merchantId) {
+		return Math.floorMod(merchantId, shardCount);
+	}
+
+	private EngineShard shardFor(Long merchantId) {
+		return shards[shardOf(merchantId)];
+	}
+
+	private UserBalance userBalance(Long userId) {
+		UserBalance user = users.get(userId);
+		if (user == null) {
+			user = users.computeIfAbsent(userId,
+					id -> stateLoader.loadUser(id).rebase(journal == null ? 0L : journal.position()));
+		}
+		return user;
+	}
+
+	/**
+	 * Fails the request when the journal did not make it durable in time; the change
+	 * stays applied in memory, so the outcome is reported as unknown rather than busy.
+	 */
+	private void awaitDurable() {
+		if (journal != null && !journal.awaitDurable(journal.position(), requestTimeoutMs)) {
+			log.error("Journal sync did not complete within {} ms", requestTimeoutMs);
+			throw StatusCode.SYSTEM_ERROR.toException();
+		}
+	}
+
+	private <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (ExecutionException e) {
+			throw failure(e.getCause());
+		} catch (TimeoutException e) {
+			if (future.cancel(false)) {
+				throw StatusCode.SYSTEM_BUSY.toException(e);
+			}
+			return outcome(future);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (future.cancel(false)) {
+				throw StatusCode.SYSTEM_ERROR.toException(e);
+			}
+			return outcome(future);
+		}
+	}
+
+	/**
+	 * Waits for a shard task that has already started; it only runs in-memory work.
+	 */
+	private static <T> T outcome(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			throw failure(e.getCause());
+		}
+	}
+
+	private static TradingException failure(Throwable cause) {
+		if (cause instanceof TradingException) {
+			return (TradingException) cause;
+		}
+		return StatusCode.SYSTEM_ERROR.toException(cause);
+	}
+}
@@ -0,0 +1,16 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+
+import com.capital.domain.product.Product;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class PurchaseReceipt {
+	private final BigDecimal totalCost;
+	private final Integer quantity;
+	private final Product product;
+}
@@ -0,0 +1,110 @@
+package com.capital.engine;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.capital.domain.shared.Account;
+import com.capital.enums.AccountType;
+
+import lombok.Getter;
+
+/**
+ * Resident balance of one user account. Users buy from merchants on every shard,
+ * so debits and credits are applied with a CAS loop instead of a single owner thread.
+ * <p>
+ * Each mutation also bumps a sequence number together with the balance. Shards may
+ * journal images of the same account out of order, and recovery uses the sequence
+ * to keep the newest one.
+ */
+public class UserBalance {
+
+	@Getter
+	private final Long userId;
+	@Getter
+	private final Long accountId;
+	@Getter
+	private final String currency;
+
+	private final AtomicReference<Ledger> ledger;
+
+	private final AtomicReference<BigDecimal> pendingDelta = new AtomicReference<>(BigDecimal.ZERO);
+
+	public UserBalance(Long userId, Account account) {
+		this.userId = userId;
+		this.accountId = account.getId();
+		this.currency = account.getCurrency();
+		this.ledger = new AtomicReference<>(
+				new Ledger(account.getBalance() == null ? BigDecimal.ZERO : account.getBalance(), 0L));
+	}
+
+	public BigDecimal getBalance() {
+		return ledger.get().balance;
+	}
+
+	/**
+	 * Starts the sequence at {@code base}; callers pass the current journal position
+	 * so that sequences keep growing across restarts.
+	 */
+	UserBalance rebase(long base) {
+		Ledger current = ledger.get();
+		ledger.set(new Ledger(current.balance, base));
+		return this;
+	}
+
+	/**
+	 * @return the ledger after the debit, or {@code null} if the balance is insufficient
+	 */
+	Ledger tryDebit(BigDecimal amount) {
+		for (;;) {
+			Ledger current = ledger.get();
+			if (current.balance.compareTo(amount) < 0) {
+				return null;
+			}
+			Ledger updated = new Ledger(current.balance.subtract(amount), current.sequence + 1);
+			if (ledger.compareAndSet(current, updated)) {
+				pendingDelta.accumulateAndGet(amount.negate(), BigDecimal::add);
+				return updated;
+			}
+		}
+	}
+
+	Ledger credit(BigDecimal amount) {
+		for (;;) {
+			Ledger current = ledger.get();
+			Ledger updated = new Ledger(current.balance.add(amount), current.sequence + 1);
+			if (ledger.compareAndSet(current, updated)) {
+				pendingDelta.accumulateAndGet(amount, BigDecimal::add);
+				return updated;
+			}
+		}
+	}
+
+	BigDecimal drainPending() {
+		return pendingDelta.getAndSet(BigDecimal.ZERO);
+	}
+
+	void restorePending(BigDecimal delta) {
+		pendingDelta.accumulateAndGet(delta, BigDecimal::add);
+	}
+
+	public Account toAccount() {
+		Account account = new Account();
+		account.setId(accountId);
+		account.setBalance(getBalance());
+		account.setCurrency(currency);
+		account.setAccountType(AccountType.User.toString());
+		account.setActive(true);
+		return account;
+	}
+
+	@Getter
+	static final class Ledger {
+		private final BigDecimal balance;
+		private final long sequence;
+
+		private Ledger(BigDecimal balance, long sequence) {
+			this.balance = balance;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,5 @@
+package com.capital.enums;
+
+public enum SettlementRunStatus {
+	RUNNING, COMPLETED, FAILED
+}
@@ -7,6 +7,8 @@ public enum StatusCode {
     PARAM_VALIDATION_ERROR("1000", "Param validation error"),
     RESOURCE_NOT_FOUND("1001", "Resource not found"),
     OPERATION_FAILED("1002", "Operation Failed"),
+    SYSTEM_BUSY("1003", "System busy, please retry later"),
+    CONCURRENT_MODIFICATION("1004", "Concurrent modification, please retry later"),
     
     // ========== 用户模块 ==========
     USER_NOT_FOUND("2001", "User not found or inactive"),
@@ -0,0 +1,46 @@
+package com.capital.importer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits one CSV record: comma separated, fields optionally enclosed in double
+ * quotes with {@code ""} as an escaped quote. Records spanning lines are not
+ * supported.
+ */
+final class CsvLine {
+
+	private CsvLine() {
+	}
+
+	static List<String> parse(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			char c = line.charAt(i);
+			if (quoted) {
+				if (c != '"') {
+					field.append(c);
+				} else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else {
+					quoted = false;
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		if (quoted) {
+			throw new IllegalArgumentException("Unterminated quoted field");
+		}
+		fields.add(field.toString());
+		return fields;
+	}
+}
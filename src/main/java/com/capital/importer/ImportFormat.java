@@ -0,0 +1,32 @@
+package com.capital.importer;
+
+import com.capital.exception.StatusCode;
+
+/**
+ * Accepted bulk import encodings, chosen by the request content type.
+ */
+public enum ImportFormat {
+	CSV("text/csv"), NDJSON("application/x-ndjson");
+
+	private final String mediaType;
+
+	ImportFormat(String mediaType) {
+		this.mediaType = mediaType;
+	}
+
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	public static ImportFormat of(String contentType) {
+		if (contentType != null) {
+			String type = contentType.split(";", 2)[0].trim();
+			for (ImportFormat value : values()) {
+				if (value.mediaType.equalsIgnoreCase(type)) {
+					return value;
+				}
+			}
+		}
+		throw StatusCode.PARAM_VALIDATION_ERROR.toException();
+	}
+}
@@ -0,0 +1,15 @@
+package com.capital.importer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A row left out of an import, with the input line it came from.
+ */
+@Getter
+@AllArgsConstructor
+public class ImportReject {
+	private long line;
+	private String sku;
+	private String reason;
+}
@@ -0,0 +1,21 @@
+package com.capital.importer;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a bulk import. {@code rejects} lists at most the configured number
+ * of rejected rows; {@code rejected} counts all of them.
+ */
+@Getter
+@AllArgsConstructor
+public class ImportReport {
+	private long rows;
+	private long imported;
+	private long rejected;
+	private long elapsedMs;
+	private double rowsPerSecond;
+	private List<ImportReject> rejects;
+}
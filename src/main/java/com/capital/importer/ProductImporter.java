@@ -0,0 +1,321 @@
+package com.capital.importer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.cache.CatalogCache;
+import com.capital.domain.dto.AddProductRequest;
+import com.capital.exception.StatusCode;
+import com.capital.repository.MerchantRepository;
+import com.capital.util.IdGenerator;
+import com.capital.write.WritePipeline;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Streams a product catalog into a merchant without going through the merchant
+ * aggregate. Rows are parsed one line at a time, validated with the same
+ * constraints as {@link AddProductRequest}, checked against the merchant's SKUs
+ * held in a set, and inserted {@code batch-size} at a time as one JDBC batch
+ * with ids reserved as a block.
+ * <p>
+ * Bad rows are rejected individually. When the database refuses a batch, its rows
+ * are retried one by one so only the offending rows are rejected.
+ */
+@Slf4j
+@Component
+public class ProductImporter {
+
+	private static final String SKU_SQL = "SELECT sku FROM products WHERE merchant_id = ?";
+	private static final String INSERT_SQL = "INSERT INTO products"
+			+ " (id, sku, name, description, price, stock_quantity, merchant_id, version) VALUES (?, ?, ?, ?, ?, ?, ?, 0)";
+	private static final String[] REQUIRED_COLUMNS = { "sku", "name", "price", "stockquantity" };
+
+	@Autowired
+	private MerchantRepository merchantRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private IdGenerator idGenerator;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private Validator validator;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired(required = false)
+	private WritePipeline writePipeline;
+
+	@Value("${trading.import.batch-size:1000}")
+	private int batchSize;
+
+	@Value("${trading.import.max-reported-rejects:1000}")
+	private int maxReportedRejects;
+
+	private TransactionTemplate transactionTemplate;
+	private Counter importedRows;
+	private Counter rejectedRows;
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		importedRows = Counter.builder("trading.import.rows").description("Bulk imported product rows")
+				.tag("outcome", "imported").register(meterRegistry);
+		rejectedRows = Counter.builder("trading.import.rows").description("Bulk imported product rows")
+				.tag("outcome", "rejected").register(meterRegistry);
+	}
+
+	public ImportReport importProducts(Long merchantId, InputStream in, ImportFormat format) throws IOException {
+		if (!merchantRepository.existsById(merchantId)) {
+			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		}
+		long started = System.nanoTime();
+		Run run = new Run(merchantId);
+		jdbcTemplate.query(SKU_SQL, (ResultSet rs) -> {
+			run.skus.add(rs.getString(1));
+		}, merchantId);
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+		Map<String, Integer> columns = null;
+		long lineNumber = 0;
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			lineNumber++;
+			if (line.trim().isEmpty()) {
+				continue;
+			}
+			if (format == ImportFormat.CSV && columns == null) {
+				columns = header(line);
+				continue;
+			}
+			run.rows++;
+			AddProductRequest row;
+			try {
+				row = format == ImportFormat.CSV ? fromCsv(columns, line)
+						: objectMapper.readValue(line, AddProductRequest.class);
+			} catch (IOException | RuntimeException e) {
+				run.reject(lineNumber, null, "Unreadable row: " + e.getMessage());
+				continue;
+			}
+			String problem = validate(row);
+			if (problem != null) {
+				run.reject(lineNumber, row.getSku(), problem);
+			} else if (!run.skus.add(row.getSku())) {
+				run.reject(lineNumber, row.getSku(), StatusCode.PRODUCT_SKU_EXISTS.getMessage());
+			} else {
+				run.pending.add(new PendingRow(lineNumber, row));
+				if (run.pending.size() >= Math.min(batchSize, idGenerator.maxBlockSize())) {
+					flush(run);
+				}
+			}
+		}
+		flush(run);
+
+		long elapsedNanos = Math.max(System.nanoTime() - started, 1);
+		double rowsPerSecond = run.rows * 1_000_000_000d / elapsedNanos;
+		log.info("Imported {} of {} products for merchant {} in {} ms ({} rows/s), {} rejected", run.imported,
+				run.rows, merchantId, elapsedNanos / 1_000_000, Math.round(rowsPerSecond), run.rejected);
+		return new ImportReport(run.rows, run.imported, run.rejected, elapsedNanos / 1_000_000, rowsPerSecond,
+				run.rejects);
+	}
+
+	private void flush(Run run) {
+		List<PendingRow> batch = run.pending;
+		if (batch.isEmpty()) {
+			return;
+		}
+		run.pending = new ArrayList<>(batchSize);
+		// the sequence JPA draws entity ids from, so imported and added products never share an id
+		long first = idGenerator.nextIdBlock(batch.size());
+		for (int i = 0; i < batch.size(); i++) {
+			batch.get(i).id = first + i;
+		}
+		try {
+			write(() -> insert(run.merchantId, batch));
+			run.imported(batch.size());
+		} catch (DataAccessException e) {
+			log.warn("Import batch of {} rows for merchant {} refused, retrying row by row: {}", batch.size(),
+					run.merchantId, NestedExceptionUtils.getMostSpecificCause(e).getMessage());
+			for (PendingRow row : batch) {
+				try {
+					write(() -> insert(run.merchantId, Collections.singletonList(row)));
+					run.imported(1);
+				} catch (DataAccessException rowError) {
+					run.reject(row.line, row.request.getSku(),
+							"Rejected by database: " + NestedExceptionUtils.getMostSpecificCause(rowError).getMessage());
+				}
+			}
+		}
+		catalogCache.invalidate(run.merchantId, null);
+	}
+
+	private void insert(Long merchantId, List<PendingRow> rows) {
+		jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+			@Override
+			public void setValues(PreparedStatement ps, int i) throws SQLException {
+				PendingRow row = rows.get(i);
+				ps.setLong(1, row.id);
+				ps.setString(2, row.request.getSku());
+				ps.setString(3, row.request.getName());
+				ps.setString(4, row.request.getDescription());
+				ps.setBigDecimal(5, row.request.getPrice());
+				ps.setInt(6, row.request.getStockQuantity());
+				ps.setLong(7, merchantId);
+			}
+
+			@Override
+			public int getBatchSize() {
+				return rows.size();
+			}
+		});
+	}
+
+	/**
+	 * Commits through the write pipeline when it is running, so imports queue up
+	 * behind the single SQLite writer instead of contending with it. A batch still
+	 * queued at the pipeline's request timeout is withdrawn, so the
+	 * {@code SYSTEM_BUSY} that then ends the import never hides a later commit.
+	 */
+	private void write(Runnable work) {
+		if (writePipeline == null) {
+			transactionTemplate.executeWithoutResult(status -> work.run());
+			return;
+		}
+		try {
+			writePipeline.execute("ProductImporter.batch", () -> {
+				work.run();
+				return null;
+			});
+		} catch (RuntimeException | Error e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static Map<String, Integer> header(String line) {
+		List<String> names = CsvLine.parse(line.replace("﻿", ""));
+		Map<String, Integer> columns = new HashMap<>();
+		for (int i = 0; i < names.size(); i++) {
+			columns.put(names.get(i).trim().replace("_", "").toLowerCase(Locale.ROOT), i);
+		}
+		for (String required : REQUIRED_COLUMNS) {
+			if (!columns.containsKey(required)) {
+				throw StatusCode.PARAM_VALIDATION_ERROR.toException();
+			}
+		}
+		return columns;
+	}
+
+	private static AddProductRequest fromCsv(Map<String, Integer> columns, String line) {
+		List<String> fields = CsvLine.parse(line);
+		AddProductRequest row = new AddProductRequest();
+		row.setSku(field(fields, columns.get("sku")));
+		row.setName(field(fields, columns.get("name")));
+		row.setDescription(field(fields, columns.get("description")));
+		String price = field(fields, columns.get("price"));
+		row.setPrice(price == null ? null : new BigDecimal(price));
+		String stock = field(fields, columns.get("stockquantity"));
+		row.setStockQuantity(stock == null ? null : Integer.valueOf(stock));
+		return row;
+	}
+
+	private static String field(List<String> fields, Integer index) {
+		if (index == null || index >= fields.size()) {
+			return null;
+		}
+		String value = fields.get(index).trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	private String validate(AddProductRequest row) {
+		Set<ConstraintViolation<AddProductRequest>> violations = validator.validate(row);
+		if (violations.isEmpty()) {
+			return null;
+		}
+		return violations.stream().map(v -> v.getPropertyPath() + " " + v.getMessage()).sorted()
+				.collect(Collectors.joining(", "));
+	}
+
+	private final class Run {
+		private final Long merchantId;
+		private final Set<String> skus = new HashSet<>();
+		private final List<ImportReject> rejects = new ArrayList<>();
+		private List<PendingRow> pending = new ArrayList<>(batchSize);
+		private long rows;
+		private long imported;
+		private long rejected;
+
+		Run(Long merchantId) {
+			this.merchantId = merchantId;
+		}
+
+		void imported(int count) {
+			imported += count;
+			importedRows.increment(count);
+		}
+
+		void reject(long line, String sku, String reason) {
+			rejected++;
+			rejectedRows.increment();
+			if (rejects.size() < maxReportedRejects) {
+				rejects.add(new ImportReject(line, sku, reason));
+			}
+		}
+	}
+
+	private static final class PendingRow {
+		private final long line;
+		private final AddProductRequest request;
+		private long id;
+
+		PendingRow(long line, AddProductRequest request) {
+			this.line = line;
+			this.request = request;
+		}
+	}
+}
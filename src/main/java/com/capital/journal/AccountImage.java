@@ -0,0 +1,52 @@
+package com.capital.journal;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class AccountImage implements StateImage {
+
+	static final byte KIND = 1;
+
+	private final long accountId;
+	private final BigDecimal balance;
+	private final BigDecimal dailySales;
+	private final long sequence;
+
+	public AccountImage(long accountId, BigDecimal balance) {
+		this(accountId, balance, null, 0L);
+	}
+
+	public AccountImage(long accountId, BigDecimal balance, BigDecimal dailySales) {
+		this(accountId, balance, dailySales, 0L);
+	}
+
+	@Override
+	public void write(ByteBuffer buffer) {
+		buffer.put(KIND);
+		buffer.putLong(accountId);
+		buffer.putLong(sequence);
+		JournalCodec.writeDecimal(buffer, balance);
+		buffer.put(dailySales == null ? (byte) 0 : (byte) 1);
+		if (dailySales != null) {
+			JournalCodec.writeDecimal(buffer, dailySales);
+		}
+	}
+
+	@Override
+	public void applyTo(JournalStateSink sink) {
+		sink.applyAccount(accountId, balance, dailySales, sequence);
+	}
+
+	static AccountImage read(ByteBuffer buffer) {
+		long accountId = buffer.getLong();
+		long sequence = buffer.getLong();
+		BigDecimal balance = JournalCodec.readDecimal(buffer);
+		BigDecimal dailySales = buffer.get() == 0 ? null : JournalCodec.readDecimal(buffer);
+		return new AccountImage(accountId, balance, dailySales, sequence);
+	}
+}
@@ -0,0 +1,45 @@
+package com.capital.journal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * Binary encoding helpers shared by journal records and snapshots.
+ */
+public final class JournalCodec {
+
+	private JournalCodec() {
+	}
+
+	public static void writeDecimal(ByteBuffer buffer, BigDecimal value) {
+		byte[] unscaled = value.unscaledValue().toByteArray();
+		buffer.putInt(value.scale());
+		buffer.put((byte) unscaled.length);
+		buffer.put(unscaled);
+	}
+
+	public static BigDecimal readDecimal(ByteBuffer buffer) {
+		int scale = buffer.getInt();
+		byte[] unscaled = new byte[buffer.get() & 0xFF];
+		buffer.get(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+
+	public static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+		byte[] unscaled = value.unscaledValue().toByteArray();
+		out.writeInt(value.scale());
+		out.writeByte(unscaled.length);
+		out.write(unscaled);
+	}
+
+	public static BigDecimal readDecimal(DataInput in) throws IOException {
+		int scale = in.readInt();
+		byte[] unscaled = new byte[in.readUnsignedByte()];
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), scale);
+	}
+}
@@ -0,0 +1,73 @@
+package com.capital.journal;
+
+import java.math.BigDecimal;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.capital.domain.event.AccountRechargedEvent;
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.event.PurchaseCompletedEvent;
+import com.capital.domain.event.StockChangedEvent;
+
+/**
+ * Journals the mutations made by the service layer. Records are appended just
+ * before commit: SQLite holds its single write lock from the first write until
+ * commit, so journal order matches commit order. Such a record is pending until
+ * the transaction completes and a commit or abort marker is appended, so a
+ * rolled-back write is never replayed; until then it stays pinned, so a snapshot
+ * never claims to cover it early.
+ */
+@Component
+@ConditionalOnExpression(PurchaseJournal.ENABLED)
+public class JournalEventListener {
+
+	@Autowired
+	private PurchaseJournal journal;
+
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void onPurchaseCompleted(PurchaseCompletedEvent event) {
+		append(JournalRecord.of(JournalRecordType.PURCHASE,
+				new AccountImage(event.getUserAccountId(), event.getUserBalance()),
+				new AccountImage(event.getMerchantAccountId(), event.getMerchantBalance(), event.getMerchantDailySales()),
+				new ProductImage(event.getProductId(), event.getStockQuantity())));
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void onAccountRecharged(AccountRechargedEvent event) {
+		append(JournalRecord.of(JournalRecordType.RECHARGE,
+				new AccountImage(event.getAccountId(), event.getBalance())));
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void onStockChanged(StockChangedEvent event) {
+		append(JournalRecord.of(JournalRecordType.RESTOCK,
+				new ProductImage(event.getProductId(), event.getStockQuantity())));
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+	public void onMerchantSettled(MerchantSettledEvent event) {
+		append(JournalRecord.of(JournalRecordType.SETTLEMENT,
+				new AccountImage(event.getAccountId(), event.getBalance(), BigDecimal.ZERO),
+				new MonitorImage(event.getMerchantId(), event.getBalance())));
+	}
+
+	private void append(JournalRecord record) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			journal.append(record);
+			return;
+		}
+		long start = journal.appendPinned(record);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				journal.complete(start, status == STATUS_COMMITTED);
+			}
+		});
+	}
+}
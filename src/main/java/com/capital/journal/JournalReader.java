@@ -0,0 +1,59 @@
+package com.capital.journal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential reader over the region layout written by {@link PurchaseJournal}.
+ * Reading stops at the first empty frame or at a frame whose checksum does not
+ * match, which is how a torn write at the tail is detected after a crash.
+ */
+final class JournalReader {
+
+	private JournalReader() {
+	}
+
+	/**
+	 * @return the position just after the last valid record
+	 */
+	static long read(FileChannel channel, int regionSize, long from, Consumer<JournalRecord> consumer)
+			throws IOException {
+		long fileSize = channel.size();
+		long position = from;
+		while (position < fileSize) {
+			long regionStart = position - position % regionSize;
+			int limit = (int) Math.min(regionSize, fileSize - regionStart);
+			MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, limit);
+			int offset = (int) (position - regionStart);
+			while (offset + PurchaseJournal.FRAME_HEADER <= limit) {
+				int length = region.getInt(offset);
+				if (length == 0) {
+					return regionStart + offset;
+				}
+				if (length == PurchaseJournal.REGION_END) {
+					break;
+				}
+				if (length < 0 || offset + PurchaseJournal.FRAME_HEADER + length > limit) {
+					return regionStart + offset;
+				}
+				int checksum = region.getInt(offset + 4);
+				ByteBuffer body = region.duplicate();
+				body.position(offset + PurchaseJournal.FRAME_HEADER);
+				body.limit(offset + PurchaseJournal.FRAME_HEADER + length);
+				CRC32 crc = new CRC32();
+				crc.update(body.duplicate());
+				if ((int) crc.getValue() != checksum) {
+					return regionStart + offset;
+				}
+				consumer.accept(JournalRecord.decode(body, regionStart + offset));
+				offset += PurchaseJournal.FRAME_HEADER + length;
+			}
+			position = regionStart + regionSize;
+		}
+		return Math.min(position, fileSize);
+	}
+}
@@ -0,0 +1,89 @@
+package com.capital.journal;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * One journal entry: the type of mutation and the post-images of the rows it changed.
+ * <p>
+ * Encoded as {@code [type:1][timestamp:8][count:2][image...]}; framing (length and CRC)
+ * is added by {@link PurchaseJournal}. A record written before its transaction
+ * committed carries {@link #PENDING} in the type byte and only counts once a
+ * {@link JournalRecordType#COMMIT} marker refers to it; markers append the start
+ * position of that record as {@code [reference:8]}.
+ */
+@Getter
+public class JournalRecord {
+
+	static final int PENDING = 0x80;
+
+	private final JournalRecordType type;
+	private final long timestamp;
+	private final List<StateImage> images;
+	private final boolean pending;
+	private final long reference;
+	/** start of the frame when read back from the journal, otherwise {@code -1} */
+	private final long position;
+
+	public JournalRecord(JournalRecordType type, long timestamp, List<StateImage> images) {
+		this(type, timestamp, images, false, -1L, -1L);
+	}
+
+	private JournalRecord(JournalRecordType type, long timestamp, List<StateImage> images, boolean pending,
+			long reference, long position) {
+		this.type = type;
+		this.timestamp = timestamp;
+		this.images = images;
+		this.pending = pending;
+		this.reference = reference;
+		this.position = position;
+	}
+
+	public static JournalRecord of(JournalRecordType type, StateImage... images) {
+		return new JournalRecord(type, System.currentTimeMillis(), Arrays.asList(images));
+	}
+
+	/**
+	 * Marks the outcome of the pending record that starts at {@code start}.
+	 */
+	static JournalRecord outcome(long start, boolean committed) {
+		return new JournalRecord(committed ? JournalRecordType.COMMIT : JournalRecordType.ABORT,
+				System.currentTimeMillis(), Collections.emptyList(), false, start, -1L);
+	}
+
+	public void applyTo(JournalStateSink sink) {
+		for (StateImage image : images) {
+			image.applyTo(sink);
+		}
+	}
+
+	void encode(ByteBuffer buffer, boolean pending) {
+		buffer.put((byte) (type.getCode() | (pending ? PENDING : 0)));
+		buffer.putLong(timestamp);
+		buffer.putShort((short) images.size());
+		for (StateImage image : images) {
+			image.write(buffer);
+		}
+		if (type.isMarker()) {
+			buffer.putLong(reference);
+		}
+	}
+
+	static JournalRecord decode(ByteBuffer buffer, long position) {
+		byte code = buffer.get();
+		JournalRecordType type = JournalRecordType.of((byte) (code & ~PENDING));
+		long timestamp = buffer.getLong();
+		int count = buffer.getShort();
+		List<StateImage> images = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			images.add(StateImage.read(buffer));
+		}
+		long reference = type.isMarker() ? buffer.getLong() : -1L;
+		return new JournalRecord(type, timestamp, images, (code & PENDING) != 0, reference, position);
+	}
+}
@@ -0,0 +1,32 @@
+package com.capital.journal;
+
+public enum JournalRecordType {
+	PURCHASE((byte) 1), RECHARGE((byte) 2), RESTOCK((byte) 3), SETTLEMENT((byte) 4), REVERSAL((byte) 5),
+	/** the pending record at the referenced position committed */
+	COMMIT((byte) 6),
+	/** the pending record at the referenced position rolled back */
+	ABORT((byte) 7);
+
+	private final byte code;
+
+	JournalRecordType(byte code) {
+		this.code = code;
+	}
+
+	public byte getCode() {
+		return code;
+	}
+
+	public boolean isMarker() {
+		return this == COMMIT || this == ABORT;
+	}
+
+	public static JournalRecordType of(byte code) {
+		for (JournalRecordType value : values()) {
+			if (value.code == code) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Unknown journal record type: " + code);
+	}
+}
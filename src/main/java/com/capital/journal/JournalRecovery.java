@@ -0,0 +1,86 @@
+package com.capital.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Rebuilds account balances and stock levels at startup by replaying the journal
+ * into SQLite. When a snapshot exists only the journal written after it is
+ * replayed. Runs during context initialisation, before the web server accepts
+ * requests and before the purchase engine loads any state.
+ * <p>
+ * Only exists while the purchase engine is enabled; without it SQLite is the
+ * durable copy and there is nothing to replay.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+@ConditionalOnExpression(PurchaseJournal.ENABLED)
+public class JournalRecovery {
+
+	@Autowired
+	private PurchaseJournal journal;
+
+	@Autowired
+	private SnapshotStore snapshotStore;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@PostConstruct
+	public void recover() {
+		long started = System.currentTimeMillis();
+		SnapshotStore.Snapshot snapshot = loadSnapshot();
+		long snapshotMs = System.currentTimeMillis() - started;
+		RecoveredState state = snapshot == null ? new RecoveredState() : snapshot.getState();
+		long from = snapshot == null ? PurchaseJournal.HEADER_SIZE : snapshot.getPosition();
+
+		long replayStarted = System.currentTimeMillis();
+		AtomicLong records = new AtomicLong();
+		long end = journal.replay(from, record -> {
+			record.applyTo(state);
+			records.incrementAndGet();
+		});
+		if (!state.isEmpty()) {
+			transactionTemplate.executeWithoutResult(status -> state.applyTo(jdbcTemplate));
+		}
+		long replayMs = System.currentTimeMillis() - replayStarted;
+		if (snapshot != null) {
+			log.info("Loaded snapshot {} at journal position {} ({} entries) in {} ms", snapshot.getFile().getFileName(),
+					snapshot.getPosition(), snapshot.getEntries(), snapshotMs);
+		}
+		log.info("Journal recovery replayed {} records from position {} to {} ({} accounts, {} products changed) in {} ms, "
+				+ "startup recovery took {} ms", records.get(), from, end, state.getChangedAccounts().size(),
+				state.getChangedProducts().size(), replayMs, System.currentTimeMillis() - started);
+	}
+
+	private SnapshotStore.Snapshot loadSnapshot() {
+		SnapshotStore.Snapshot snapshot;
+		try {
+			snapshot = snapshotStore.loadLatest();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (snapshot != null && snapshot.getPosition() > journal.position()) {
+			// the journal was replaced after the snapshot was taken; its positions no longer line up
+			log.warn("Ignoring snapshot {} beyond journal end {}", snapshot.getFile().getFileName(), journal.position());
+			return null;
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,19 @@
+package com.capital.journal;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives the state images carried by journal records during replay.
+ */
+public interface JournalStateSink {
+
+	/**
+	 * @param dailySales {@code null} when the record does not carry daily sales
+	 * @param sequence   per-account ordering hint, {@code 0} when journal order applies
+	 */
+	void applyAccount(long accountId, BigDecimal balance, BigDecimal dailySales, long sequence);
+
+	void applyProduct(long productId, int stockQuantity);
+
+	void applyMonitor(long merchantId, BigDecimal balance);
+}
@@ -0,0 +1,33 @@
+package com.capital.journal;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class MonitorImage implements StateImage {
+
+	static final byte KIND = 3;
+
+	private final long merchantId;
+	private final BigDecimal balance;
+
+	@Override
+	public void write(ByteBuffer buffer) {
+		buffer.put(KIND);
+		buffer.putLong(merchantId);
+		JournalCodec.writeDecimal(buffer, balance);
+	}
+
+	@Override
+	public void applyTo(JournalStateSink sink) {
+		sink.applyMonitor(merchantId, balance);
+	}
+
+	static MonitorImage read(ByteBuffer buffer) {
+		return new MonitorImage(buffer.getLong(), JournalCodec.readDecimal(buffer));
+	}
+}
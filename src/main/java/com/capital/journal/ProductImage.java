@@ -0,0 +1,32 @@
+package com.capital.journal;
+
+import java.nio.ByteBuffer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class ProductImage implements StateImage {
+
+	static final byte KIND = 2;
+
+	private final long productId;
+	private final int stockQuantity;
+
+	@Override
+	public void write(ByteBuffer buffer) {
+		buffer.put(KIND);
+		buffer.putLong(productId);
+		buffer.putInt(stockQuantity);
+	}
+
+	@Override
+	public void applyTo(JournalStateSink sink) {
+		sink.applyProduct(productId, stockQuantity);
+	}
+
+	static ProductImage read(ByteBuffer buffer) {
+		return new ProductImage(buffer.getLong(), buffer.getInt());
+	}
+}
@@ -0,0 +1,336 @@
+package com.capital.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only binary journal of ledger mutations, written through memory-mapped
+ * regions of a single file. Appends only copy bytes into the mapping; a background
+ * syncer forces dirty regions to disk on a fixed cadence (group commit), and
+ * callers that need durability wait for the syncer via {@link #awaitDurable(long, long)}.
+ * <p>
+ * Layout: a 16 byte header {@code [magic][version][regionSize][reserved]} followed by
+ * frames {@code [length:4][crc32:4][record]}. Frames never span regions; the unused
+ * tail of a region is marked with {@link #REGION_END}.
+ * <p>
+ * Records of open transactions are appended as pending and resolved by a commit or
+ * abort marker once the transaction completes; replay skips pending records that
+ * were aborted or never resolved.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression(PurchaseJournal.ENABLED)
+public class PurchaseJournal {
+
+	/** Only the purchase engine acknowledges writes before SQLite has them, so it alone needs the journal. */
+	static final String ENABLED = "${trading.journal.enabled:true} and ${trading.engine.enabled:false}";
+
+	static final int MAGIC = 0x54524A4E;
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 16;
+	static final int FRAME_HEADER = 8;
+	static final int REGION_END = -1;
+
+	private static final int MAX_RECORD_SIZE = 64 * 1024;
+
+	@Value("${trading.journal.path:./trading.journal}")
+	private String path;
+
+	@Value("${trading.journal.region-size-mb:64}")
+	private int regionSizeMb;
+
+	@Value("${trading.journal.sync-interval-ms:10}")
+	private long syncIntervalMs;
+
+	private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_SIZE);
+	private final List<MappedByteBuffer> unsyncedRegions = new ArrayList<>();
+	private final NavigableSet<Long> pinned = new ConcurrentSkipListSet<>();
+	private final Object durableMonitor = new Object();
+
+	private FileChannel channel;
+	private int regionSize;
+	private MappedByteBuffer region;
+	private long regionStart;
+	private long position;
+	private int lastFrameSize;
+	private volatile long durablePosition;
+
+	private ScheduledExecutorService syncer;
+
+	@PostConstruct
+	public void open() throws IOException {
+		Path file = Paths.get(path);
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		if (channel.size() < HEADER_SIZE) {
+			regionSize = regionSizeMb * 1024 * 1024;
+			mapRegion(0);
+			region.putInt(0, MAGIC).putInt(4, VERSION).putInt(8, regionSize).putInt(12, 0);
+			region.force();
+			position = HEADER_SIZE;
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			channel.read(header, 0);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+				throw new IllegalStateException("Not a trading journal: " + file.toAbsolutePath());
+			}
+			regionSize = header.getInt(8);
+			Set<Long> unresolved = new LinkedHashSet<>();
+			position = JournalReader.read(channel, regionSize, HEADER_SIZE, record -> {
+				if (record.isPending()) {
+					unresolved.add(record.getPosition());
+				} else if (record.getType().isMarker()) {
+					unresolved.remove(record.getReference());
+				}
+			});
+			mapRegion(position - position % regionSize);
+			clearTail();
+			// transactions cut off by a crash: whatever they committed is already in SQLite
+			for (Long start : unresolved) {
+				appendFrame(JournalRecord.outcome(start, false), false);
+			}
+			if (!unresolved.isEmpty()) {
+				log.warn("Aborted {} journal records left pending by an unclean shutdown", unresolved.size());
+				sync();
+			}
+		}
+		durablePosition = position;
+
+		syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "journal-sync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+		log.info("Journal {} opened at position {}", file.toAbsolutePath(), position);
+	}
+
+	@PreDestroy
+	public void close() throws IOException, InterruptedException {
+		syncer.shutdown();
+		syncer.awaitTermination(5, TimeUnit.SECONDS);
+		sync();
+		channel.close();
+		log.info("Journal closed at position {}", durablePosition);
+	}
+
+	/**
+	 * Appends a record to the mapped file without forcing it to disk.
+	 *
+	 * @return the journal position just after the record
+	 */
+	public synchronized long append(JournalRecord record) {
+		return appendFrame(record, false);
+	}
+
+	/**
+	 * Appends a record whose transaction has not committed yet. The record is
+	 * pending until {@link #complete(long, boolean)} and its start position stays
+	 * pinned until then, which keeps {@link #safePosition()} from moving past it.
+	 *
+	 * @return the start position of the record, to be passed to {@link #complete(long, boolean)}
+	 */
+	public synchronized long appendPinned(JournalRecord record) {
+		long end = appendFrame(record, true);
+		long start = end - lastFrameSize;
+		pinned.add(start);
+		return start;
+	}
+
+	/**
+	 * Resolves a pending record with a commit or abort marker and unpins it.
+	 */
+	public synchronized void complete(long start, boolean committed) {
+		appendFrame(JournalRecord.outcome(start, committed), false);
+		pinned.remove(start);
+	}
+
+	/**
+	 * The highest position such that every record before it belongs to a completed
+	 * transaction. State read from SQLite after this call covers all of them.
+	 */
+	public synchronized long safePosition() {
+		return pinned.isEmpty() ? position : Math.min(pinned.first(), position);
+	}
+
+	private long appendFrame(JournalRecord record, boolean pending) {
+		scratch.clear();
+		scratch.position(FRAME_HEADER);
+		record.encode(scratch, pending);
+		int length = scratch.position() - FRAME_HEADER;
+		CRC32 crc = new CRC32();
+		crc.update(scratch.array(), FRAME_HEADER, length);
+		scratch.putInt(0, length);
+		scratch.putInt(4, (int) crc.getValue());
+		scratch.flip();
+
+		int frame = FRAME_HEADER + length;
+		int offset = (int) (position - regionStart);
+		if (offset + frame + Integer.BYTES > regionSize) {
+			if (offset + Integer.BYTES <= regionSize) {
+				region.putInt(offset, REGION_END);
+			}
+			unsyncedRegions.add(region);
+			mapRegion(regionStart + regionSize);
+			position = regionStart;
+			offset = 0;
+		}
+		region.position(offset);
+		region.put(scratch);
+		position += frame;
+		lastFrameSize = frame;
+		return position;
+	}
+
+	public synchronized long position() {
+		return position;
+	}
+
+	public long durablePosition() {
+		return durablePosition;
+	}
+
+	/**
+	 * Blocks until everything up to {@code target} has been forced to disk.
+	 *
+	 * @return {@code false} if the timeout elapsed first
+	 */
+	public boolean awaitDurable(long target, long timeoutMs) {
+		long deadline = System.currentTimeMillis() + timeoutMs;
+		synchronized (durableMonitor) {
+			while (durablePosition < target) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0) {
+					return false;
+				}
+				try {
+					durableMonitor.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads every valid record from {@code from} onwards, in journal order. Pending
+	 * records are only passed on once their commit marker is read; aborted and
+	 * unresolved ones are skipped, and markers themselves are not passed on.
+	 *
+	 * @return the position just after the last record read
+	 */
+	public long replay(long from, Consumer<JournalRecord> consumer) {
+		Deque<JournalRecord> waiting = new ArrayDeque<>();
+		Map<Long, Boolean> outcomes = new HashMap<>();
+		long end;
+		try {
+			end = JournalReader.read(channel, regionSize, Math.max(from, HEADER_SIZE), record -> {
+				if (record.getType().isMarker()) {
+					outcomes.put(record.getReference(), record.getType() == JournalRecordType.COMMIT);
+				} else {
+					waiting.add(record);
+				}
+				// a pending record holds back everything after it until it is resolved
+				while (!waiting.isEmpty()) {
+					JournalRecord head = waiting.peek();
+					Boolean committed = head.isPending() ? outcomes.remove(head.getPosition()) : Boolean.TRUE;
+					if (committed == null) {
+						break;
+					}
+					waiting.poll();
+					if (committed) {
+						consumer.accept(head);
+					}
+				}
+			});
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		for (JournalRecord record : waiting) {
+			if (!record.isPending() || Boolean.TRUE.equals(outcomes.get(record.getPosition()))) {
+				consumer.accept(record);
+			}
+		}
+		return end;
+	}
+
+	void sync() {
+		long target;
+		List<MappedByteBuffer> regions;
+		synchronized (this) {
+			target = position;
+			if (target == durablePosition) {
+				return;
+			}
+			regions = new ArrayList<>(unsyncedRegions);
+			regions.add(region);
+			unsyncedRegions.clear();
+		}
+		for (MappedByteBuffer dirty : regions) {
+			dirty.force();
+		}
+		synchronized (durableMonitor) {
+			durablePosition = target;
+			durableMonitor.notifyAll();
+		}
+	}
+
+	private void syncQuietly() {
+		try {
+			sync();
+		} catch (RuntimeException e) {
+			log.error("Journal sync failed", e);
+		}
+	}
+
+	private void mapRegion(long start) {
+		try {
+			region = channel.map(FileChannel.MapMode.READ_WRITE, start, regionSize);
+			regionStart = start;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Zeroes whatever a torn write may have left after the last valid record.
+	 */
+	private void clearTail() {
+		int offset = (int) (position - regionStart);
+		for (int i = offset; i < regionSize; i++) {
+			region.put(i, (byte) 0);
+		}
+		region.force();
+	}
+}
@@ -0,0 +1,115 @@
+package com.capital.journal;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import lombok.Getter;
+
+/**
+ * Latest known value of every account, product and monitor baseline, folded from
+ * a snapshot and the journal records after it during recovery. Only entries changed
+ * since {@link #markBaseline()} are written back to SQLite.
+ */
+@Getter
+public class RecoveredState implements JournalStateSink {
+
+	private static final String ACCOUNT_SQL = "UPDATE accounts SET balance = ?, daily_sales = COALESCE(?, daily_sales), version = version + 1 WHERE id = ?";
+	private static final String PRODUCT_SQL = "UPDATE products SET stock_quantity = ?, version = version + 1 WHERE id = ?";
+	private static final String MONITOR_SQL = "UPDATE merchant_account_monitor SET balance = ?, version = version + 1 WHERE merchant_id = ?";
+
+	private final Map<Long, AccountState> accounts = new HashMap<>();
+	private final Map<Long, Integer> products = new HashMap<>();
+	private final Map<Long, BigDecimal> monitors = new HashMap<>();
+
+	private final Set<Long> changedAccounts = new HashSet<>();
+	private final Set<Long> changedProducts = new HashSet<>();
+	private final Set<Long> changedMonitors = new HashSet<>();
+
+	@Override
+	public void applyAccount(long accountId, BigDecimal balance, BigDecimal dailySales, long sequence) {
+		changedAccounts.add(accountId);
+		AccountState current = accounts.get(accountId);
+		if (current == null) {
+			accounts.put(accountId, new AccountState(balance, dailySales, sequence));
+			return;
+		}
+		if (sequence != 0 && sequence < current.sequence) {
+			// a shard appended this image after a newer one for the same account
+			return;
+		}
+		current.balance = balance;
+		current.sequence = sequence;
+		if (dailySales != null) {
+			current.dailySales = dailySales;
+		}
+	}
+
+	@Override
+	public void applyProduct(long productId, int stockQuantity) {
+		products.put(productId, stockQuantity);
+		changedProducts.add(productId);
+	}
+
+	@Override
+	public void applyMonitor(long merchantId, BigDecimal balance) {
+		monitors.put(merchantId, balance);
+		changedMonitors.add(merchantId);
+	}
+
+	/**
+	 * Treats everything folded so far as already persisted. Called after loading a
+	 * snapshot, whose values were read from SQLite in the first place.
+	 */
+	public void markBaseline() {
+		changedAccounts.clear();
+		changedProducts.clear();
+		changedMonitors.clear();
+	}
+
+	public boolean isEmpty() {
+		return changedAccounts.isEmpty() && changedProducts.isEmpty() && changedMonitors.isEmpty();
+	}
+
+	/**
+	 * Writes the values changed since the baseline over the current SQLite rows.
+	 */
+	public void applyTo(JdbcTemplate jdbcTemplate) {
+		List<Object[]> accountArgs = new ArrayList<>(changedAccounts.size());
+		for (Long id : changedAccounts) {
+			AccountState state = accounts.get(id);
+			accountArgs.add(new Object[] { state.balance, state.dailySales, id });
+		}
+		List<Object[]> productArgs = new ArrayList<>(changedProducts.size());
+		for (Long id : changedProducts) {
+			productArgs.add(new Object[] { products.get(id), id });
+		}
+		List<Object[]> monitorArgs = new ArrayList<>(changedMonitors.size());
+		for (Long id : changedMonitors) {
+			monitorArgs.add(new Object[] { monitors.get(id), id });
+		}
+
+		jdbcTemplate.batchUpdate(ACCOUNT_SQL, accountArgs);
+		jdbcTemplate.batchUpdate(PRODUCT_SQL, productArgs);
+		jdbcTemplate.batchUpdate(MONITOR_SQL, monitorArgs);
+	}
+
+	@Getter
+	public static class AccountState {
+		private BigDecimal balance;
+		private BigDecimal dailySales;
+		private long sequence;
+
+		AccountState(BigDecimal balance, BigDecimal dailySales, long sequence) {
+			this.balance = balance;
+			this.dailySales = dailySales;
+			this.sequence = sequence;
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package com.capital.journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compact binary images of the ledger, each tagged with the journal position it
+ * covers. Recovery loads the newest valid image and replays only the journal
+ * from that position onwards.
+ * <p>
+ * Layout: {@code [magic][version][position:8][createdAt:8]}, then entries
+ * {@code [kind:1][fields]} using the journal image kinds, a {@code 0} kind marking
+ * the end, and a CRC32 of everything before it. Files are written under a temporary
+ * name and renamed into place, so a crash never leaves a half-written snapshot.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression(PurchaseJournal.ENABLED)
+public class SnapshotStore {
+
+	static final int MAGIC = 0x54525350;
+	static final int VERSION = 1;
+
+	private static final String PREFIX = "snapshot-";
+	private static final String SUFFIX = ".bin";
+	private static final byte END = 0;
+
+	@Value("${trading.snapshot.dir:./snapshots}")
+	private String dir;
+
+	@Value("${trading.snapshot.retain:3}")
+	private int retain;
+
+	private Path directory;
+
+	@PostConstruct
+	public void open() throws IOException {
+		directory = Paths.get(dir);
+		Files.createDirectories(directory);
+	}
+
+	/**
+	 * Starts a new snapshot covering every journal record before {@code position}.
+	 */
+	public Writer begin(long position) throws IOException {
+		return new Writer(position);
+	}
+
+	/**
+	 * Loads the newest snapshot that passes its checksum, skipping damaged ones.
+	 *
+	 * @return {@code null} when no usable snapshot exists
+	 */
+	public Snapshot loadLatest() throws IOException {
+		List<Path> files = list();
+		Collections.reverse(files);
+		for (Path file : files) {
+			try {
+				return load(file);
+			} catch (IOException | RuntimeException e) {
+				log.warn("Skipping unreadable snapshot {}: {}", file, e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	Snapshot load(Path file) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream raw = new BufferedInputStream(Files.newInputStream(file))) {
+			DataInputStream in = new DataInputStream(new CheckedInputStream(raw, crc));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a trading snapshot");
+			}
+			long position = in.readLong();
+			long createdAt = in.readLong();
+			RecoveredState state = new RecoveredState();
+			long entries = 0;
+			for (byte kind = in.readByte(); kind != END; kind = in.readByte()) {
+				readEntry(kind, in, state);
+				entries++;
+			}
+			int expected = (int) crc.getValue();
+			if (new DataInputStream(raw).readInt() != expected) {
+				throw new IOException("Snapshot checksum mismatch");
+			}
+			state.markBaseline();
+			return new Snapshot(file, position, createdAt, entries, state);
+		}
+	}
+
+	private static void readEntry(byte kind, DataInputStream in, RecoveredState state) throws IOException {
+		switch (kind) {
+		case AccountImage.KIND:
+			long accountId = in.readLong();
+			BigDecimal balance = JournalCodec.readDecimal(in);
+			BigDecimal dailySales = in.readByte() == 0 ? null : JournalCodec.readDecimal(in);
+			state.applyAccount(accountId, balance, dailySales, 0L);
+			break;
+		case ProductImage.KIND:
+			state.applyProduct(in.readLong(), in.readInt());
+			break;
+		case MonitorImage.KIND:
+			state.applyMonitor(in.readLong(), JournalCodec.readDecimal(in));
+			break;
+		default:
+			throw new IOException("Unknown snapshot entry kind " + kind);
+		}
+	}
+
+	List<Path> list() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			// zero-padded positions make name order match position order
+			return files.filter(file -> {
+				String name = file.getFileName().toString();
+				return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+			}).sorted().collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	private void prune() throws IOException {
+		List<Path> files = list();
+		for (int i = 0; i < files.size() - Math.max(retain, 1); i++) {
+			Files.deleteIfExists(files.get(i));
+		}
+	}
+
+	@Getter
+	@AllArgsConstructor
+	public static class Snapshot {
+		private final Path file;
+		private final long position;
+		private final long createdAt;
+		private final long entries;
+		private final RecoveredState state;
+	}
+
+	/**
+	 * Streams entries into a temporary file; {@link #commit()} publishes it.
+	 */
+	public class Writer implements Closeable {
+
+		@Getter
+		private final long position;
+		private final Path target;
+		private final Path temp;
+		private final FileOutputStream file;
+		private final BufferedOutputStream buffered;
+		private final CRC32 crc = new CRC32();
+		private final DataOutputStream out;
+		@Getter
+		private long entries;
+		private boolean committed;
+
+		Writer(long position) throws IOException {
+			this.position = position;
+			this.target = directory.resolve(String.format("%s%020d%s", PREFIX, position, SUFFIX));
+			this.temp = directory.resolve(target.getFileName() + ".tmp");
+			this.file = new FileOutputStream(temp.toFile());
+			this.buffered = new BufferedOutputStream(file, 64 * 1024);
+			this.out = new DataOutputStream(new CheckedOutputStream(buffered, crc));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(position);
+			out.writeLong(System.currentTimeMillis());
+		}
+
+		public void account(long accountId, BigDecimal balance, BigDecimal dailySales) throws IOException {
+			out.writeByte(AccountImage.KIND);
+			out.writeLong(accountId);
+			JournalCodec.writeDecimal(out, balance);
+			out.writeByte(dailySales == null ? 0 : 1);
+			if (dailySales != null) {
+				JournalCodec.writeDecimal(out, dailySales);
+			}
+			entries++;
+		}
+
+		public void product(long productId, int stockQuantity) throws IOException {
+			out.writeByte(ProductImage.KIND);
+			out.writeLong(productId);
+			out.writeInt(stockQuantity);
+			entries++;
+		}
+
+		public void monitor(long merchantId, BigDecimal balance) throws IOException {
+			out.writeByte(MonitorImage.KIND);
+			out.writeLong(merchantId);
+			JournalCodec.writeDecimal(out, balance);
+			entries++;
+		}
+
+		/**
+		 * Forces the snapshot to disk, renames it into place and drops the oldest
+		 * snapshots beyond the retention count.
+		 */
+		public Path commit() throws IOException {
+			out.writeByte(END);
+			out.flush();
+			new DataOutputStream(buffered).writeInt((int) crc.getValue());
+			buffered.flush();
+			file.getFD().sync();
+			file.close();
+			Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			committed = true;
+			prune();
+			return target;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!committed) {
+				file.close();
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+}
@@ -0,0 +1,28 @@
+package com.capital.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Post-mutation value of a single row. Images are absolute, so replaying them
+ * any number of times yields the same state.
+ */
+public interface StateImage {
+
+	void write(ByteBuffer buffer);
+
+	void applyTo(JournalStateSink sink);
+
+	static StateImage read(ByteBuffer buffer) {
+		byte kind = buffer.get();
+		switch (kind) {
+		case AccountImage.KIND:
+			return AccountImage.read(buffer);
+		case ProductImage.KIND:
+			return ProductImage.read(buffer);
+		case MonitorImage.KIND:
+			return MonitorImage.read(buffer);
+		default:
+			throw new IllegalArgumentException("Unknown state image kind: " + kind);
+		}
+	}
+}
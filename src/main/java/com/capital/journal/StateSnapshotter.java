@@ -0,0 +1,103 @@
+package com.capital.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.capital.engine.EngineWriteBehind;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Periodically writes a snapshot of every balance, daily sales total, stock level
+ * and monitor baseline, so that startup only replays the journal written since.
+ * <p>
+ * The journal position is taken first and the tables are read afterwards: every
+ * record before the position has committed (and, with the engine enabled, been
+ * flushed), so the rows read are at least as new as the position. Rows changed
+ * during the scan are fixed up by replaying the journal tail at startup.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression(PurchaseJournal.ENABLED + " and ${trading.snapshot.enabled:true}")
+public class StateSnapshotter {
+
+	private static final String ACCOUNT_SQL = "SELECT id, balance, daily_sales FROM accounts";
+	private static final String PRODUCT_SQL = "SELECT id, stock_quantity FROM products";
+	private static final String MONITOR_SQL = "SELECT merchant_id, balance FROM merchant_account_monitor";
+
+	@Autowired
+	private PurchaseJournal journal;
+
+	@Autowired
+	private SnapshotStore store;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired(required = false)
+	private EngineWriteBehind writeBehind;
+
+	private long lastPosition = -1;
+
+	@Scheduled(initialDelayString = "${trading.snapshot.interval-ms:300000}", fixedDelayString = "${trading.snapshot.interval-ms:300000}")
+	public void scheduledSnapshot() {
+		try {
+			snapshot();
+		} catch (RuntimeException e) {
+			log.error("State snapshot failed", e);
+		}
+	}
+
+	/**
+	 * Writes a snapshot unless nothing was journaled since the previous one.
+	 *
+	 * @return the snapshot file, or {@code null} if it was skipped
+	 */
+	public synchronized Path snapshot() {
+		long position = journal.safePosition();
+		if (position == lastPosition) {
+			return null;
+		}
+		if (writeBehind != null) {
+			writeBehind.flush();
+		}
+		long started = System.currentTimeMillis();
+		try (SnapshotStore.Writer writer = store.begin(position)) {
+			jdbcTemplate.query(ACCOUNT_SQL, rs -> {
+				try {
+					writer.account(rs.getLong(1), rs.getBigDecimal(2), rs.getBigDecimal(3));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			jdbcTemplate.query(PRODUCT_SQL, rs -> {
+				try {
+					writer.product(rs.getLong(1), rs.getInt(2));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			jdbcTemplate.query(MONITOR_SQL, rs -> {
+				try {
+					writer.monitor(rs.getLong(1), rs.getBigDecimal(2));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+			Path file = writer.commit();
+			lastPosition = position;
+			log.info("Snapshot {} written at journal position {} ({} entries) in {} ms", file.getFileName(),
+					position, writer.getEntries(), System.currentTimeMillis() - started);
+			return file;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package com.capital.metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.CodeSignature;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Records the end-to-end latency and outcome of service calls and settlement
+ * runs. Ordered outermost, so the time includes optimistic retries, the wait
+ * for the write pipeline and the commit.
+ * <p>
+ * Per method it counts {@code trading.service.calls} and times
+ * {@code trading.service.latency}, both tagged by outcome and merchant shard. The
+ * method tag carries the parameter types, e.g.
+ * {@code MerchantServiceImpl.increaseStock(Long,List)}, so overloads stay apart. The
+ * outcome is {@code SUCCESS}, the {@link StatusCode} name of a rejected call, or
+ * {@code SYSTEM_ERROR} for anything else. The shard comes from a
+ * {@code merchantId} argument and is {@code none} for methods without one.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class ServiceMetricsAspect {
+
+	static final String SUCCESS = "SUCCESS";
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Autowired
+	private StageMetrics stageMetrics;
+
+	private final Map<Method, String> methodTags = new ConcurrentHashMap<>();
+	private final Map<String, Integer> merchantArguments = new ConcurrentHashMap<>();
+	private final Map<String, Meters> meters = new ConcurrentHashMap<>();
+
+	@Around("execution(public * com.capital.service.TransactionService.*(..))"
+			+ " || execution(public * com.capital.service.UserService.*(..))"
+			+ " || execution(public * com.capital.service.MerchantService.*(..))"
+			+ " || execution(public * com.capital.scheduler.SettlementScheduler.dailySettlement())")
+	public Object measure(ProceedingJoinPoint joinPoint) throws Throwable {
+		long started = System.nanoTime();
+		String outcome = SUCCESS;
+		try {
+			return joinPoint.proceed();
+		} catch (TradingException e) {
+			outcome = outcome(e);
+			throw e;
+		} catch (Throwable e) {
+			outcome = StatusCode.SYSTEM_ERROR.name();
+			throw e;
+		} finally {
+			String method = method(joinPoint.getSignature());
+			Meters calls = meters.computeIfAbsent(method + '|' + outcome + '|' + shard(joinPoint, method),
+					key -> register(key.split("\\|")));
+			calls.count.increment();
+			calls.latency.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private String method(Signature signature) {
+		if (!(signature instanceof MethodSignature)) {
+			return signature.toShortString();
+		}
+		return methodTags.computeIfAbsent(((MethodSignature) signature).getMethod(), method -> {
+			StringJoiner types = new StringJoiner(",", "(", ")");
+			for (Class<?> type : method.getParameterTypes()) {
+				types.add(type.getSimpleName());
+			}
+			return method.getDeclaringClass().getSimpleName() + '.' + method.getName() + types;
+		});
+	}
+
+	private static String outcome(TradingException e) {
+		StatusCode status = e.toStatusCode();
+		// exceptions built without a StatusCode match none
+		return status == null ? e.getFullErrorCode() : status.name();
+	}
+
+	private String shard(ProceedingJoinPoint joinPoint, String method) {
+		int index = merchantArguments.computeIfAbsent(method, m -> merchantArgument(joinPoint));
+		Object merchantId = index < 0 ? null : joinPoint.getArgs()[index];
+		return stageMetrics.shardTag(merchantId instanceof Long ? (Long) merchantId : null);
+	}
+
+	private static int merchantArgument(ProceedingJoinPoint joinPoint) {
+		if (joinPoint.getSignature() instanceof CodeSignature) {
+			String[] names = ((CodeSignature) joinPoint.getSignature()).getParameterNames();
+			for (int i = 0; names != null && i < names.length; i++) {
+				if ("merchantId".equals(names[i])) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private Meters register(String[] key) {
+		Counter count = Counter.builder("trading.service.calls").description("Service calls by outcome")
+				.tag("method", key[0]).tag("outcome", key[1]).tag("shard", key[2]).register(meterRegistry);
+		Timer latency = Timer.builder("trading.service.latency").description("End-to-end time of a service call")
+				.tag("method", key[0]).tag("outcome", key[1]).tag("shard", key[2]).publishPercentileHistogram()
+				.register(meterRegistry);
+		return new Meters(count, latency);
+	}
+
+	private static final class Meters {
+		private final Counter count;
+		private final Timer latency;
+
+		Meters(Counter count, Timer latency) {
+			this.count = count;
+			this.latency = latency;
+		}
+	}
+}
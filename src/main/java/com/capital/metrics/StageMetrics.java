@@ -0,0 +1,87 @@
+package com.capital.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Times the stages of a service call as {@code trading.stage.latency}, tagged by
+ * operation, stage and merchant shard, with a percentile histogram so p99 and
+ * p99.9 can be aggregated across instances. The shard is the merchant id modulo
+ * {@code trading.metrics.merchant-shards}, the same split the purchase engine
+ * uses; calls without a merchant are tagged {@value #NO_SHARD}. User ids are never
+ * tagged.
+ */
+@Component
+public class StageMetrics {
+
+	static final String NO_SHARD = "none";
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${trading.metrics.merchant-shards:${trading.engine.shards:4}}")
+	private int merchantShards;
+
+	/** operation, then stage, then timers indexed by shard with the no-shard timer last */
+	private final Map<String, Map<String, Timer[]>> timers = new ConcurrentHashMap<>();
+
+	public Stopwatch start(String operation) {
+		return new Stopwatch(operation, merchantShards);
+	}
+
+	public Stopwatch start(String operation, Long merchantId) {
+		return new Stopwatch(operation, merchantId == null ? merchantShards : shardOf(merchantId));
+	}
+
+	public String shardTag(Long merchantId) {
+		return merchantId == null ? NO_SHARD : Integer.toString(shardOf(merchantId));
+	}
+
+	private int shardOf(long merchantId) {
+		return Math.floorMod(merchantId, merchantShards);
+	}
+
+	private Timer timer(String operation, String stage, int shard) {
+		Timer[] byShard = timers.computeIfAbsent(operation, o -> new ConcurrentHashMap<>())
+				.computeIfAbsent(stage, s -> new Timer[merchantShards + 1]);
+		Timer timer = byShard[shard];
+		if (timer == null) {
+			// the registry returns the existing meter when two threads race here
+			timer = Timer.builder("trading.stage.latency").description("Time spent in one stage of a service call")
+					.tag("operation", operation).tag("stage", stage)
+					.tag("shard", shard == merchantShards ? NO_SHARD : Integer.toString(shard))
+					.publishPercentileHistogram().register(meterRegistry);
+			byShard[shard] = timer;
+		}
+		return timer;
+	}
+
+	/**
+	 * Measures consecutive stages of one call on the calling thread; each
+	 * {@link #stage(String)} records the time since the previous one.
+	 */
+	public final class Stopwatch {
+		private final String operation;
+		private final int shard;
+		private long mark = System.nanoTime();
+
+		private Stopwatch(String operation, int shard) {
+			this.operation = operation;
+			this.shard = shard;
+		}
+
+		public void stage(String stage) {
+			long now = System.nanoTime();
+			timer(operation, stage, shard).record(now - mark, TimeUnit.NANOSECONDS);
+			mark = now;
+		}
+	}
+}
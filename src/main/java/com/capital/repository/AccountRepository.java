@@ -1,10 +1,31 @@
 package com.capital.repository;
 
+import java.math.BigDecimal;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.capital.domain.shared.Account;
 
 @Repository
 public interface AccountRepository extends JpaRepository<Account, Long> {
+
+	/**
+	 * Deducts {@code amount} only if the balance covers it.
+	 *
+	 * @return 1 on success, 0 if the balance was insufficient
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Account a SET a.balance = a.balance - :amount, a.version = a.version + 1 WHERE a.id = :id AND a.balance >= :amount")
+	int debit(@Param("id") Long id, @Param("amount") BigDecimal amount);
+
+	/**
+	 * Credits a sale to a merchant account, adding to both balance and daily sales.
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Account a SET a.balance = a.balance + :amount, a.dailySales = a.dailySales + :amount, a.version = a.version + 1 WHERE a.id = :id")
+	int creditSale(@Param("id") Long id, @Param("amount") BigDecimal amount);
 }
@@ -1,6 +1,12 @@
 package com.capital.repository;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.capital.domain.merchant.Merchant;
@@ -11,4 +17,28 @@ public interface MerchantRepository extends JpaRepository<Merchant, Long> {
 	boolean existsByCode(String code);
 	
 	boolean existsByName(String name);
+
+	@Query("SELECT m.accountId FROM Merchant m WHERE m.id = :id")
+	Long findAccountIdById(@Param("id") Long id);
+
+	/**
+	 * Keyset chunk for settlement: merchants in {@code (afterId, upToId]} in id order
+	 * with their account and monitor fetched in the same query.
+	 */
+	@Query("SELECT m FROM Merchant m JOIN FETCH m.account LEFT JOIN FETCH m.merchantAccountMonitor"
+			+ " WHERE m.id > :afterId AND m.id <= :upToId ORDER BY m.id")
+	List<Merchant> findSettlementChunk(@Param("afterId") Long afterId, @Param("upToId") Long upToId,
+			Pageable pageable);
+
+	@Query("SELECT m FROM Merchant m JOIN FETCH m.account LEFT JOIN FETCH m.merchantAccountMonitor"
+			+ " WHERE m.id IN :ids ORDER BY m.id")
+	List<Merchant> findSettlementBatch(@Param("ids") Collection<Long> ids);
+
+	/**
+	 * Upper id of each of {@code partitions} equally sized, id-ordered slices of the
+	 * merchant table, in ascending order.
+	 */
+	@Query(value = "SELECT MAX(id) FROM (SELECT id, NTILE(:partitions) OVER (ORDER BY id) AS part FROM merchants)"
+			+ " GROUP BY part ORDER BY part", nativeQuery = true)
+	List<Number> findPartitionBounds(@Param("partitions") int partitions);
 }
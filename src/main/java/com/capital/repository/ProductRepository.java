@@ -0,0 +1,43 @@
+package com.capital.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.capital.domain.product.Product;
+
+@Repository
+public interface ProductRepository extends JpaRepository<Product, Long> {
+
+	/**
+	 * Single-row fetch through the unique {@code (merchant_id, sku)} index.
+	 */
+	Product findByMerchantIdAndSku(Long merchantId, String sku);
+
+	boolean existsByMerchantIdAndSku(Long merchantId, String sku);
+
+	List<Product> findByMerchantIdOrderByIdAsc(Long merchantId);
+
+	/**
+	 * Keyset page: products after {@code afterId} in id order, served by the
+	 * {@code (merchant_id, id)} index without an offset scan.
+	 */
+	List<Product> findByMerchantIdAndIdGreaterThanOrderByIdAsc(Long merchantId, Long afterId, Pageable pageable);
+
+	List<Product> findByMerchantIdAndSkuIn(Long merchantId, Collection<String> skus);
+
+	/**
+	 * Takes {@code quantity} units only if that many are in stock.
+	 *
+	 * @return 1 on success, 0 if the stock was insufficient
+	 */
+	@Modifying(flushAutomatically = true, clearAutomatically = true)
+	@Query("UPDATE Product p SET p.stockQuantity = p.stockQuantity - :quantity, p.version = p.version + 1 WHERE p.id = :id AND p.stockQuantity >= :quantity")
+	int decrementStock(@Param("id") Long id, @Param("quantity") Integer quantity);
+}
@@ -0,0 +1,26 @@
+package com.capital.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.capital.domain.shared.SettlementCheckpoint;
+
+@Repository
+public interface SettlementCheckpointRepository extends JpaRepository<SettlementCheckpoint, Long> {
+
+	List<SettlementCheckpoint> findByRunIdOrderByPartitionIndexAsc(Long runId);
+
+	/**
+	 * Records a settled chunk; runs inside the chunk's transaction.
+	 */
+	@Modifying
+	@Query("UPDATE SettlementCheckpoint c SET c.lastSettledId = :lastSettledId, c.merchants = c.merchants + :merchants,"
+			+ " c.warnings = c.warnings + :warnings, c.completed = :completed WHERE c.id = :id")
+	int advance(@Param("id") Long id, @Param("lastSettledId") long lastSettledId, @Param("merchants") int merchants,
+			@Param("warnings") int warnings, @Param("completed") boolean completed);
+}
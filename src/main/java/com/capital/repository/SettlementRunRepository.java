@@ -0,0 +1,15 @@
+package com.capital.repository;
+
+import java.util.Collection;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.capital.domain.shared.SettlementRun;
+import com.capital.enums.SettlementRunStatus;
+
+@Repository
+public interface SettlementRunRepository extends JpaRepository<SettlementRun, Long> {
+
+	SettlementRun findFirstByStatusInOrderByStartedAtDesc(Collection<SettlementRunStatus> statuses);
+}
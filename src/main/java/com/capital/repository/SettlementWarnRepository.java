@@ -1,5 +1,8 @@
 package com.capital.repository;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
@@ -8,4 +11,6 @@ import com.capital.domain.shared.SettlementWarn;
 @Repository
 public interface SettlementWarnRepository  extends JpaRepository<SettlementWarn, Long>{
 
+	List<SettlementWarn> findByMerchantIdIn(Collection<Long> merchantIds);
+
 }
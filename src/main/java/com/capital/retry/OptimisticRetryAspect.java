@@ -0,0 +1,115 @@
+package com.capital.retry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.persistence.OptimisticLockException;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.capital.exception.StatusCode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Retries service calls that lost an optimistic lock race on a versioned entity.
+ * Ordered inside the service metrics advice and ahead of the transaction advice,
+ * so every attempt runs in a fresh transaction; calls that join an outer
+ * transaction are left to the outermost caller. Once the attempt budget is spent
+ * the conflict surfaces as {@link StatusCode#CONCURRENT_MODIFICATION}.
+ * <p>
+ * Per method it counts {@code trading.retry.calls}, {@code trading.retry.conflicts},
+ * {@code trading.retry.retries} and {@code trading.retry.exhausted}; the conflict
+ * rate is conflicts over calls.
+ */
+@Slf4j
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class OptimisticRetryAspect {
+
+	@Autowired
+	private RetryPolicy retryPolicy;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private final Map<String, RetryMeters> meters = new ConcurrentHashMap<>();
+
+	@Around("execution(public * com.capital.service.TransactionService.*(..))"
+			+ " || execution(public * com.capital.service.UserService.*(..))"
+			+ " || execution(public * com.capital.service.MerchantService.*(..))")
+	public Object retryOnConflict(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (TransactionSynchronizationManager.isActualTransactionActive()) {
+			return joinPoint.proceed();
+		}
+		RetryMeters counters = meters.computeIfAbsent(joinPoint.getSignature().toShortString(), this::register);
+		counters.calls.increment();
+		for (int attempt = 1;; attempt++) {
+			try {
+				return joinPoint.proceed();
+			} catch (RuntimeException e) {
+				if (!isConflict(e)) {
+					throw e;
+				}
+				counters.conflicts.increment();
+				if (attempt >= retryPolicy.getMaxAttempts()) {
+					counters.exhausted.increment();
+					log.warn("{} still conflicting after {} attempts", joinPoint.getSignature().toShortString(), attempt);
+					throw StatusCode.CONCURRENT_MODIFICATION.toException(e);
+				}
+				counters.retries.increment();
+				long backoff = retryPolicy.backoffMs(attempt);
+				log.debug("{} hit an optimistic lock conflict, retrying in {} ms", joinPoint.getSignature().toShortString(),
+						backoff);
+				if (backoff > 0) {
+					Thread.sleep(backoff);
+				}
+			}
+		}
+	}
+
+	static boolean isConflict(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof OptimisticLockingFailureException || t instanceof OptimisticLockException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private RetryMeters register(String method) {
+		return new RetryMeters(counter("trading.retry.calls", "Service calls eligible for retry", method),
+				counter("trading.retry.conflicts", "Optimistic lock conflicts", method),
+				counter("trading.retry.retries", "Attempts retried after a conflict", method),
+				counter("trading.retry.exhausted", "Calls that ran out of attempts", method));
+	}
+
+	private Counter counter(String name, String description, String method) {
+		return Counter.builder(name).description(description).tag("method", method).register(meterRegistry);
+	}
+
+	private static final class RetryMeters {
+		private final Counter calls;
+		private final Counter conflicts;
+		private final Counter retries;
+		private final Counter exhausted;
+
+		RetryMeters(Counter calls, Counter conflicts, Counter retries, Counter exhausted) {
+			this.calls = calls;
+			this.conflicts = conflicts;
+			this.retries = retries;
+			this.exhausted = exhausted;
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package com.capital.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+
+/**
+ * Attempt budget and backoff for retrying optimistic lock conflicts. Backoff is
+ * exponential with full jitter, so callers that collided once spread out instead
+ * of colliding again in lockstep.
+ */
+@Getter
+@Component
+public class RetryPolicy {
+
+	@Value("${trading.retry.max-attempts:3}")
+	private int maxAttempts;
+
+	@Value("${trading.retry.initial-backoff-ms:5}")
+	private long initialBackoffMs;
+
+	@Value("${trading.retry.max-backoff-ms:100}")
+	private long maxBackoffMs;
+
+	/**
+	 * @param attempt the attempt that just failed, starting at 1
+	 * @return milliseconds to wait before the next attempt
+	 */
+	public long backoffMs(int attempt) {
+		long ceiling = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+		return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+	}
+}
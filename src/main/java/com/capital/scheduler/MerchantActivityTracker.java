@@ -0,0 +1,68 @@
+package com.capital.scheduler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.capital.domain.event.PurchaseCompletedEvent;
+
+/**
+ * Merchants whose balance moved since they were last settled, so settlement can
+ * visit only those. A merchant is marked after its sale committed; a mark taken
+ * earlier could be drained and settled before the sale becomes visible.
+ * <p>
+ * The set lives in memory, so the first run after startup is a full sweep.
+ */
+@Component
+public class MerchantActivityTracker {
+
+	private final Set<Long> active = ConcurrentHashMap.newKeySet();
+	private final AtomicBoolean fullSweep = new AtomicBoolean(true);
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onPurchaseCompleted(PurchaseCompletedEvent event) {
+		markActive(event.getMerchantId());
+	}
+
+	public void markActive(Long merchantId) {
+		active.add(merchantId);
+	}
+
+	public void markActive(Collection<Long> merchantIds) {
+		active.addAll(merchantIds);
+	}
+
+	/**
+	 * Makes the next settlement visit every merchant.
+	 */
+	public void requestFullSweep() {
+		fullSweep.set(true);
+	}
+
+	boolean takeFullSweep() {
+		return fullSweep.getAndSet(false);
+	}
+
+	/**
+	 * Removes and returns the marked merchants in ascending id order. Marks added
+	 * concurrently are either returned or kept for the next drain.
+	 */
+	List<Long> drain() {
+		List<Long> merchantIds = new ArrayList<>(active.size());
+		for (Long merchantId : active) {
+			if (active.remove(merchantId)) {
+				merchantIds.add(merchantId);
+			}
+		}
+		Collections.sort(merchantIds);
+		return merchantIds;
+	}
+}
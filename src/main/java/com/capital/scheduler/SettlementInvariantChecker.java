@@ -0,0 +1,176 @@
+package com.capital.scheduler;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.event.PurchaseCompletedEvent;
+import com.capital.domain.shared.SettlementWarn;
+import com.capital.repository.SettlementWarnRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Checks the settlement invariant {@code balance - monitor balance == dailySales}
+ * on every committed sale instead of once per settlement run. The monitor balance
+ * of each merchant is kept in memory and moved on {@link MerchantSettledEvent}, so
+ * the check itself is a subtraction against the balances the sale committed.
+ * <p>
+ * A failed check is confirmed against the database on a background thread before
+ * a {@link SettlementWarn} is raised: an event delivered after a later settlement
+ * carries stale balances and must not count as drift.
+ */
+@Slf4j
+@Component
+public class SettlementInvariantChecker {
+
+	private static final String STATE_SQL = "SELECT a.balance, a.daily_sales, mon.balance FROM merchants m"
+			+ " JOIN accounts a ON a.id = m.account_id"
+			+ " JOIN merchant_account_monitor mon ON mon.merchant_id = m.id WHERE m.id = ?";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private SettlementWarnRepository settlementWarnRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${trading.settlement.invariant-check:true}")
+	private boolean enabled;
+
+	private final Map<Long, BigDecimal> baselines = new ConcurrentHashMap<>();
+	private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+	private ExecutorService verifier;
+	private TransactionTemplate warnTransaction;
+	private Counter breaks;
+
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		verifier = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "settlement-invariant-checker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		warnTransaction = new TransactionTemplate(transactionManager);
+		warnTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+		breaks = Counter.builder("trading.settlement.invariant.breaks")
+				.description("Merchants found violating the settlement invariant between runs").register(meterRegistry);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (verifier != null) {
+			verifier.shutdown();
+			verifier.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onPurchaseCompleted(PurchaseCompletedEvent event) {
+		checkCommitted(event.getMerchantId(), event.getMerchantBalance(), event.getMerchantDailySales());
+	}
+
+	/**
+	 * Checks the balances of a merchant whose sales have just committed. Used by the
+	 * purchase engine's write-behind, which commits sales without publishing
+	 * {@link PurchaseCompletedEvent}.
+	 */
+	public void checkCommitted(Long merchantId, BigDecimal balance, BigDecimal dailySales) {
+		if (verifier == null) {
+			return;
+		}
+		BigDecimal baseline = baselines.get(merchantId);
+		if (baseline == null || !holds(balance, baseline, dailySales)) {
+			// unknown merchants are checked once to learn their baseline
+			verify(merchantId);
+		}
+	}
+
+	@TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+	public void onMerchantSettled(MerchantSettledEvent event) {
+		baselines.put(event.getMerchantId(), event.getBalance());
+	}
+
+	private void verify(Long merchantId) {
+		if (!pending.add(merchantId)) {
+			return;
+		}
+		verifier.execute(() -> {
+			pending.remove(merchantId);
+			try {
+				check(merchantId);
+			} catch (RuntimeException e) {
+				log.warn("Settlement invariant check for merchant {} failed: {}", merchantId, e.toString());
+			}
+		});
+	}
+
+	void check(Long merchantId) {
+		List<BigDecimal[]> rows = jdbcTemplate.query(STATE_SQL, (rs, i) -> new BigDecimal[] { rs.getBigDecimal(1),
+				rs.getBigDecimal(2), rs.getBigDecimal(3) }, merchantId);
+		if (rows.isEmpty()) {
+			return;
+		}
+		BigDecimal balance = rows.get(0)[0];
+		BigDecimal dailySales = rows.get(0)[1] == null ? BigDecimal.ZERO : rows.get(0)[1];
+		BigDecimal preBalance = rows.get(0)[2];
+		baselines.put(merchantId, preBalance);
+		if (holds(balance, preBalance, dailySales)) {
+			return;
+		}
+		breaks.increment();
+		log.error("Settlement invariant broken for merchant {}: balance={}, preBalance={}, dailySales={}", merchantId,
+				balance, preBalance, dailySales);
+		warnTransaction.executeWithoutResult(status -> {
+			// merchant_id is unique: a merchant keeps only its latest warning
+			List<SettlementWarn> previous = settlementWarnRepository
+					.findByMerchantIdIn(Collections.singletonList(merchantId));
+			SettlementWarn warn = previous.isEmpty() ? new SettlementWarn() : previous.get(0);
+			warn.setMerchantId(merchantId);
+			warn.setBalance(balance);
+			warn.setPreBalance(preBalance);
+			warn.setDailySales(dailySales);
+			warn.setCreatedAt(LocalDateTime.now());
+			settlementWarnRepository.save(warn);
+		});
+	}
+
+	private static boolean holds(BigDecimal balance, BigDecimal preBalance, BigDecimal dailySales) {
+		if (balance == null || preBalance == null) {
+			return true;
+		}
+		return balance.subtract(preBalance).compareTo(dailySales == null ? BigDecimal.ZERO : dailySales) == 0;
+	}
+}
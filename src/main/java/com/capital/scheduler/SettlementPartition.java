@@ -0,0 +1,87 @@
+package com.capital.scheduler;
+
+import java.util.Collections;
+import java.util.List;
+
+import lombok.Getter;
+
+/**
+ * A range {@code (afterId, upToId]} of merchant ids settled as a unit; for an
+ * incremental run only the listed active ids within it. The cursor follows the
+ * last committed chunk and is persisted with it as a checkpoint, so a failed or
+ * interrupted partition continues where it stopped without settling its merchants
+ * twice.
+ */
+@Getter
+public class SettlementPartition {
+	private final int index;
+	private final long afterId;
+	private final long upToId;
+	private final List<Long> merchantIds;
+	private Long checkpointId;
+	private long cursor;
+	private int merchants;
+	private int warnings;
+	private int attempts;
+	private long elapsedMs;
+	private boolean completed;
+	private String failure;
+
+	public SettlementPartition(int index, long afterId, long upToId) {
+		this(index, afterId, upToId, null);
+	}
+
+	public SettlementPartition(int index, long afterId, List<Long> merchantIds) {
+		this(index, afterId, merchantIds.get(merchantIds.size() - 1), merchantIds);
+	}
+
+	private SettlementPartition(int index, long afterId, long upToId, List<Long> merchantIds) {
+		this.index = index;
+		this.afterId = afterId;
+		this.upToId = upToId;
+		this.merchantIds = merchantIds;
+		this.cursor = afterId;
+	}
+
+	/**
+	 * The listed merchant ids not yet settled; empty for a range partition.
+	 */
+	public List<Long> remainingIds() {
+		if (merchantIds == null) {
+			return Collections.emptyList();
+		}
+		int position = Collections.binarySearch(merchantIds, cursor);
+		return merchantIds.subList(position >= 0 ? position + 1 : -position - 1, merchantIds.size());
+	}
+
+	void attach(Long checkpointId) {
+		this.checkpointId = checkpointId;
+	}
+
+	void resumeFrom(long cursor) {
+		this.cursor = cursor;
+	}
+
+	void attempt() {
+		attempts++;
+		failure = null;
+	}
+
+	void chunkCommitted(long lastId, int merchants, int warnings) {
+		this.cursor = lastId;
+		this.merchants += merchants;
+		this.warnings += warnings;
+	}
+
+	void complete() {
+		completed = true;
+	}
+
+	void fail(String failure) {
+		this.failure = failure;
+	}
+
+	void addElapsed(long elapsedMs) {
+		this.elapsedMs += elapsedMs;
+	}
+}
@@ -0,0 +1,126 @@
+package com.capital.scheduler;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.shared.SettlementRun;
+import com.capital.enums.SettlementRunStatus;
+import com.capital.repository.SettlementRunRepository;
+import com.capital.util.IdGenerator;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Settles every merchant with a handful of set-based statements instead of
+ * loading merchants one chunk at a time: the balance check and the warnings are
+ * an insert-select per id block, and the daily resets are one update per table.
+ * The whole pass is one transaction, so it needs no checkpoints.
+ * <p>
+ * The comparison is the one {@link SettlementScheduler} makes per merchant,
+ * rounded to the two decimals amounts are stored with: a warning is written for
+ * every merchant whose balance moved by something other than its daily sales.
+ */
+@Slf4j
+@Component
+public class SettlementReconciler {
+
+	private static final String SETTLED = " FROM merchants m"
+			+ " JOIN accounts a ON a.id = m.account_id"
+			+ " JOIN merchant_account_monitor mon ON mon.merchant_id = m.id";
+	private static final String INVARIANT_BROKEN = SETTLED
+			+ " WHERE ROUND(a.balance - mon.balance - COALESCE(a.daily_sales, 0), 2) <> 0";
+	private static final String SLICE_SQL = "SELECT COUNT(*), MAX(id) FROM (SELECT m.id AS id" + INVARIANT_BROKEN
+			+ " AND m.id > ? ORDER BY m.id LIMIT ?)";
+	private static final String WARN_SQL = "INSERT INTO settlement_warns"
+			+ " (id, merchant_id, pre_balance, balance, daily_sales, created_at)"
+			+ " SELECT ? + ROW_NUMBER() OVER (ORDER BY m.id) - 1, m.id, mon.balance, a.balance,"
+			+ " COALESCE(a.daily_sales, 0), ?" + INVARIANT_BROKEN + " AND m.id > ? AND m.id <= ?"
+			+ " ON CONFLICT (merchant_id) DO UPDATE SET pre_balance = excluded.pre_balance,"
+			+ " balance = excluded.balance, daily_sales = excluded.daily_sales, created_at = excluded.created_at";
+	private static final String SETTLED_SQL = "SELECT m.id, m.account_id, a.balance, COALESCE(a.daily_sales, 0)"
+			+ SETTLED;
+	private static final String MONITOR_SQL = "UPDATE merchant_account_monitor"
+			+ " SET balance = (SELECT a.balance FROM merchants m JOIN accounts a ON a.id = m.account_id"
+			+ " WHERE m.id = merchant_account_monitor.merchant_id), version = COALESCE(version, 0) + 1"
+			+ " WHERE merchant_id IN (SELECT m.id FROM merchants m JOIN accounts a ON a.id = m.account_id)";
+	private static final String ACCOUNT_SQL = "UPDATE accounts SET daily_sales = 0, version = COALESCE(version, 0) + 1"
+			+ " WHERE id IN (SELECT m.account_id FROM merchants m"
+			+ " JOIN merchant_account_monitor mon ON mon.merchant_id = m.id)";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private SettlementRunRepository runRepository;
+
+	@Autowired
+	private IdGenerator idGenerator;
+
+	public SettlementReport reconcile() {
+		long started = System.nanoTime();
+		LocalDateTime now = LocalDateTime.now();
+		SettlementRun run = new SettlementRun();
+		int[] totals = new int[2];
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+			// warnings are inserted in slices of at most one id block
+			int sliceSize = idGenerator.maxBlockSize();
+			long afterId = Long.MIN_VALUE;
+			while (true) {
+				long[] slice = jdbcTemplate.queryForObject(SLICE_SQL,
+						(rs, i) -> new long[] { rs.getLong(1), rs.getLong(2) }, afterId, sliceSize);
+				if (slice == null || slice[0] == 0) {
+					break;
+				}
+				long firstId = idGenerator.nextIdBlock((int) slice[0]);
+				totals[1] += jdbcTemplate.update(WARN_SQL, firstId, Timestamp.valueOf(now), afterId, slice[1]);
+				if (slice[0] < sliceSize) {
+					break;
+				}
+				afterId = slice[1];
+			}
+			if (totals[1] > 0) {
+				log.error("Mismatch detected for {} merchants during set-based settlement", totals[1]);
+			}
+			// events carry the balance the monitors are moved to, so read it before the resets
+			jdbcTemplate.query(SETTLED_SQL, (ResultSet rs) -> {
+				BigDecimal balance = rs.getBigDecimal(3);
+				eventPublisher.publishEvent(
+						new MerchantSettledEvent(rs.getLong(1), rs.getLong(2), balance, rs.getBigDecimal(4)));
+				totals[0]++;
+			});
+			jdbcTemplate.update(MONITOR_SQL);
+			jdbcTemplate.update(ACCOUNT_SQL);
+
+			run.setStatus(SettlementRunStatus.COMPLETED);
+			run.setFullSweep(true);
+			run.setMerchants(totals[0]);
+			run.setWarnings(totals[1]);
+			run.setExecutions(1);
+			run.setStartedAt(now);
+			run.setFinishedAt(LocalDateTime.now());
+			run.setElapsedMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+			runRepository.save(run);
+		});
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		log.info("Set-based settlement completed: {} merchants, {} warnings, {} ms.", totals[0], totals[1], elapsedMs);
+		return new SettlementReport(run.getId(), Collections.emptyList(), totals[0], totals[1], elapsedMs);
+	}
+}
@@ -0,0 +1,24 @@
+package com.capital.scheduler;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a settlement run, aggregated over its partitions.
+ */
+@Getter
+@AllArgsConstructor
+public class SettlementReport {
+	private Long runId;
+	private List<SettlementPartition> partitions;
+	private int merchants;
+	private int warnings;
+	private long elapsedMs;
+
+	public List<SettlementPartition> getFailed() {
+		return partitions.stream().filter(p -> !p.isCompleted()).collect(Collectors.toList());
+	}
+}
@@ -2,19 +2,50 @@ package com.capital.scheduler;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.capital.domain.event.MerchantSettledEvent;
 import com.capital.domain.merchant.Merchant;
+import com.capital.domain.shared.SettlementCheckpoint;
+import com.capital.domain.shared.SettlementRun;
 import com.capital.domain.shared.SettlementWarn;
+import com.capital.enums.SettlementRunStatus;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.MerchantRepository;
+import com.capital.repository.SettlementCheckpointRepository;
+import com.capital.repository.SettlementRunRepository;
 import com.capital.repository.SettlementWarnRepository;
+import com.capital.retry.RetryPolicy;
 
 import lombok.extern.slf4j.Slf4j;
 
@@ -22,43 +53,408 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class SettlementScheduler {
 	private static final Logger logger = LoggerFactory.getLogger(SettlementScheduler.class);
+	private static final Set<SettlementRunStatus> RESUMABLE = EnumSet.of(SettlementRunStatus.RUNNING,
+			SettlementRunStatus.FAILED);
 	@Autowired
 	private MerchantRepository merchantRepository;
 	
 	@Autowired
 	private SettlementWarnRepository settlementWarnRepository;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private RetryPolicy retryPolicy;
+
+	@Autowired
+	private MerchantActivityTracker activityTracker;
+
+	@Autowired
+	private SettlementRunRepository runRepository;
+
+	@Autowired
+	private SettlementCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private SettlementReconciler reconciler;
+
+	@Autowired
+	private StageMetrics stageMetrics;
+
+	@PersistenceContext
+	private EntityManager entityManager;
+
+	@Value("${trading.settlement.chunk-size:500}")
+	private int chunkSize;
+
+	@Value("${trading.settlement.set-based:false}")
+	private boolean setBased;
+
+	@Value("${trading.settlement.incremental:true}")
+	private boolean incremental;
+
+	@Value("${trading.settlement.full-sweep-every:7}")
+	private int fullSweepEvery;
+
+	@Value("${trading.settlement.parallelism:1}")
+	private int parallelism;
+
+	@Value("${trading.settlement.partitions:16}")
+	private int partitionCount;
+
+	@Value("${trading.settlement.partition-attempts:3}")
+	private int partitionAttempts;
+
+	private final ReentrantLock runLock = new ReentrantLock();
+
+	/** guarded by {@link #runLock} */
+	private int runsSinceFullSweep;
+
+	private ExecutorService workers;
+
+	@PostConstruct
+	public void start() {
+		if (parallelism > 1) {
+			AtomicInteger threads = new AtomicInteger();
+			workers = Executors.newFixedThreadPool(parallelism, r -> {
+				Thread thread = new Thread(r, "settlement-worker-" + threads.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		if (workers != null) {
+			workers.shutdown();
+			workers.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
 	
+	/**
+	 * Settles merchants in keyset chunks, each in its own transaction, so heap use
+	 * and transaction size stay bounded by the chunk size rather than the merchant
+	 * count. The run itself holds no transaction. With a parallelism above one the
+	 * id space is split into partitions settled concurrently on the worker pool.
+	 * <p>
+	 * In incremental mode only merchants marked by the {@link MerchantActivityTracker}
+	 * are visited; a full sweep runs after startup and then every
+	 * {@code full-sweep-every} runs, catching balances moved outside this instance.
+	 * <p>
+	 * Every run is recorded with a checkpoint per partition. A run that did not
+	 * complete, because the process died or a partition kept failing, is resumed
+	 * from its checkpoints before a new run starts. A tick that finds the previous
+	 * run still in progress is skipped and returns {@code null}.
+	 * <p>
+	 * In set-based mode new runs are handed to the {@link SettlementReconciler}.
+	 */
 //	@Scheduled(cron = "0 0 0 * * ?")
 	@Scheduled(fixedRate = 6000) 
-	@Transactional
-	public void dailySettlement() {
-		log.info("Starting daily settlement...");
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public SettlementReport dailySettlement() {
+		if (!runLock.tryLock()) {
+			log.warn("Previous settlement run is still in progress, skipping this one.");
+			return null;
+		}
+		try {
+			StageMetrics.Stopwatch stopwatch = stageMetrics.start("settlement");
+			TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+			SettlementRun unfinished = runRepository.findFirstByStatusInOrderByStartedAtDesc(RESUMABLE);
+			if (unfinished != null) {
+				log.info("Resuming settlement run {} from its checkpoints...", unfinished.getId());
+				List<SettlementPartition> partitions = resumedPartitions(unfinished);
+				stopwatch.stage("plan");
+				return execute(unfinished, partitions, transaction, stopwatch);
+			}
+
+			if (setBased) {
+				// the pass covers every merchant, pending marks included
+				activityTracker.takeFullSweep();
+				activityTracker.drain();
+				SettlementReport report = reconciler.reconcile();
+				stopwatch.stage("reconcile");
+				return report;
+			}
+
+			log.info("Starting daily settlement...");
+			if (incremental && fullSweepEvery > 0 && ++runsSinceFullSweep >= fullSweepEvery) {
+				activityTracker.requestFullSweep();
+			}
+			boolean fullSweep = !incremental || activityTracker.takeFullSweep();
+			if (fullSweep) {
+				runsSinceFullSweep = 0;
+			}
+			List<SettlementPartition> partitions;
+			if (fullSweep) {
+				if (incremental) {
+					// the sweep covers every merchant marked so far
+					activityTracker.drain();
+				}
+				partitions = partitions();
+			} else {
+				partitions = activePartitions(activityTracker.drain());
+				if (partitions.isEmpty()) {
+					log.info("Daily settlement skipped: no merchant activity since the last run.");
+					return new SettlementReport(null, partitions, 0, 0, 0);
+				}
+			}
+			SettlementRun run = begin(fullSweep, partitions, transaction);
+			stopwatch.stage("plan");
+			return execute(run, partitions, transaction, stopwatch);
+		} finally {
+			runLock.unlock();
+		}
+	}
+
+	private SettlementRun begin(boolean fullSweep, List<SettlementPartition> partitions, TransactionTemplate transaction) {
+		SettlementRun run = new SettlementRun();
+		run.setStatus(SettlementRunStatus.RUNNING);
+		run.setFullSweep(fullSweep);
+		run.setPartitions(partitions.size());
+		run.setStartedAt(LocalDateTime.now());
+		List<SettlementCheckpoint> checkpoints = new ArrayList<>(partitions.size());
+		transaction.executeWithoutResult(status -> {
+			runRepository.save(run);
+			for (SettlementPartition partition : partitions) {
+				SettlementCheckpoint checkpoint = new SettlementCheckpoint();
+				checkpoint.setRunId(run.getId());
+				checkpoint.setPartitionIndex(partition.getIndex());
+				checkpoint.setAfterId(partition.getAfterId());
+				checkpoint.setUpToId(partition.getUpToId());
+				checkpoint.setLastSettledId(partition.getAfterId());
+				checkpoints.add(checkpoint);
+			}
+			checkpointRepository.saveAll(checkpoints);
+		});
+		for (int i = 0; i < partitions.size(); i++) {
+			partitions.get(i).attach(checkpoints.get(i).getId());
+		}
+		return run;
+	}
+
+	/**
+	 * Unfinished partitions of a run, continuing after their checkpoints. The active
+	 * id lists of an incremental run are not persisted, so its partitions resume
+	 * as plain ranges.
+	 */
+	private List<SettlementPartition> resumedPartitions(SettlementRun run) {
+		List<SettlementPartition> partitions = new ArrayList<>();
+		for (SettlementCheckpoint checkpoint : checkpointRepository.findByRunIdOrderByPartitionIndexAsc(run.getId())) {
+			if (!checkpoint.isCompleted()) {
+				SettlementPartition partition = new SettlementPartition(checkpoint.getPartitionIndex(),
+						checkpoint.getAfterId(), checkpoint.getUpToId());
+				partition.attach(checkpoint.getId());
+				partition.resumeFrom(checkpoint.getLastSettledId());
+				partitions.add(partition);
+			}
+		}
+		return partitions;
+	}
+
+	private List<SettlementPartition> partitions() {
+		if (workers == null) {
+			return Collections.singletonList(new SettlementPartition(0, Long.MIN_VALUE, Long.MAX_VALUE));
+		}
+		List<Number> bounds = merchantRepository.findPartitionBounds(partitionCount);
+		List<SettlementPartition> partitions = new ArrayList<>(bounds.size() + 1);
+		long afterId = Long.MIN_VALUE;
+		for (Number bound : bounds) {
+			partitions.add(new SettlementPartition(partitions.size(), afterId, bound.longValue()));
+			afterId = bound.longValue();
+		}
+		// merchants created after the bounds were taken fall into a trailing open range
+		partitions.add(new SettlementPartition(partitions.size(), afterId, Long.MAX_VALUE));
+		return partitions;
+	}
+
+	private List<SettlementPartition> activePartitions(List<Long> merchantIds) {
+		if (merchantIds.isEmpty()) {
+			return Collections.emptyList();
+		}
+		int slices = workers == null ? 1
+				: Math.max(1, Math.min(partitionCount, (merchantIds.size() + chunkSize - 1) / chunkSize));
+		List<SettlementPartition> partitions = new ArrayList<>(slices);
+		int sliceSize = (merchantIds.size() + slices - 1) / slices;
+		long afterId = Long.MIN_VALUE;
+		for (int from = 0; from < merchantIds.size(); from += sliceSize) {
+			List<Long> slice = new ArrayList<>(merchantIds.subList(from, Math.min(from + sliceSize, merchantIds.size())));
+			partitions.add(new SettlementPartition(partitions.size(), afterId, slice));
+			afterId = slice.get(slice.size() - 1);
+		}
+		return partitions;
+	}
+
+	private SettlementReport execute(SettlementRun run, List<SettlementPartition> partitions,
+			TransactionTemplate transaction, StageMetrics.Stopwatch stopwatch) {
+		long started = System.nanoTime();
+		if (workers == null || partitions.size() <= 1) {
+			partitions.forEach(partition -> settlePartition(partition, transaction));
+		} else {
+			CompletableFuture.allOf(partitions.stream()
+					.map(partition -> CompletableFuture.runAsync(() -> settlePartition(partition, transaction), workers))
+					.toArray(CompletableFuture[]::new)).join();
+		}
+
+		int merchants = 0;
+		int warnings = 0;
+		for (SettlementPartition partition : partitions) {
+			merchants += partition.getMerchants();
+			warnings += partition.getWarnings();
+		}
+		long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+		stopwatch.stage("settle");
+		SettlementReport report = new SettlementReport(run.getId(), partitions, merchants, warnings, elapsedMs);
+		List<SettlementPartition> failed = report.getFailed();
+		finish(run, failed, elapsedMs, transaction);
+		stopwatch.stage("finish");
+		if (failed.isEmpty()) {
+			log.info("Settlement run {} completed: {} merchants, {} warnings in {} partitions, {} ms.", run.getId(),
+					merchants, warnings, partitions.size(), elapsedMs);
+		} else {
+			log.error("Settlement run {} incomplete: {} of {} partitions failed, {} merchants settled, {} ms.",
+					run.getId(), failed.size(), partitions.size(), merchants, elapsedMs);
+		}
+		return report;
+	}
 
-		List<Merchant> merchants = merchantRepository.findAll();
+	private void finish(SettlementRun run, List<SettlementPartition> failed, long elapsedMs,
+			TransactionTemplate transaction) {
+		transaction.executeWithoutResult(status -> {
+			// totals come from the checkpoints, which also count work done before a crash
+			int merchants = 0;
+			int warnings = 0;
+			for (SettlementCheckpoint checkpoint : checkpointRepository.findByRunIdOrderByPartitionIndexAsc(run.getId())) {
+				merchants += checkpoint.getMerchants();
+				warnings += checkpoint.getWarnings();
+			}
+			run.setMerchants(merchants);
+			run.setWarnings(warnings);
+			run.setExecutions(run.getExecutions() + 1);
+			run.setElapsedMs(run.getElapsedMs() + elapsedMs);
+			run.setFinishedAt(LocalDateTime.now());
+			if (failed.isEmpty()) {
+				run.setStatus(SettlementRunStatus.COMPLETED);
+				run.setFailure(null);
+			} else {
+				run.setStatus(SettlementRunStatus.FAILED);
+				String failure = failed.get(0).getFailure();
+				run.setFailure(failure != null && failure.length() > 1000 ? failure.substring(0, 1000) : failure);
+			}
+			runRepository.save(run);
+		});
+	}
 
+	private void settlePartition(SettlementPartition partition, TransactionTemplate chunkTransaction) {
+		long started = System.nanoTime();
+		int attempts = Math.max(1, partitionAttempts);
+		for (int attempt = 1; attempt <= attempts; attempt++) {
+			partition.attempt();
+			try {
+				Chunk chunk;
+				do {
+					chunk = chunkTransaction.execute(status -> settleChunk(partition));
+					partition.chunkCommitted(chunk.lastId, chunk.merchants, chunk.warnings);
+				} while (chunk.more);
+				partition.complete();
+				break;
+			} catch (RuntimeException e) {
+				partition.fail(e.toString());
+				log.warn("Settlement partition {} failed after merchant {} (attempt {}): {}", partition.getIndex(),
+						partition.getCursor(), attempt, e.toString());
+				if (attempt < attempts && !backoff(attempt)) {
+					break;
+				}
+			}
+		}
+		partition.addElapsed(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+	}
+
+	private boolean backoff(int attempt) {
+		try {
+			Thread.sleep(retryPolicy.backoffMs(attempt));
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private Chunk settleChunk(SettlementPartition partition) {
+		List<Merchant> merchants;
+		long lastId;
+		boolean more;
+		if (partition.getMerchantIds() == null) {
+			merchants = merchantRepository.findSettlementChunk(partition.getCursor(), partition.getUpToId(),
+					PageRequest.of(0, chunkSize));
+			lastId = merchants.isEmpty() ? partition.getCursor() : merchants.get(merchants.size() - 1).getId();
+			more = merchants.size() == chunkSize;
+		} else {
+			List<Long> remaining = partition.remainingIds();
+			List<Long> ids = remaining.subList(0, Math.min(chunkSize, remaining.size()));
+			merchants = ids.isEmpty() ? Collections.emptyList() : merchantRepository.findSettlementBatch(ids);
+			lastId = ids.isEmpty() ? partition.getCursor() : ids.get(ids.size() - 1);
+			more = ids.size() < remaining.size();
+		}
+
+		Map<Long, SettlementWarn> previousWarns = new HashMap<>();
+		if (!merchants.isEmpty()) {
+			List<Long> merchantIds = new ArrayList<>(merchants.size());
+			merchants.forEach(merchant -> merchantIds.add(merchant.getId()));
+			settlementWarnRepository.findByMerchantIdIn(merchantIds)
+					.forEach(warn -> previousWarns.put(warn.getMerchantId(), warn));
+		}
+
+		int warnings = 0;
 		for (Merchant merchant : merchants) {
 			BigDecimal dailySales = merchant.getAccount().getDailySales();
 			BigDecimal balance = merchant.getAccount().getBalance();
 			
 			BigDecimal preBalance = merchant.getMerchantAccountMonitor().getBalance();
 
-			if (balance.subtract(preBalance).compareTo(dailySales) == 0) {
-				SettlementWarn settlementWarn = new SettlementWarn();
+			if (balance.subtract(preBalance).compareTo(dailySales) != 0) {
+				// merchant_id is unique: a merchant keeps only its latest warning
+				SettlementWarn settlementWarn = previousWarns.getOrDefault(merchant.getId(), new SettlementWarn());
 				settlementWarn.setBalance(balance);
 				settlementWarn.setPreBalance(preBalance);
 				settlementWarn.setDailySales(dailySales);
 				settlementWarn.setMerchantId(merchant.getId());
 				settlementWarn.setCreatedAt(LocalDateTime.now());
 				settlementWarnRepository.save(settlementWarn);
+				warnings++;
 				log.error("Mismatch detected for merchant {}: balance={}, dailySales={}", merchant.getId(), balance,
 						dailySales);
 			}
 
 			merchant.resetDailyBalance();
 			merchant.resetDailySales();
+			eventPublisher.publishEvent(
+					new MerchantSettledEvent(merchant.getId(), merchant.getAccount().getId(), balance, dailySales));
 		}
 
-		log.info("Daily settlement completed.");
+		// write the chunk out and detach it before the next one is loaded
+		entityManager.flush();
+		entityManager.clear();
+		checkpointRepository.advance(partition.getCheckpointId(), lastId, merchants.size(), warnings, !more);
+		return new Chunk(merchants.size(), warnings, lastId, more);
+	}
+
+	private static final class Chunk {
+		private final int merchants;
+		private final int warnings;
+		private final long lastId;
+		private final boolean more;
+
+		private Chunk(int merchants, int warnings, long lastId, boolean more) {
+			this.merchants = merchants;
+			this.warnings = warnings;
+			this.lastId = lastId;
+			this.more = more;
+		}
 	}
 
 }
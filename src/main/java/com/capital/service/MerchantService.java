@@ -1,7 +1,11 @@
 package com.capital.service;
 
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
+import com.capital.domain.dto.IncreaseStockRequest;
+import com.capital.domain.dto.ProductPage;
 import com.capital.domain.merchant.Merchant;
 import com.capital.domain.product.Product;
 import com.capital.exception.TradingException;
@@ -11,10 +15,28 @@ public interface MerchantService {
 	Product addProduct(Product product) throws TradingException ;
 	
 	List<Product> findAllProducts(Long merchantId) throws TradingException ;
+
+	ProductPage findProductPage(Long merchantId, Long afterId, int limit) throws TradingException;
+
+	/**
+	 * Hands every product of the merchant to {@code consumer} in id order as it is
+	 * read from a database cursor, without collecting them.
+	 */
+	void streamProducts(Long merchantId, Consumer<Product> consumer) throws TradingException;
 	
 	Product getProductBySku(String sku,Long merchantId) throws TradingException ;
 
 	Product increaseStock(Long merchantId, String sku, Integer quantity) throws TradingException ;
+
+	/**
+	 * Applies many restock lines of one merchant in a single transaction; lines for
+	 * the same SKU are summed.
+	 *
+	 * @return the new stock per SKU in request order
+	 * @throws TradingException {@code PRODUCT_NOT_FOUND} when any SKU is unknown, in
+	 *         which case no line is applied
+	 */
+	Map<String, Integer> increaseStock(Long merchantId, List<IncreaseStockRequest> lines) throws TradingException;
 	
 	Merchant createMerchant(String name, String code) throws TradingException ;
 }
@@ -1,9 +1,13 @@
 package com.capital.service;
 
+import java.util.List;
 import java.util.Map;
 
+import com.capital.domain.dto.CheckoutLine;
 import com.capital.exception.TradingException;
 
 public interface TransactionService {
 	Map<String, Object> purchase(Long userId, Long merchantId, String sku, Integer quantity) throws TradingException;
+
+	Map<String, Object> checkout(Long userId, List<CheckoutLine> lines) throws TradingException;
 }
@@ -1,67 +1,191 @@
 package com.capital.service.impl;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.capital.cache.CatalogCache;
+import com.capital.domain.dto.IncreaseStockRequest;
+import com.capital.domain.dto.ProductPage;
+import com.capital.domain.event.StockChangedEvent;
 import com.capital.domain.merchant.Merchant;
 import com.capital.domain.merchant.MerchantAccountMonitor;
 import com.capital.domain.product.Product;
 import com.capital.domain.shared.Account;
+import com.capital.engine.PurchaseEngine;
 import com.capital.enums.AccountType;
 import com.capital.exception.StatusCode;
 import com.capital.exception.TradingException;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.AccountRepository;
 import com.capital.repository.MerchantRepository;
+import com.capital.repository.ProductRepository;
 import com.capital.service.MerchantService;
-import com.capital.util.LocalIdGenerator;
+import com.capital.write.GroupCommit;
 
 @Service
 public class MerchantServiceImpl implements MerchantService {
+
+	private static final int MAX_PAGE_SIZE = 500;
+	private static final int STREAM_PAGE_SIZE = 500;
+	private static final String STREAM_SQL = "SELECT id, sku, name, description, price, stock_quantity, merchant_id, version"
+			+ " FROM products WHERE merchant_id = ? AND id > ? ORDER BY id LIMIT ?";
+	private static final String RESTOCK_SQL = "UPDATE products SET stock_quantity = stock_quantity + ?, version = version + 1"
+			+ " WHERE merchant_id = ? AND sku = ?";
+	private static final String STOCK_SQL = "SELECT id, sku, stock_quantity FROM products WHERE merchant_id = ? AND sku IN (%s)";
+	// stays well below SQLite's bound parameter limit
+	private static final int STOCK_QUERY_CHUNK = 500;
+	private static final String SKU_INDEX = "uk_products_merchant_sku";
+	private static final String SKU_INDEX_COLUMNS = "products.merchant_id, products.sku";
 	
 	@Autowired
 	private MerchantRepository merchantRepository;
 	
 	@Autowired
 	private AccountRepository accountRepository;
-	
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired(required = false)
+	private PurchaseEngine purchaseEngine;
+
 	@Autowired
-	private LocalIdGenerator localIdGenerator;
+	private StageMetrics stageMetrics;
 
 	@Override
+	@GroupCommit
 	public Product addProduct(Product product) {
-		Merchant merchant = merchantRepository.findById(product.getMerchantId()).orElse(null);
-		if (merchant == null) {
+		if (!merchantRepository.existsById(product.getMerchantId())) {
 			throw StatusCode.MERCHANT_NOT_FOUND.toException();
 		}
-		Product pt = merchant.findProductBySku(product.getSku());
-
-		if (pt != null) {
+		if (productRepository.existsByMerchantIdAndSku(product.getMerchantId(), product.getSku())) {
 			throw StatusCode.PRODUCT_SKU_EXISTS.toException();
 		}
-		product.setId(localIdGenerator.nextId("product"));
-		merchant.addProduct(product);
-		merchantRepository.save(merchant);
-		return product;
+		Product saved;
+		try {
+			// flushed here so a concurrent add of the same sku fails on the unique index in this call
+			saved = productRepository.saveAndFlush(product);
+		} catch (DataIntegrityViolationException e) {
+			if (isDuplicateSku(e)) {
+				throw StatusCode.PRODUCT_SKU_EXISTS.toException(e);
+			}
+			throw e;
+		}
+		catalogCache.invalidate(product.getMerchantId(), product.getSku());
+		return saved;
+	}
+
+	/**
+	 * SQLite names the columns of a violated unique index rather than the index.
+	 */
+	private static boolean isDuplicateSku(DataIntegrityViolationException e) {
+		String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+		return message != null && (message.contains(SKU_INDEX) || message.contains(SKU_INDEX_COLUMNS));
 	}
 
 	@Override
+	@GroupCommit
 	public Product increaseStock(Long merchantId, String sku, Integer quantity) {
-		Merchant merchant = merchantRepository.findById(merchantId).orElse(null);
-		if (merchant == null) {
-			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		StageMetrics.Stopwatch stopwatch = stageMetrics.start("restock", merchantId);
+		if (purchaseEngine != null) {
+			// the write-behind invalidates the cache once SQLite has the new stock
+			Product product = purchaseEngine.restock(merchantId, sku, quantity);
+			stopwatch.stage("engine");
+			return product;
 		}
-		Product product = merchant.findProductBySku(sku);
-		if (product != null) {
-			product.increaseStock(quantity);
-			merchantRepository.save(merchant);
+		catalogCache.invalidate(merchantId, sku);
+		Product product = productRepository.findByMerchantIdAndSku(merchantId, sku);
+		if (product == null) {
+			if (!merchantRepository.existsById(merchantId)) {
+				throw StatusCode.MERCHANT_NOT_FOUND.toException();
+			}
+			return null;
 		}
+		stopwatch.stage("sku_lookup");
+		product.increaseStock(quantity);
+		productRepository.save(product);
+		eventPublisher.publishEvent(new StockChangedEvent(merchantId, product.getId(), sku, product.getStockQuantity()));
+		stopwatch.stage("save");
 		return product;
 	}
 
 	@Override
+	@Transactional(rollbackFor = TradingException.class)
+	@GroupCommit
+	public Map<String, Integer> increaseStock(Long merchantId, List<IncreaseStockRequest> lines) {
+		Map<String, Integer> increments = new LinkedHashMap<>();
+		lines.forEach(line -> increments.merge(line.getSku(), line.getQuantity(), Integer::sum));
+		if (purchaseEngine != null) {
+			// the write-behind invalidates the cache once SQLite has the new stock
+			return purchaseEngine.restock(merchantId, increments);
+		}
+		increments.keySet().forEach(sku -> catalogCache.invalidate(merchantId, sku));
+		if (!merchantRepository.existsById(merchantId)) {
+			throw StatusCode.MERCHANT_NOT_FOUND.toException();
+		}
+
+		// pending entity writes of the same transaction must reach the table before the bulk update
+		productRepository.flush();
+		List<Map.Entry<String, Integer>> rows = new ArrayList<>(increments.entrySet());
+		jdbcTemplate.batchUpdate(RESTOCK_SQL, rows, rows.size(), (statement, row) -> {
+			statement.setInt(1, row.getValue());
+			statement.setLong(2, merchantId);
+			statement.setString(3, row.getKey());
+		});
+
+		Map<String, Integer> stock = new LinkedHashMap<>();
+		increments.keySet().forEach(sku -> stock.put(sku, null));
+		Map<String, Long> productIds = new HashMap<>();
+		List<String> skus = new ArrayList<>(increments.keySet());
+		for (int from = 0; from < skus.size(); from += STOCK_QUERY_CHUNK) {
+			List<String> chunk = skus.subList(from, Math.min(from + STOCK_QUERY_CHUNK, skus.size()));
+			List<Object> args = new ArrayList<>(chunk.size() + 1);
+			args.add(merchantId);
+			args.addAll(chunk);
+			String sql = String.format(STOCK_SQL, String.join(",", Collections.nCopies(chunk.size(), "?")));
+			jdbcTemplate.query(sql, (ResultSet rs) -> {
+				String sku = rs.getString(2);
+				productIds.put(sku, rs.getLong(1));
+				stock.put(sku, rs.getInt(3));
+			}, args.toArray());
+		}
+		if (productIds.size() < stock.size()) {
+			// rolls back the lines already applied
+			throw StatusCode.PRODUCT_NOT_FOUND.toException();
+		}
+		stock.forEach((sku, quantity) -> eventPublisher
+				.publishEvent(new StockChangedEvent(merchantId, productIds.get(sku), sku, quantity)));
+		return stock;
+	}
+
+	@Override
+	@GroupCommit
 	public Merchant createMerchant(String name, String code) {
 		if (merchantRepository.existsByCode(code)) {
 			throw StatusCode.MERCHANT_CODE_ALREADY_EXISTS.toException();
@@ -94,25 +218,73 @@ public class MerchantServiceImpl implements MerchantService {
 
 	@Override
 	public List<Product> findAllProducts(Long merchantId) throws TradingException {
-		Merchant merchant = merchantRepository.findById(merchantId).orElse(null);
-		if (merchant == null) {
+		return catalogCache.products(merchantId, () -> {
+			if (!merchantRepository.existsById(merchantId)) {
+				throw StatusCode.MERCHANT_NOT_FOUND.toException();
+			}
+			return productRepository.findByMerchantIdOrderByIdAsc(merchantId);
+		});
+	}
+
+	@Override
+	public ProductPage findProductPage(Long merchantId, Long afterId, int limit) throws TradingException {
+		int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+		// one extra row tells whether another page follows
+		List<Product> rows = productRepository.findByMerchantIdAndIdGreaterThanOrderByIdAsc(merchantId,
+				afterId == null ? Long.MIN_VALUE : afterId, PageRequest.of(0, size + 1));
+		if (rows.isEmpty() && afterId == null && !merchantRepository.existsById(merchantId)) {
 			throw StatusCode.MERCHANT_NOT_FOUND.toException();
 		}
-		return merchant.getProducts();
+		if (rows.size() <= size) {
+			return new ProductPage(rows, null);
+		}
+		List<Product> items = new ArrayList<>(rows.subList(0, size));
+		return new ProductPage(items, items.get(size - 1).getId());
 	}
 
 	@Override
-	public Product getProductBySku(String sku,Long merchantId) throws TradingException {
-		Merchant merchant = merchantRepository.findById(merchantId).orElse(null);
-		if (merchant == null) {
+	public void streamProducts(Long merchantId, Consumer<Product> consumer) throws TradingException {
+		if (!merchantRepository.existsById(merchantId)) {
 			throw StatusCode.MERCHANT_NOT_FOUND.toException();
 		}
-		Product product = merchant.findProductBySku(sku);
-        if (product == null) {
-        	throw StatusCode.PRODUCT_NOT_FOUND.toException();
-        }
-        
-        return product;
+		// keyset pages, each read in full before it is written: an open SQLite read cursor
+		// keeps its shared lock, and so blocks writers, for as long as the client takes to read
+		long afterId = Long.MIN_VALUE;
+		List<Product> page;
+		do {
+			page = jdbcTemplate.query(STREAM_SQL, MerchantServiceImpl::streamedProduct, merchantId, afterId,
+					STREAM_PAGE_SIZE);
+			page.forEach(consumer);
+			if (!page.isEmpty()) {
+				afterId = page.get(page.size() - 1).getId();
+			}
+		} while (page.size() == STREAM_PAGE_SIZE);
+	}
+
+	private static Product streamedProduct(ResultSet rs, int row) throws SQLException {
+		Product product = new Product();
+		product.setId(rs.getLong(1));
+		product.setSku(rs.getString(2));
+		product.setName(rs.getString(3));
+		product.setDescription(rs.getString(4));
+		product.setPrice(rs.getBigDecimal(5));
+		product.setStockQuantity(rs.getInt(6));
+		product.setMerchantId(rs.getLong(7));
+		product.setVersion(rs.getLong(8));
+		return product;
+	}
+
+	@Override
+	public Product getProductBySku(String sku,Long merchantId) throws TradingException {
+		Product product = catalogCache.product(merchantId, sku,
+				() -> productRepository.findByMerchantIdAndSku(merchantId, sku));
+		if (product == null) {
+			if (!merchantRepository.existsById(merchantId)) {
+				throw StatusCode.MERCHANT_NOT_FOUND.toException();
+			}
+			throw StatusCode.PRODUCT_NOT_FOUND.toException();
+		}
+		return product;
 	}
 
 }
@@ -1,21 +1,36 @@
 package com.capital.service.impl;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import com.capital.domain.merchant.Merchant;
+import com.capital.cache.CatalogCache;
+import com.capital.domain.dto.CheckoutLine;
+import com.capital.domain.event.PurchaseCompletedEvent;
 import com.capital.domain.product.Product;
 import com.capital.domain.shared.Account;
 import com.capital.domain.user.User;
+import com.capital.engine.PurchaseEngine;
+import com.capital.engine.PurchaseReceipt;
 import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.AccountRepository;
 import com.capital.repository.MerchantRepository;
+import com.capital.repository.ProductRepository;
 import com.capital.repository.UserRepository;
 import com.capital.service.TransactionService;
+import com.capital.write.GroupCommit;
 
 @Service
 public class TransactionServiceImpl implements TransactionService {
@@ -29,42 +44,201 @@ public class TransactionServiceImpl implements TransactionService {
 	@Autowired
 	private MerchantRepository merchantRepository;
 
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private CatalogCache catalogCache;
+
+	@Autowired(required = false)
+	private PurchaseEngine purchaseEngine;
+
+	@Autowired
+	private StageMetrics stageMetrics;
+
 	@Override
+	@Transactional(rollbackFor = TradingException.class)
+	@GroupCommit
 	public Map<String, Object> purchase(Long userId, Long merchantId, String sku, Integer quantity) {
-
-		User user = userRepository.findByIdAndActive(userId, true);
-		if (user == null) {
-			throw StatusCode.USER_NOT_FOUND.toException();
-		}
-		Account account = user.getAccount();
-		if (account == null) {
-			throw StatusCode.ACCOUNT_NOT_FOUND.toException();
+		StageMetrics.Stopwatch stopwatch = stageMetrics.start("purchase", merchantId);
+		if (purchaseEngine != null) {
+			// the write-behind invalidates the cache once SQLite has the new stock
+			PurchaseReceipt receipt = purchaseEngine.purchase(userId, merchantId, sku, quantity);
+			stopwatch.stage("engine");
+			return toResult(receipt.getTotalCost(), receipt.getQuantity(), receipt.getProduct());
 		}
-		Merchant merchant = merchantRepository.findById(merchantId).orElse(null);
-		if (merchant == null) {
+		catalogCache.invalidate(merchantId, sku);
+
+		Account account = activeAccount(userId);
+		stopwatch.stage("user_lookup");
+		Long merchantAccountId = merchantRepository.findAccountIdById(merchantId);
+		if (merchantAccountId == null) {
 			throw StatusCode.MERCHANT_NOT_FOUND.toException();
 		}
-		Product product = merchant.findProductBySku(sku);
+		stopwatch.stage("merchant_lookup");
+		Product product = productRepository.findByMerchantIdAndSku(merchantId, sku);
 		if (product == null) {
 			throw StatusCode.PRODUCT_NOT_FOUND.toException();
 		}
-
-		if (!product.isAvailable(quantity)) {
+		stopwatch.stage("sku_lookup");
+		if (quantity <= 0) {
 			throw StatusCode.INSUFFICIENT_STOCK.toException();
 		}
 		BigDecimal totalCost = product.calculateTotalPrice(quantity);
+		if (totalCost.compareTo(BigDecimal.ZERO) <= 0) {
+			throw new IllegalArgumentException("Deduct amount must be positive");
+		}
+
+		// guarded single-statement updates: the row count decides, a failure rolls back the earlier ones
+		Long accountId = account.getId();
+		if (productRepository.decrementStock(product.getId(), quantity) == 0) {
+			throw StatusCode.INSUFFICIENT_STOCK.toException();
+		}
+		if (accountRepository.debit(accountId, totalCost) == 0) {
+			throw StatusCode.INSUFFICIENT_BALANCE.toException();
+		}
+		accountRepository.creditSale(merchantAccountId, totalCost);
+		stopwatch.stage("deduct");
+
+		Account userAccount = accountRepository.findById(accountId).orElseThrow(StatusCode.ACCOUNT_NOT_FOUND::toException);
+		Account merchantAccount = accountRepository.findById(merchantAccountId)
+				.orElseThrow(StatusCode.ACCOUNT_NOT_FOUND::toException);
+		Product purchased = productRepository.findById(product.getId()).orElseThrow(StatusCode.PRODUCT_NOT_FOUND::toException);
+		eventPublisher.publishEvent(new PurchaseCompletedEvent(accountId, userAccount.getBalance(), merchantId,
+				merchantAccountId, merchantAccount.getBalance(), merchantAccount.getDailySales(), purchased.getId(),
+				sku, purchased.getStockQuantity(), quantity, totalCost));
+		stopwatch.stage("save");
+		return toResult(totalCost, quantity, purchased);
+	}
+
+	@Override
+	@Transactional(rollbackFor = TradingException.class)
+	@GroupCommit
+	public Map<String, Object> checkout(Long userId, List<CheckoutLine> lines) {
+		if (purchaseEngine != null) {
+			List<Map<String, Object>> results = new ArrayList<>(lines.size());
+			BigDecimal totalCost = BigDecimal.ZERO;
+			for (PurchaseReceipt receipt : purchaseEngine.checkout(userId, lines)) {
+				results.add(toResult(receipt.getTotalCost(), receipt.getQuantity(), receipt.getProduct()));
+				totalCost = totalCost.add(receipt.getTotalCost());
+			}
+			return toCheckoutResult(totalCost, results);
+		}
+		lines.forEach(line -> catalogCache.invalidate(line.getMerchantId(), line.getSku()));
+
+		Account account = activeAccount(userId);
+		Map<Long, List<Integer>> groups = new LinkedHashMap<>();
+		for (int i = 0; i < lines.size(); i++) {
+			groups.computeIfAbsent(lines.get(i).getMerchantId(), id -> new ArrayList<>()).add(i);
+		}
+
+		// price every line before touching any row; each merchant is looked up once
+		Product[] lineProducts = new Product[lines.size()];
+		BigDecimal[] lineCosts = new BigDecimal[lines.size()];
+		Map<Long, Long> merchantAccountIds = new LinkedHashMap<>();
+		Map<Long, BigDecimal> merchantTotals = new LinkedHashMap<>();
+		Map<Long, Product> products = new LinkedHashMap<>();
+		Map<Long, Integer> demand = new LinkedHashMap<>();
+		Map<Long, BigDecimal> productCosts = new HashMap<>();
+		BigDecimal totalCost = BigDecimal.ZERO;
+		for (Map.Entry<Long, List<Integer>> group : groups.entrySet()) {
+			Long merchantId = group.getKey();
+			Long merchantAccountId = merchantRepository.findAccountIdById(merchantId);
+			if (merchantAccountId == null) {
+				throw StatusCode.MERCHANT_NOT_FOUND.toException();
+			}
+			Set<String> skus = new HashSet<>();
+			group.getValue().forEach(i -> skus.add(lines.get(i).getSku()));
+			Map<String, Product> bySku = new HashMap<>();
+			productRepository.findByMerchantIdAndSkuIn(merchantId, skus).forEach(p -> bySku.putIfAbsent(p.getSku(), p));
+
+			BigDecimal merchantTotal = BigDecimal.ZERO;
+			for (Integer i : group.getValue()) {
+				CheckoutLine line = lines.get(i);
+				Product product = bySku.get(line.getSku());
+				if (product == null) {
+					throw StatusCode.PRODUCT_NOT_FOUND.toException();
+				}
+				if (line.getQuantity() <= 0) {
+					throw StatusCode.INSUFFICIENT_STOCK.toException();
+				}
+				lineProducts[i] = product;
+				lineCosts[i] = product.calculateTotalPrice(line.getQuantity());
+				products.put(product.getId(), product);
+				demand.merge(product.getId(), line.getQuantity(), Integer::sum);
+				productCosts.merge(product.getId(), lineCosts[i], BigDecimal::add);
+				merchantTotal = merchantTotal.add(lineCosts[i]);
+			}
+			merchantAccountIds.put(merchantId, merchantAccountId);
+			merchantTotals.put(merchantId, merchantTotal);
+			totalCost = totalCost.add(merchantTotal);
+		}
+		for (Map.Entry<Long, Integer> entry : demand.entrySet()) {
+			if (!products.get(entry.getKey()).isAvailable(entry.getValue())) {
+				throw StatusCode.INSUFFICIENT_STOCK.toException();
+			}
+		}
+		if (totalCost.compareTo(BigDecimal.ZERO) <= 0) {
+			throw new IllegalArgumentException("Deduct amount must be positive");
+		}
 
-		if (!account.deduct(totalCost)) {
+		// one guarded write per product, one debit for the cart and one credit per merchant
+		Long accountId = account.getId();
+		for (Map.Entry<Long, Integer> entry : demand.entrySet()) {
+			if (productRepository.decrementStock(entry.getKey(), entry.getValue()) == 0) {
+				throw StatusCode.INSUFFICIENT_STOCK.toException();
+			}
+		}
+		if (accountRepository.debit(accountId, totalCost) == 0) {
 			throw StatusCode.INSUFFICIENT_BALANCE.toException();
 		}
+		merchantTotals.forEach((merchantId, total) -> accountRepository.creditSale(merchantAccountIds.get(merchantId), total));
+
+		Account userAccount = accountRepository.findById(accountId).orElseThrow(StatusCode.ACCOUNT_NOT_FOUND::toException);
+		Map<Long, Account> merchantAccounts = new HashMap<>();
+		accountRepository.findAllById(merchantAccountIds.values()).forEach(a -> merchantAccounts.put(a.getId(), a));
+		Map<Long, Product> purchased = new HashMap<>();
+		productRepository.findAllById(demand.keySet()).forEach(p -> purchased.put(p.getId(), p));
+
+		for (Map.Entry<Long, Integer> entry : demand.entrySet()) {
+			Product product = purchased.get(entry.getKey());
+			Long merchantAccountId = merchantAccountIds.get(product.getMerchantId());
+			Account merchantAccount = merchantAccounts.get(merchantAccountId);
+			eventPublisher.publishEvent(new PurchaseCompletedEvent(accountId, userAccount.getBalance(),
+					product.getMerchantId(), merchantAccountId, merchantAccount.getBalance(),
+					merchantAccount.getDailySales(), product.getId(), product.getSku(), product.getStockQuantity(),
+					entry.getValue(), productCosts.get(entry.getKey())));
+		}
+		List<Map<String, Object>> results = new ArrayList<>(lines.size());
+		for (int i = 0; i < lines.size(); i++) {
+			results.add(toResult(lineCosts[i], lines.get(i).getQuantity(), purchased.get(lineProducts[i].getId())));
+		}
+		return toCheckoutResult(totalCost, results);
+	}
 
-		if (!product.reduceStock(quantity)) {
-			throw StatusCode.FAILED_TO_REDUCE_STOCK.toException();
+	private Account activeAccount(Long userId) {
+		User user = userRepository.findByIdAndActive(userId, true);
+		if (user == null) {
+			throw StatusCode.USER_NOT_FOUND.toException();
+		}
+		Account account = user.getAccount();
+		if (account == null) {
+			throw StatusCode.ACCOUNT_NOT_FOUND.toException();
 		}
+		return account;
+	}
+
+	private Map<String, Object> toCheckoutResult(BigDecimal totalCost, List<Map<String, Object>> lines) {
+		Map<String, Object> result = new HashMap<String, Object>();
+		result.put("totalCost", totalCost);
+		result.put("lines", lines);
+		return result;
+	}
 
-		merchant.addBalance(totalCost);
-		
-		accountRepository.save(account);
+	private Map<String, Object> toResult(BigDecimal totalCost, Integer quantity, Product product) {
 		Map<String, Object> result = new HashMap<String, Object>();
 		result.put("totalCost", totalCost);
 		result.put("quantity", quantity);
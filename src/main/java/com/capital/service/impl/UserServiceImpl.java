@@ -3,18 +3,23 @@ package com.capital.service.impl;
 import java.math.BigDecimal;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.capital.domain.event.AccountRechargedEvent;
 import com.capital.domain.shared.Account;
 import com.capital.domain.user.User;
+import com.capital.engine.PurchaseEngine;
 import com.capital.enums.AccountType;
 import com.capital.exception.StatusCode;
 import com.capital.exception.TradingException;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.AccountRepository;
 import com.capital.repository.UserRepository;
 import com.capital.service.UserService;
+import com.capital.write.GroupCommit;
 
 @Service
 @Transactional(isolation=Isolation.READ_COMMITTED,rollbackFor = TradingException.class)
@@ -26,16 +31,37 @@ public class UserServiceImpl implements UserService {
 	@Autowired
 	private AccountRepository accountRepository;
 
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired(required = false)
+	private PurchaseEngine purchaseEngine;
+
+	@Autowired
+	private StageMetrics stageMetrics;
+
+	@GroupCommit
 	public Account recharge(Long userId, BigDecimal amount) throws TradingException {
+		StageMetrics.Stopwatch stopwatch = stageMetrics.start("recharge");
+		if (purchaseEngine != null) {
+			Account account = purchaseEngine.recharge(userId, amount);
+			stopwatch.stage("engine");
+			return account;
+		}
 		User user = userRepository.findByIdAndActive(userId, true);
 		if (user == null) {
 			throw StatusCode.USER_NOT_FOUND.toException();
 		}
+		stopwatch.stage("user_lookup");
 		user.recharge(amount);
 		userRepository.save(user);
-		return user.getAccount();
+		Account account = user.getAccount();
+		eventPublisher.publishEvent(new AccountRechargedEvent(userId, account.getId(), amount, account.getBalance()));
+		stopwatch.stage("save");
+		return account;
 	}
 
+	@GroupCommit
 	public User createUser(String userName, String email) throws TradingException {
 		if (userRepository.existsByUserName(userName)) {
 			throw StatusCode.USER_ALREADY_EXISTS.toException();
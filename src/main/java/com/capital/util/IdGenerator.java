@@ -3,5 +3,40 @@ package com.capital.util;
 public interface IdGenerator {
     Long nextId();
     
+    /**
+     * Id for a business type; generators without per-type sequences draw from
+     * their single sequence.
+     */
+    default Long nextId(String businessType) {
+        return nextId();
+    }
+    
+    /**
+     * Reserves {@code count} consecutive ids, at most {@link #maxBlockSize()}.
+     *
+     * @return the first id of the block; the block ends at {@code first + count - 1}
+     */
+    long nextIdBlock(int count);
+    
+    default long nextIdBlock(String businessType, int count) {
+        return nextIdBlock(count);
+    }
+    
+    /**
+     * {@link #nextIdBlock(int)} as a range, for batch inserts that assign ids
+     * themselves without boxing each one.
+     */
+    default IdRange nextIdRange(int count) {
+        return new IdRange(nextIdBlock(count), count);
+    }
+    
+    default IdRange nextIdRange(String businessType, int count) {
+        return new IdRange(nextIdBlock(businessType, count), count);
+    }
+    
+    default int maxBlockSize() {
+        return Integer.MAX_VALUE;
+    }
+    
     String getType();
 }
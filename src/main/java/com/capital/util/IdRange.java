@@ -0,0 +1,58 @@
+package com.capital.util;
+
+import java.util.Arrays;
+
+/**
+ * Consecutive ids from {@link #getFirst()} to {@link #getLast()}, reserved in one
+ * step for a batch insert and read as primitive longs.
+ */
+public final class IdRange {
+
+    private final long first;
+    private final int size;
+
+    public IdRange(long first, int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Range size must not be negative");
+        }
+        this.first = first;
+        this.size = size;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return first + size - 1;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * The id at {@code index}, counted from the first id of the range.
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of range of " + size + " ids");
+        }
+        return first + index;
+    }
+
+    public boolean contains(long id) {
+        return id >= first && id - first < size;
+    }
+
+    public long[] toArray() {
+        long[] ids = new long[size];
+        Arrays.setAll(ids, i -> first + i);
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return size == 0 ? "[]" : "[" + first + ".." + getLast() + "]";
+    }
+}
@@ -1,6 +1,7 @@
 package com.capital.util;
 
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import java.util.Map;
@@ -17,8 +18,25 @@ public class LocalIdGenerator implements IdGenerator {
     
     private long startId = 10000L;
     
+    /**
+     * Ids a thread reserves from the default sequence at once, after which its
+     * {@link #nextId()} calls touch no shared state until the block is used up.
+     * Ids stay unique but interleave across threads. 0 draws every id from the
+     * shared sequence.
+     */
+    @Value("${trading.id.local.thread-block-size:0}")
+    private int threadBlockSize;
+    
+    private final ThreadLocal<ThreadBlock> threadBlocks = ThreadLocal.withInitial(ThreadBlock::new);
+    
+    /** Bumped whenever the default sequence is moved, so threads drop blocks reserved before. */
+    private volatile int epoch;
+    
     @Override
     public Long nextId() {
+        if (threadBlockSize > 0) {
+            return nextThreadId();
+        }
         long id = defaultSequence.incrementAndGet();
         if (id < startId) {
             id = startId;
@@ -27,6 +45,19 @@ public class LocalIdGenerator implements IdGenerator {
         log.debug("Generated local ID: {}", id);
         return id;
     }
+    
+    private long nextThreadId() {
+        ThreadBlock block = threadBlocks.get();
+        int current = epoch;
+        if (block.next > block.end || block.epoch != current) {
+            block.epoch = current;
+            block.next = nextIdBlock(threadBlockSize);
+            block.end = block.next + threadBlockSize - 1;
+        }
+        return block.next++;
+    }
+    
+    @Override
     public Long nextId(String businessType) {
         AtomicLong sequence = sequences.computeIfAbsent(
             businessType, 
@@ -38,15 +69,58 @@ public class LocalIdGenerator implements IdGenerator {
         return id;
     }
     
+    /**
+     * Reserves {@code count} consecutive ids of a business type in one step.
+     *
+     * @return the first id of the block; the block ends at {@code first + count - 1}
+     */
+    @Override
+    public long nextIdBlock(String businessType, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        AtomicLong sequence = sequences.computeIfAbsent(
+            businessType, 
+            k -> new AtomicLong(startId)
+        );
+        long first = sequence.addAndGet(count) - count + 1;
+        log.debug("Reserved {} local IDs for {} from {}", count, businessType, first);
+        return first;
+    }
+    
+    /**
+     * Reserves {@code count} consecutive ids of the default sequence, the one
+     * entity ids are drawn from, for rows written without going through JPA.
+     *
+     * @return the first id of the block; the block ends at {@code first + count - 1}
+     */
+    @Override
+    public long nextIdBlock(int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        long last = defaultSequence.accumulateAndGet(count, (current, n) -> Math.max(current, startId - 1) + n);
+        long first = last - count + 1;
+        log.debug("Reserved {} local IDs from {}", count, first);
+        return first;
+    }
+
     public String nextIdWithPrefix(String businessType, String prefix) {
         Long id = nextId(businessType);
         return prefix + id;
     }
     
+    /**
+     * Consecutive ids of the default sequence, reserved in one step. Prefer
+     * {@link #nextIdRange(int)} where boxed ids are not needed.
+     */
     public Long[] nextIds(int count) {
         Long[] ids = new Long[count];
-        for (int i = 0; i < count; i++) {
-            ids[i] = nextId();
+        if (count > 0) {
+            long first = nextIdBlock(count);
+            for (int i = 0; i < count; i++) {
+                ids[i] = first + i;
+            }
         }
         return ids;
     }
@@ -56,8 +130,17 @@ public class LocalIdGenerator implements IdGenerator {
         return "LOCAL";
     }
     
+    public void setThreadBlockSize(int threadBlockSize) {
+        if (threadBlockSize < 0) {
+            throw new IllegalArgumentException("Thread block size must not be negative");
+        }
+        this.threadBlockSize = threadBlockSize;
+        epoch++;
+    }
+    
     public void setStartId(long startId) {
         this.startId = startId;
+        epoch++;
         defaultSequence.set(startId - 1);
         sequences.values().forEach(seq -> seq.set(startId - 1));
         log.info("Local ID Generator start ID set to: {}", startId);
@@ -65,6 +148,7 @@ public class LocalIdGenerator implements IdGenerator {
     
     public void reset() {
         defaultSequence.set(startId - 1);
+        epoch++;
         sequences.clear();
         log.info("Local ID Generator reset");
     }
@@ -82,4 +166,10 @@ public class LocalIdGenerator implements IdGenerator {
         AtomicLong sequence = sequences.get(businessType);
         return sequence != null ? sequence.get() : startId - 1;
     }
+    
+    private static final class ThreadBlock {
+        private long next = 1;
+        private long end;
+        private int epoch;
+    }
 }
\ No newline at end of file
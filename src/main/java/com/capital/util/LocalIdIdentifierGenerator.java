@@ -14,9 +14,23 @@ public class LocalIdIdentifierGenerator implements IdentifierGenerator {
 	@Autowired
 	private LocalIdGenerator localIdGenerator;
 
+	/** Present when {@code trading.id.strategy} is {@code snowflake}. */
+	@Autowired(required = false)
+	private SnowflakeIdGenerator snowflakeIdGenerator;
+
+	/** Present when {@code trading.id.strategy} is {@code segment}. */
+	@Autowired(required = false)
+	private SegmentIdGenerator segmentIdGenerator;
+
 	@Override
 	public Serializable generate(SharedSessionContractImplementor session, Object object) throws HibernateException {
 
+		if (snowflakeIdGenerator != null) {
+			return snowflakeIdGenerator.nextId();
+		}
+		if (segmentIdGenerator != null) {
+			return segmentIdGenerator.nextId();
+		}
 		return localIdGenerator.nextId();
 	}
 
@@ -0,0 +1,258 @@
+package com.capital.util;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.exception.StatusCode;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Serves ids per business type from segments of {@code step} ids reserved in the
+ * {@code id_segments} table. A segment is only handed out once it is committed,
+ * so ids survive restarts and instances sharing the table without reuse; a
+ * restart merely skips the unused rest of its segments.
+ * <p>
+ * Each type keeps a current segment and the next one. The next segment is
+ * fetched on a background thread once the current one drops below
+ * {@code prefetch-ratio} of its size, so callers only wait for the table when a
+ * burst drains both. Untyped ids are served from the {@value #DEFAULT_TYPE} type,
+ * mirroring the default sequence of {@link LocalIdGenerator}.
+ * <p>
+ * A caller inside a transaction never waits for a segment: the refill needs the
+ * SQLite write lock that transaction may already hold, so the call fails with
+ * {@code SYSTEM_BUSY} while the refill carries on for the retry.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(prefix = "trading.id", name = "strategy", havingValue = "segment")
+public class SegmentIdGenerator implements IdGenerator {
+
+    static final String DEFAULT_TYPE = "default";
+
+    private static final String CREATE_SQL = "INSERT OR IGNORE INTO id_segments (biz_type, max_id, step, updated_at) VALUES (?, ?, 0, ?)";
+    private static final String ADVANCE_SQL = "UPDATE id_segments SET max_id = max_id + ?, step = ?, updated_at = ? WHERE biz_type = ?";
+    private static final String MAX_SQL = "SELECT max_id FROM id_segments WHERE biz_type = ?";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${trading.id.segment.step:1000}")
+    private int step;
+
+    @Value("${trading.id.segment.prefetch-ratio:0.2}")
+    private double prefetchRatio;
+
+    @Value("${trading.id.segment.start-id:1000000}")
+    private long startId;
+
+    @Value("${trading.id.segment.preload:default}")
+    private List<String> preload;
+
+    private final Map<String, Buffer> buffers = new ConcurrentHashMap<>();
+
+    private ExecutorService refiller;
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    public void start() {
+        if (step <= 0) {
+            throw new IllegalStateException("trading.id.segment.step must be positive, was " + step);
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        refiller = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "id-segment-refill");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        refiller.shutdown();
+        refiller.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Fetches the first segments once the schema exists, outside of any request
+     * transaction that might already hold the SQLite write lock.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        for (String businessType : preload) {
+            // an empty take only loads the first segment
+            buffer(businessType.trim()).take(0);
+        }
+    }
+
+    @Override
+    public Long nextId() {
+        return nextId(DEFAULT_TYPE);
+    }
+
+    @Override
+    public Long nextId(String businessType) {
+        return buffer(businessType).take(1);
+    }
+
+    @Override
+    public long nextIdBlock(int count) {
+        return nextIdBlock(DEFAULT_TYPE, count);
+    }
+
+    @Override
+    public long nextIdBlock(String businessType, int count) {
+        if (count <= 0 || count > step) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + step);
+        }
+        return buffer(businessType).take(count);
+    }
+
+    @Override
+    public int maxBlockSize() {
+        return step;
+    }
+
+    @Override
+    public String getType() {
+        return "SEGMENT";
+    }
+
+    /**
+     * Ids left in memory for a business type, counting a prefetched segment.
+     */
+    public long remaining(String businessType) {
+        Buffer buffer = buffers.get(businessType);
+        return buffer == null ? 0 : buffer.remaining();
+    }
+
+    private Buffer buffer(String businessType) {
+        return buffers.computeIfAbsent(businessType, type -> {
+            Buffer buffer = new Buffer(type);
+            Gauge.builder("trading.id.segment.remaining", buffer, Buffer::remaining).tag("type", type)
+                    .description("Ids left in memory before the next segment must be fetched").register(meterRegistry);
+            return buffer;
+        });
+    }
+
+    Segment fetch(String businessType) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int size = step;
+        Long maxId = transactionTemplate.execute(status -> {
+            // the first instance to need a type creates its row; the update then serializes all of them
+            jdbcTemplate.update(CREATE_SQL, businessType, startId - 1, now);
+            jdbcTemplate.update(ADVANCE_SQL, size, size, now, businessType);
+            return jdbcTemplate.queryForObject(MAX_SQL, Long.class, businessType);
+        });
+        log.debug("Reserved id segment {}..{} for {}", maxId - size + 1, maxId, businessType);
+        return new Segment(maxId - size + 1, maxId);
+    }
+
+    static final class Segment {
+        private final long max;
+        private long cursor;
+
+        Segment(long first, long max) {
+            this.cursor = first;
+            this.max = max;
+        }
+
+        long remaining() {
+            return max - cursor + 1;
+        }
+    }
+
+    private final class Buffer {
+        private final String type;
+        private final Timer refill;
+        private Segment current;
+        private CompletableFuture<Segment> next;
+
+        private Buffer(String type) {
+            this.type = type;
+            this.refill = Timer.builder("trading.id.segment.refill").tag("type", type)
+                    .description("Time to reserve the next id segment").register(meterRegistry);
+        }
+
+        synchronized long take(int count) {
+            while (current == null || current.remaining() < count) {
+                // the rest of a segment too small for the block is skipped
+                prefetch();
+                if (!next.isDone() && TransactionSynchronizationManager.isActualTransactionActive()) {
+                    throw StatusCode.SYSTEM_BUSY.toException();
+                }
+                CompletableFuture<Segment> fetching = next;
+                next = null;
+                current = await(fetching);
+            }
+            long first = current.cursor;
+            current.cursor += count;
+            if (current.remaining() < step * prefetchRatio) {
+                prefetch();
+            }
+            return first;
+        }
+
+        synchronized long remaining() {
+            long remaining = current == null ? 0 : current.remaining();
+            if (next != null && next.isDone() && !next.isCompletedExceptionally()) {
+                remaining += next.join().remaining();
+            }
+            return remaining;
+        }
+
+        private void prefetch() {
+            if (next == null) {
+                next = CompletableFuture.supplyAsync(() -> {
+                    long started = System.nanoTime();
+                    Segment segment = fetch(type);
+                    refill.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+                    return segment;
+                }, refiller);
+            }
+        }
+
+        private Segment await(CompletableFuture<Segment> fetching) {
+            try {
+                return fetching.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for an id segment of " + type, e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not reserve an id segment of " + type, e.getCause());
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.capital.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 64-bit ids made of 41 bits of milliseconds since 2024-01-01, a 10 bit node id
+ * and a 12 bit per-millisecond sequence. Ids are unique across nodes with
+ * distinct {@code trading.id.node-id} and across restarts, without any
+ * coordination per id.
+ * <p>
+ * The last issued millisecond and sequence are one CAS-updated word. When the
+ * wall clock steps back, or a millisecond runs out of sequence numbers, ids
+ * continue on that logical clock instead of waiting for the wall clock.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(prefix = "trading.id", name = "strategy", havingValue = "snowflake")
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    static final long EPOCH = 1704067200000L;
+    static final int NODE_BITS = 10;
+    static final int SEQUENCE_BITS = 12;
+    static final long MAX_NODE_ID = (1L << NODE_BITS) - 1;
+    static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    @Value("${trading.id.node-id:0}")
+    private long nodeId;
+
+    @Value("${trading.id.max-clock-backward-ms:1000}")
+    private long maxClockBackwardMs;
+
+    private final LongSupplier clock;
+
+    /** Last issued {@code millis << SEQUENCE_BITS | sequence}. */
+    private final AtomicLong last = new AtomicLong();
+
+    private volatile boolean behind;
+
+    public SnowflakeIdGenerator() {
+        this.clock = System::currentTimeMillis;
+    }
+
+    SnowflakeIdGenerator(long nodeId, LongSupplier clock) {
+        this.nodeId = nodeId;
+        this.maxClockBackwardMs = 1000;
+        this.clock = clock;
+        init();
+    }
+
+    @PostConstruct
+    public void init() {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalStateException("trading.id.node-id must be between 0 and " + MAX_NODE_ID + ", was " + nodeId);
+        }
+        log.info("Snowflake ID generator started for node {}", nodeId);
+    }
+
+    @Override
+    public Long nextId() {
+        return nextIdBlock(1);
+    }
+
+    @Override
+    public long nextIdBlock(int count) {
+        if (count <= 0 || count > maxBlockSize()) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + maxBlockSize());
+        }
+        while (true) {
+            long current = last.get();
+            long lastMillis = current >>> SEQUENCE_BITS;
+            long now = clock.getAsLong() - EPOCH;
+            long millis;
+            long first;
+            if (now > lastMillis) {
+                millis = now;
+                first = 0;
+            } else {
+                millis = lastMillis;
+                first = (current & SEQUENCE_MASK) + 1;
+                if (first + count - 1 > SEQUENCE_MASK) {
+                    millis++;
+                    first = 0;
+                }
+            }
+            if (last.compareAndSet(current, millis << SEQUENCE_BITS | (first + count - 1))) {
+                if (lastMillis - now > maxClockBackwardMs) {
+                    if (!behind) {
+                        behind = true;
+                        log.warn("Clock is {} ms behind the last issued id, continuing on the logical clock",
+                                lastMillis - now);
+                    }
+                } else if (behind) {
+                    behind = false;
+                }
+                return millis << (NODE_BITS + SEQUENCE_BITS) | nodeId << SEQUENCE_BITS | first;
+            }
+        }
+    }
+
+    @Override
+    public int maxBlockSize() {
+        return (int) SEQUENCE_MASK + 1;
+    }
+
+    @Override
+    public String getType() {
+        return "SNOWFLAKE";
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+}
@@ -0,0 +1,18 @@
+package com.capital.write;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a service mutation that is handed to the {@link WritePipeline} writer
+ * thread and committed together with other pending mutations, instead of opening
+ * its own SQLite write transaction on the request thread.
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface GroupCommit {
+}
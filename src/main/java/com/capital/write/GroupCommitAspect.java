@@ -0,0 +1,35 @@
+package com.capital.write;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Routes {@link GroupCommit} methods through the write pipeline. Ordered inside
+ * the optimistic retry advice, so a retried call is resubmitted as a new command,
+ * and outside the transaction advice, which then joins the batch transaction on
+ * the writer thread. Calls made from within a transaction run in place.
+ */
+@Aspect
+@Component
+@ConditionalOnExpression(WritePipeline.ENABLED)
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+public class GroupCommitAspect {
+
+	@Autowired
+	private WritePipeline pipeline;
+
+	@Around("@annotation(com.capital.write.GroupCommit)")
+	public Object submit(ProceedingJoinPoint joinPoint) throws Throwable {
+		if (pipeline.isWriterThread() || TransactionSynchronizationManager.isActualTransactionActive()) {
+			return joinPoint.proceed();
+		}
+		return pipeline.execute(joinPoint.getSignature().toShortString(), joinPoint::proceed);
+	}
+}
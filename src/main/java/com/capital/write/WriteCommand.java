@@ -0,0 +1,10 @@
+package com.capital.write;
+
+/**
+ * A unit of work executed by the writer thread inside a batch transaction.
+ */
+@FunctionalInterface
+public interface WriteCommand<T> {
+
+	T execute() throws Throwable;
+}
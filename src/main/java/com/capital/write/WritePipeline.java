@@ -0,0 +1,296 @@
+package com.capital.write;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.exception.StatusCode;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single writer for SQLite. Request threads enqueue commands on a bounded queue;
+ * the writer thread drains up to {@code max-batch-size} of them, waiting at most
+ * {@code max-linger-ms} for the batch to fill, runs them in one transaction and
+ * completes every caller once it has committed.
+ * <p>
+ * A command that fails aborts its batch; the batch is then rolled back and each
+ * command is re-run in its own transaction, so one rejected purchase never fails
+ * its neighbours. Disabled while the purchase engine is on, whose shards are
+ * single writers already.
+ * <p>
+ * A caller whose command is still queued at the request timeout cancels it and
+ * gets {@code SYSTEM_BUSY}; the writer skips cancelled commands. A command the
+ * writer has already started is waited for, since its outcome is already decided.
+ * <p>
+ * Metrics: {@code trading.write.batch.size}, {@code trading.write.queue.wait},
+ * {@code trading.write.commit}, {@code trading.write.fallbacks}, the queue depth and
+ * the configured {@code trading.write.max.batch.size} and {@code trading.write.max.linger}.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression(WritePipeline.ENABLED)
+public class WritePipeline implements Runnable {
+
+	static final String ENABLED = "${trading.write-pipeline.enabled:false} and !${trading.engine.enabled:false}";
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@Value("${trading.write-pipeline.queue-capacity:4096}")
+	private int queueCapacity;
+
+	@Value("${trading.write-pipeline.max-batch-size:64}")
+	private int maxBatchSize;
+
+	@Value("${trading.write-pipeline.max-linger-ms:2}")
+	private long maxLingerMs;
+
+	@Value("${trading.write-pipeline.request-timeout-ms:5000}")
+	private long requestTimeoutMs;
+
+	private ArrayBlockingQueue<Command<?>> queue;
+	private TransactionTemplate transactionTemplate;
+	private Thread thread;
+	private volatile boolean running;
+
+	private DistributionSummary batchSize;
+	private Timer queueWait;
+	private Timer commit;
+	private Counter fallbacks;
+
+	@PostConstruct
+	public void start() {
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		batchSize = DistributionSummary.builder("trading.write.batch.size")
+				.description("Commands committed per write transaction").register(meterRegistry);
+		queueWait = Timer.builder("trading.write.queue.wait")
+				.description("Time a command waited before its batch started").register(meterRegistry);
+		commit = Timer.builder("trading.write.commit").description("Time to execute and commit one batch")
+				.register(meterRegistry);
+		fallbacks = Counter.builder("trading.write.fallbacks")
+				.description("Batches re-run command by command after a failure").register(meterRegistry);
+		Gauge.builder("trading.write.queue.depth", queue, ArrayBlockingQueue::size)
+				.description("Commands waiting for the writer").register(meterRegistry);
+		Gauge.builder("trading.write.max.batch.size", this, p -> p.maxBatchSize)
+				.description("Configured maximum commands per batch").register(meterRegistry);
+		Gauge.builder("trading.write.max.linger", this, p -> p.maxLingerMs).baseUnit("milliseconds")
+				.description("Configured maximum wait for a batch to fill").register(meterRegistry);
+
+		running = true;
+		thread = new Thread(this, "write-pipeline");
+		thread.setDaemon(true);
+		thread.start();
+		log.info("Write pipeline started (max batch {}, max linger {} ms)", maxBatchSize, maxLingerMs);
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		running = false;
+		thread.join(TimeUnit.SECONDS.toMillis(10));
+		log.info("Write pipeline stopped");
+	}
+
+	public boolean isWriterThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	/**
+	 * Runs the command on the writer thread and waits for its batch to commit.
+	 *
+	 * @throws com.capital.exception.TradingException {@code SYSTEM_BUSY} when the
+	 *         queue is full or the command was not started within the request
+	 *         timeout, in which case it never runs
+	 */
+	public <T> T execute(String name, WriteCommand<T> work) throws Throwable {
+		Command<T> command = new Command<>(name, work);
+		if (!running || !queue.offer(command)) {
+			throw StatusCode.SYSTEM_BUSY.toException();
+		}
+		try {
+			try {
+				return command.future.get(requestTimeoutMs, TimeUnit.MILLISECONDS);
+			} catch (TimeoutException e) {
+				if (command.cancel()) {
+					throw StatusCode.SYSTEM_BUSY.toException(e);
+				}
+				return command.future.get();
+			}
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		} catch (InterruptedException e) {
+			command.cancel();
+			Thread.currentThread().interrupt();
+			throw StatusCode.SYSTEM_ERROR.toException(e);
+		}
+	}
+
+	@Override
+	public void run() {
+		List<Command<?>> batch = new ArrayList<>(maxBatchSize);
+		while (running || !queue.isEmpty()) {
+			try {
+				Command<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null) {
+					continue;
+				}
+				batch.add(first);
+				fill(batch);
+				// their callers have already been answered with SYSTEM_BUSY
+				batch.removeIf(command -> !command.start());
+				if (!batch.isEmpty()) {
+					commit(batch);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				running = false;
+			} catch (RuntimeException e) {
+				log.error("Write pipeline batch failed", e);
+				batch.forEach(command -> command.fail(e));
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	private void fill(List<Command<?>> batch) throws InterruptedException {
+		queue.drainTo(batch, maxBatchSize - batch.size());
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxLingerMs);
+		while (batch.size() < maxBatchSize) {
+			long remaining = deadline - System.nanoTime();
+			Command<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+			if (next == null) {
+				return;
+			}
+			batch.add(next);
+			queue.drainTo(batch, maxBatchSize - batch.size());
+		}
+	}
+
+	private void commit(List<Command<?>> batch) {
+		long started = System.nanoTime();
+		batch.forEach(command -> queueWait.record(started - command.enqueuedAt, TimeUnit.NANOSECONDS));
+		batchSize.record(batch.size());
+		try {
+			transactionTemplate.executeWithoutResult(status -> batch.forEach(Command::run));
+			batch.forEach(Command::complete);
+		} catch (CommandFailure e) {
+			if (batch.size() == 1) {
+				e.command.fail(e.getCause());
+			} else {
+				fallbacks.increment();
+				log.debug("Batch of {} aborted by {}, committing commands one by one", batch.size(), e.command.name);
+				batch.forEach(this::commitAlone);
+			}
+		} catch (RuntimeException e) {
+			if (batch.size() == 1) {
+				batch.get(0).fail(e);
+			} else {
+				// the commit itself failed, e.g. a constraint or version check at flush
+				fallbacks.increment();
+				log.debug("Commit of a batch of {} failed, committing commands one by one", batch.size(), e);
+				batch.forEach(this::commitAlone);
+			}
+		} finally {
+			commit.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private void commitAlone(Command<?> command) {
+		try {
+			transactionTemplate.executeWithoutResult(status -> command.run());
+			command.complete();
+		} catch (CommandFailure e) {
+			command.fail(e.getCause());
+		} catch (RuntimeException e) {
+			command.fail(e);
+		}
+	}
+
+	private static final class Command<T> {
+		private static final int QUEUED = 0;
+		private static final int STARTED = 1;
+		private static final int CANCELLED = 2;
+
+		private final String name;
+		private final WriteCommand<T> work;
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+		private final AtomicInteger state = new AtomicInteger(QUEUED);
+		private final long enqueuedAt = System.nanoTime();
+		private T result;
+
+		Command(String name, WriteCommand<T> work) {
+			this.name = name;
+			this.work = work;
+		}
+
+		/**
+		 * Claims the command for the writer; fails once the caller has cancelled it.
+		 */
+		boolean start() {
+			return state.compareAndSet(QUEUED, STARTED);
+		}
+
+		/**
+		 * Withdraws the command; fails once the writer has started it.
+		 */
+		boolean cancel() {
+			return state.compareAndSet(QUEUED, CANCELLED);
+		}
+
+		void run() {
+			try {
+				result = work.execute();
+			} catch (Throwable e) {
+				throw new CommandFailure(this, e);
+			}
+		}
+
+		void complete() {
+			future.complete(result);
+		}
+
+		void fail(Throwable e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * Carries a command's own exception out of the batch transaction so that it
+	 * rolls back.
+	 */
+	private static final class CommandFailure extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final transient Command<?> command;
+
+		CommandFailure(Command<?> command, Throwable cause) {
+			super(cause);
+			this.command = command;
+		}
+	}
+}
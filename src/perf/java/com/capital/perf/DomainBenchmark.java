@@ -0,0 +1,67 @@
+package com.capital.perf;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+
+/**
+ * Balance and stock arithmetic of the entities, each thread on its own account
+ * and product.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DomainBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("12.34");
+
+    private Account account;
+    private Product product;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        account = new Account();
+        account.setBalance(new BigDecimal("1000000000000.00"));
+        product = new Product();
+        product.setPrice(new BigDecimal("19.99"));
+        product.setStockQuantity(Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean accountDeduct() {
+        return account.deduct(AMOUNT);
+    }
+
+    @Benchmark
+    public BigDecimal accountAddBalance() {
+        account.addBalance(AMOUNT);
+        return account.getBalance();
+    }
+
+    @Benchmark
+    public BigDecimal productCalculateTotalPrice() {
+        return product.calculateTotalPrice(3);
+    }
+
+    @Benchmark
+    public boolean productReduceStock() {
+        return product.reduceStock(1);
+    }
+}
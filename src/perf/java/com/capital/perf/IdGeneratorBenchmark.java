@@ -0,0 +1,75 @@
+package com.capital.perf;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capital.util.IdRange;
+import com.capital.util.LocalIdGenerator;
+
+/**
+ * Entity id generation through the shared sequence ({@code threadBlockSize = 0})
+ * against per-thread blocks, and boxed against primitive batch reservation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdGeneratorBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({ "0", "256" })
+    private int threadBlockSize;
+
+    private LocalIdGenerator generator;
+
+    @Setup
+    public void setUp() {
+        generator = new LocalIdGenerator();
+        generator.setThreadBlockSize(threadBlockSize);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Long nextId1Thread() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long nextId8Threads() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Long nextId64Threads() {
+        return generator.nextId();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Long[] boxedBatch() {
+        return generator.nextIds(BATCH);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public IdRange primitiveRange() {
+        return generator.nextIdRange(BATCH);
+    }
+}
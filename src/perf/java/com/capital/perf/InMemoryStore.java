@@ -0,0 +1,144 @@
+package com.capital.perf;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.capital.domain.merchant.Merchant;
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+import com.capital.domain.user.User;
+import com.capital.repository.AccountRepository;
+import com.capital.repository.MerchantRepository;
+import com.capital.repository.ProductRepository;
+import com.capital.repository.UserRepository;
+
+/**
+ * Map-backed stand-in for the repositories the purchase path calls, so the
+ * service logic can be measured without a database. Only the query methods
+ * that path uses are answered; anything else throws.
+ */
+public class InMemoryStore {
+
+    private final Map<Long, User> users = new ConcurrentHashMap<>();
+    private final Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    private final Map<Long, Merchant> merchants = new ConcurrentHashMap<>();
+    private final Map<Long, Product> products = new ConcurrentHashMap<>();
+    private final Map<String, Product> productsBySku = new ConcurrentHashMap<>();
+
+    public void addUser(User user) {
+        users.put(user.getId(), user);
+        accounts.put(user.getAccount().getId(), user.getAccount());
+    }
+
+    public void addMerchant(Merchant merchant) {
+        merchants.put(merchant.getId(), merchant);
+        accounts.put(merchant.getAccount().getId(), merchant.getAccount());
+    }
+
+    public void addProduct(Product product) {
+        products.put(product.getId(), product);
+        productsBySku.put(skuKey(product.getMerchantId(), product.getSku()), product);
+    }
+
+    public UserRepository userRepository() {
+        return repository(UserRepository.class, (method, args) -> {
+            if (method.getName().equals("findByIdAndActive")) {
+                User user = users.get((Long) args[0]);
+                return user != null && user.isActive() == (Boolean) args[1] ? user : null;
+            }
+            return unsupported(method);
+        });
+    }
+
+    public AccountRepository accountRepository() {
+        return repository(AccountRepository.class, (method, args) -> {
+            switch (method.getName()) {
+            case "findById":
+                return Optional.ofNullable(accounts.get((Long) args[0]));
+            case "debit":
+                return debit(accounts.get((Long) args[0]), (BigDecimal) args[1]);
+            case "creditSale":
+                return creditSale(accounts.get((Long) args[0]), (BigDecimal) args[1]);
+            default:
+                return unsupported(method);
+            }
+        });
+    }
+
+    public MerchantRepository merchantRepository() {
+        return repository(MerchantRepository.class, (method, args) -> {
+            if (method.getName().equals("findAccountIdById")) {
+                Merchant merchant = merchants.get((Long) args[0]);
+                return merchant == null ? null : merchant.getAccount().getId();
+            }
+            return unsupported(method);
+        });
+    }
+
+    public ProductRepository productRepository() {
+        return repository(ProductRepository.class, (method, args) -> {
+            switch (method.getName()) {
+            case "findById":
+                return Optional.ofNullable(products.get((Long) args[0]));
+            case "findByMerchantIdAndSku":
+                return productsBySku.get(skuKey((Long) args[0], (String) args[1]));
+            case "decrementStock":
+                return decrementStock(products.get((Long) args[0]), (Integer) args[1]);
+            default:
+                return unsupported(method);
+            }
+        });
+    }
+
+    private static int debit(Account account, BigDecimal amount) {
+        synchronized (account) {
+            return account.deduct(amount) ? 1 : 0;
+        }
+    }
+
+    private static int creditSale(Account account, BigDecimal amount) {
+        synchronized (account) {
+            account.addBalance(amount);
+            return 1;
+        }
+    }
+
+    private static int decrementStock(Product product, Integer quantity) {
+        synchronized (product) {
+            return product.reduceStock(quantity) ? 1 : 0;
+        }
+    }
+
+    private static String skuKey(Long merchantId, String sku) {
+        return merchantId + "/" + sku;
+    }
+
+    private static Object unsupported(Method method) {
+        throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName());
+    }
+
+    private interface Handler {
+        Object invoke(Method method, Object[] args);
+    }
+
+    private static <T> T repository(Class<T> type, Handler handler) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (self, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                case "equals":
+                    return self == args[0];
+                case "hashCode":
+                    return System.identityHashCode(self);
+                default:
+                    return type.getSimpleName() + " (in memory)";
+                }
+            }
+            return handler.invoke(method, args);
+        });
+        return type.cast(proxy);
+    }
+}
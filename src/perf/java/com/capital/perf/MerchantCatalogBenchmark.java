@@ -0,0 +1,68 @@
+package com.capital.perf;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.capital.domain.merchant.Merchant;
+import com.capital.domain.product.Product;
+
+/**
+ * {@link Merchant#findProductBySku(String)} over loaded catalogs of growing
+ * size, looking up every sku in turn so hits land all over the list.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MerchantCatalogBenchmark {
+
+    @Param({ "10", "100", "1000", "10000" })
+    private int catalogSize;
+
+    private Merchant merchant;
+    private String[] skus;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        merchant = new Merchant();
+        merchant.setId(1L);
+        skus = new String[catalogSize];
+        for (int i = 0; i < catalogSize; i++) {
+            Product product = new Product();
+            product.setId((long) i);
+            product.setSku("SKU-" + i);
+            product.setPrice(BigDecimal.TEN);
+            product.setStockQuantity(100);
+            product.setMerchantId(1L);
+            merchant.addProduct(product);
+            skus[i] = product.getSku();
+        }
+    }
+
+    @Benchmark
+    public Product findProductBySku() {
+        String sku = skus[next];
+        next = next + 1 == skus.length ? 0 : next + 1;
+        return merchant.findProductBySku(sku);
+    }
+
+    @Benchmark
+    public Product findMissingSku() {
+        return merchant.findProductBySku("NOT-LISTED");
+    }
+}
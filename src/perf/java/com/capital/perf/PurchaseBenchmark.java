@@ -0,0 +1,112 @@
+package com.capital.perf;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.capital.cache.CatalogCache;
+import com.capital.domain.merchant.Merchant;
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+import com.capital.domain.user.User;
+import com.capital.enums.AccountType;
+import com.capital.metrics.StageMetrics;
+import com.capital.service.impl.TransactionServiceImpl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link TransactionServiceImpl#purchase} end to end over {@link InMemoryStore},
+ * without transactions or group commit: what the service itself costs per call
+ * on top of the database round trips.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PurchaseBenchmark {
+
+    private static final Long USER_ID = 1L;
+    private static final Long MERCHANT_ID = 2L;
+    private static final int PRODUCTS = 128;
+
+    private TransactionServiceImpl service;
+    private String[] skus;
+    private int next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        InMemoryStore store = new InMemoryStore();
+        User user = new User();
+        user.setId(USER_ID);
+        user.setAccount(account(11L, AccountType.User, "1000000000000.00"));
+        store.addUser(user);
+        Merchant merchant = new Merchant();
+        merchant.setId(MERCHANT_ID);
+        merchant.setAccount(account(12L, AccountType.MERCHANT, "0.00"));
+        store.addMerchant(merchant);
+        skus = new String[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            Product product = new Product();
+            product.setId(100L + i);
+            product.setMerchantId(MERCHANT_ID);
+            product.setSku("SKU-" + i);
+            product.setPrice(new BigDecimal("9.99"));
+            product.setStockQuantity(Integer.MAX_VALUE);
+            store.addProduct(product);
+            skus[i] = product.getSku();
+        }
+
+        CatalogCache catalogCache = new CatalogCache();
+        ReflectionTestUtils.setField(catalogCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(catalogCache, "maxEntries", 10000);
+        ReflectionTestUtils.setField(catalogCache, "ttlMs", 60000L);
+        catalogCache.init();
+
+        service = new TransactionServiceImpl();
+        ReflectionTestUtils.setField(service, "userRepository", store.userRepository());
+        ReflectionTestUtils.setField(service, "accountRepository", store.accountRepository());
+        ReflectionTestUtils.setField(service, "merchantRepository", store.merchantRepository());
+        ReflectionTestUtils.setField(service, "productRepository", store.productRepository());
+        ApplicationEventPublisher eventPublisher = event -> {
+        };
+        ReflectionTestUtils.setField(service, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(service, "catalogCache", catalogCache);
+
+        StageMetrics stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+        ReflectionTestUtils.setField(service, "stageMetrics", stageMetrics);
+    }
+
+    @Benchmark
+    public Map<String, Object> purchase() {
+        String sku = skus[next];
+        next = (next + 1) % PRODUCTS;
+        return service.purchase(USER_ID, MERCHANT_ID, sku, 1);
+    }
+
+    private static Account account(Long id, AccountType type, String balance) {
+        Account account = new Account();
+        account.setId(id);
+        account.setAccountType(type.toString());
+        account.setBalance(new BigDecimal(balance));
+        return account;
+    }
+}
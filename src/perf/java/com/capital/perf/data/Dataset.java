@@ -0,0 +1,147 @@
+package com.capital.perf.data;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Id ranges of a generated database, saved next to it as
+ * {@code <db>.properties} so benchmarks can pick existing rows without
+ * scanning tables. Every entity occupies one consecutive id range.
+ */
+public final class Dataset {
+
+    private final String path;
+    private final String spec;
+    private final long firstAccountId;
+    private final long firstUserId;
+    private final long users;
+    private final long firstMerchantId;
+    private final int merchants;
+    private final long firstProductId;
+    private final long products;
+    private final long firstWarnId;
+    private final int warns;
+
+    Dataset(String path, String spec, long firstAccountId, long firstUserId, long users, long firstMerchantId,
+            int merchants, long firstProductId, long products, long firstWarnId, int warns) {
+        this.path = path;
+        this.spec = spec;
+        this.firstAccountId = firstAccountId;
+        this.firstUserId = firstUserId;
+        this.users = users;
+        this.firstMerchantId = firstMerchantId;
+        this.merchants = merchants;
+        this.firstProductId = firstProductId;
+        this.products = products;
+        this.firstWarnId = firstWarnId;
+        this.warns = warns;
+    }
+
+    public String getJdbcUrl() {
+        return "jdbc:sqlite:" + path;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public int getMerchants() {
+        return merchants;
+    }
+
+    public long getProducts() {
+        return products;
+    }
+
+    public int getWarns() {
+        return warns;
+    }
+
+    /** Id of the {@code index}-th user, from 0. */
+    public long userId(long index) {
+        return firstUserId + index;
+    }
+
+    /** Account of the {@code index}-th user. */
+    public long userAccountId(long index) {
+        return firstAccountId + index;
+    }
+
+    public long merchantId(int index) {
+        return firstMerchantId + index;
+    }
+
+    /** Merchant accounts follow the user accounts. */
+    public long merchantAccountId(int index) {
+        return firstAccountId + users + index;
+    }
+
+    /** Products are numbered merchant by merchant, in merchant id order. */
+    public long productId(long index) {
+        return firstProductId + index;
+    }
+
+    /** Highest id in the database; later inserts must start above it. */
+    public long lastId() {
+        return firstWarnId + warns - 1;
+    }
+
+    static Path propertiesPath(String path) {
+        return Paths.get(path + ".properties");
+    }
+
+    void save() throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("spec", spec);
+        properties.setProperty("firstAccountId", String.valueOf(firstAccountId));
+        properties.setProperty("firstUserId", String.valueOf(firstUserId));
+        properties.setProperty("users", String.valueOf(users));
+        properties.setProperty("firstMerchantId", String.valueOf(firstMerchantId));
+        properties.setProperty("merchants", String.valueOf(merchants));
+        properties.setProperty("firstProductId", String.valueOf(firstProductId));
+        properties.setProperty("products", String.valueOf(products));
+        properties.setProperty("firstWarnId", String.valueOf(firstWarnId));
+        properties.setProperty("warns", String.valueOf(warns));
+        try (Writer writer = Files.newBufferedWriter(propertiesPath(path), StandardCharsets.UTF_8)) {
+            properties.store(writer, "Generated by " + DatasetGenerator.class.getSimpleName());
+        }
+    }
+
+    /**
+     * @return the dataset described next to {@code path}, or {@code null} if there is none
+     */
+    static Dataset load(String path) throws IOException {
+        Path file = propertiesPath(path);
+        if (!Files.exists(file) || !Files.exists(Paths.get(path))) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return new Dataset(path, properties.getProperty("spec"), longValue(properties, "firstAccountId"),
+                longValue(properties, "firstUserId"), longValue(properties, "users"),
+                longValue(properties, "firstMerchantId"), (int) longValue(properties, "merchants"),
+                longValue(properties, "firstProductId"), longValue(properties, "products"),
+                longValue(properties, "firstWarnId"), (int) longValue(properties, "warns"));
+    }
+
+    String getSpec() {
+        return spec;
+    }
+
+    private static long longValue(Properties properties, String key) {
+        return Long.parseLong(properties.getProperty(key));
+    }
+
+    @Override
+    public String toString() {
+        return path + " (" + spec + ")";
+    }
+}
@@ -0,0 +1,312 @@
+package com.capital.perf.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.EnumSet;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.tool.hbm2ddl.SchemaUpdate;
+import org.hibernate.tool.schema.TargetType;
+import org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy;
+
+import com.capital.config.SQLiteDialect;
+import com.capital.domain.merchant.Merchant;
+import com.capital.domain.merchant.MerchantAccountMonitor;
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+import com.capital.domain.shared.IdSegment;
+import com.capital.domain.shared.SettlementCheckpoint;
+import com.capital.domain.shared.SettlementRun;
+import com.capital.domain.shared.SettlementWarn;
+import com.capital.domain.user.User;
+import com.capital.enums.AccountType;
+
+/**
+ * Writes a SQLite database of the size and shape of a {@link DatasetSpec} with
+ * batched JDBC inserts, bypassing the services. The schema comes from the
+ * entity mappings through Hibernate's schema update, named the way Spring
+ * Boot names it, so the application can open the file as is.
+ * <p>
+ * Rows are inserted in primary key order with journaling and syncing off;
+ * products are written merchant by merchant so the {@code (merchant_id, sku)}
+ * index is filled in order too. The {@code id_segments} rows are moved past
+ * the generated ids for the segment id strategy.
+ * <p>
+ * {@code mvn -Pperf test-compile exec:exec@dataset -Ddataset.args="--products=10000000"}
+ */
+public class DatasetGenerator {
+
+    private static final Class<?>[] ENTITIES = { Account.class, User.class, Merchant.class,
+            MerchantAccountMonitor.class, Product.class, SettlementWarn.class, SettlementRun.class,
+            SettlementCheckpoint.class, IdSegment.class };
+
+    private static final String ACCOUNT_SQL = "INSERT INTO accounts"
+            + " (id, balance, currency, account_type, daily_sales, is_active, version) VALUES (?, ?, 'CNY', ?, ?, 1, 0)";
+    private static final String USER_SQL = "INSERT INTO users (id, user_name, email, account_id, is_active)"
+            + " VALUES (?, ?, ?, ?, 1)";
+    /** {@code merchant_id} is the join column of the monitor, whose key is the merchant id. */
+    private static final String MERCHANT_SQL = "INSERT INTO merchants (id, name, code, account_id, merchant_id)"
+            + " VALUES (?, ?, ?, ?, ?)";
+    private static final String MONITOR_SQL = "INSERT INTO merchant_account_monitor"
+            + " (merchant_id, account_id, balance, currency, version) VALUES (?, ?, ?, 'CNY', 0)";
+    private static final String PRODUCT_SQL = "INSERT INTO products"
+            + " (id, sku, name, description, price, stock_quantity, merchant_id, version) VALUES (?, ?, ?, ?, ?, ?, ?, 0)";
+    private static final String WARN_SQL = "INSERT INTO settlement_warns"
+            + " (id, merchant_id, pre_balance, balance, daily_sales, created_at) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String SEGMENT_SQL = "INSERT OR REPLACE INTO id_segments (biz_type, max_id, step, updated_at)"
+            + " VALUES (?, ?, 0, ?)";
+
+    private final DatasetSpec spec;
+
+    public DatasetGenerator(DatasetSpec spec) {
+        spec.validate();
+        this.spec = spec;
+    }
+
+    public static void main(String[] args) throws Exception {
+        DatasetSpec spec;
+        try {
+            spec = DatasetSpec.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        System.out.println("Dataset ready: " + new DatasetGenerator(spec).obtain());
+    }
+
+    /**
+     * The database the spec describes, generated only if the file is missing,
+     * was generated from a different spec, or {@code force} is set.
+     */
+    public Dataset obtain() throws IOException, SQLException {
+        Dataset existing = Dataset.load(spec.path);
+        if (!spec.force && existing != null && Objects.equals(existing.getSpec(), spec.describe())) {
+            return existing;
+        }
+        return generate();
+    }
+
+    public Dataset generate() throws IOException, SQLException {
+        long started = System.nanoTime();
+        Path file = Paths.get(spec.path);
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.deleteIfExists(Dataset.propertiesPath(spec.path));
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(Paths.get(spec.path + "-journal"));
+        String url = "jdbc:sqlite:" + spec.path;
+        createSchema(url);
+
+        long firstAccountId = spec.firstId;
+        long firstUserId = firstAccountId + spec.users + spec.merchants;
+        long firstMerchantId = firstUserId + spec.users;
+        long firstProductId = firstMerchantId + spec.merchants;
+        long firstWarnId = firstProductId + spec.products;
+        Dataset dataset = new Dataset(spec.path, spec.describe(), firstAccountId, firstUserId, spec.users,
+                firstMerchantId, spec.merchants, firstProductId, spec.products, firstWarnId, spec.warns);
+
+        SplittableRandom random = new SplittableRandom(spec.seed);
+        long[] catalogSizes = catalogSizes(spec.products, spec.merchants, spec.skew, random);
+        long[] merchantBalances = new long[spec.merchants];
+        long[] merchantSales = new long[spec.merchants];
+        for (int i = 0; i < spec.merchants; i++) {
+            merchantBalances[i] = random.nextLong(100_000_000L);
+            merchantSales[i] = random.nextLong(merchantBalances[i] + 1);
+        }
+
+        try (Connection connection = DriverManager.getConnection(url)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = OFF");
+                statement.execute("PRAGMA synchronous = OFF");
+                statement.execute("PRAGMA locking_mode = EXCLUSIVE");
+                statement.execute("PRAGMA temp_store = MEMORY");
+                statement.execute("PRAGMA cache_size = -262144");
+            }
+            connection.setAutoCommit(false);
+
+            insert(connection, "accounts", ACCOUNT_SQL, spec.users + spec.merchants, (ps, i) -> {
+                boolean merchant = i >= spec.users;
+                int m = (int) (i - spec.users);
+                ps.setLong(1, firstAccountId + i);
+                ps.setBigDecimal(2, money(merchant ? merchantBalances[m] : random.nextLong(100_000_000L)));
+                ps.setString(3, (merchant ? AccountType.MERCHANT : AccountType.User).toString());
+                ps.setBigDecimal(4, money(merchant ? merchantSales[m] : 0));
+            });
+            insert(connection, "users", USER_SQL, spec.users, (ps, i) -> {
+                ps.setLong(1, firstUserId + i);
+                ps.setString(2, "user" + i);
+                ps.setString(3, "user" + i + "@bench.test");
+                ps.setLong(4, dataset.userAccountId(i));
+            });
+            insert(connection, "merchants", MERCHANT_SQL, spec.merchants, (ps, i) -> {
+                ps.setLong(1, firstMerchantId + i);
+                ps.setString(2, "Merchant " + i);
+                ps.setString(3, "M" + i);
+                ps.setLong(4, dataset.merchantAccountId((int) i));
+                ps.setLong(5, firstMerchantId + i);
+            });
+            // monitors hold the balance at the last settlement: the account balance before today's sales
+            insert(connection, "merchant_account_monitor", MONITOR_SQL, spec.merchants, (ps, i) -> {
+                ps.setLong(1, firstMerchantId + i);
+                ps.setLong(2, dataset.merchantAccountId((int) i));
+                ps.setBigDecimal(3, money(merchantBalances[(int) i] - merchantSales[(int) i]));
+            });
+            int[] merchant = { 0 };
+            long[] skuIndex = { 0 };
+            insert(connection, "products", PRODUCT_SQL, spec.products, (ps, i) -> {
+                while (skuIndex[0] == catalogSizes[merchant[0]]) {
+                    merchant[0]++;
+                    skuIndex[0] = 0;
+                }
+                long sku = skuIndex[0]++;
+                ps.setLong(1, firstProductId + i);
+                ps.setString(2, "SKU-" + sku);
+                ps.setString(3, "Product " + sku);
+                ps.setString(4, null);
+                ps.setBigDecimal(5, money(99 + random.nextLong(100_000)));
+                ps.setInt(6, random.nextInt(10_000));
+                ps.setLong(7, firstMerchantId + merchant[0]);
+            });
+            int[] warned = pick(spec.warns, spec.merchants, random);
+            long now = System.currentTimeMillis();
+            insert(connection, "settlement_warns", WARN_SQL, spec.warns, (ps, i) -> {
+                int m = warned[(int) i];
+                ps.setLong(1, firstWarnId + i);
+                ps.setLong(2, firstMerchantId + m);
+                ps.setBigDecimal(3, money(merchantBalances[m] - merchantSales[m]));
+                ps.setBigDecimal(4, money(merchantBalances[m]));
+                ps.setBigDecimal(5, money(merchantSales[m]));
+                ps.setTimestamp(6, new Timestamp(now - random.nextLong(TimeUnit.DAYS.toMillis(90))));
+            });
+            try (PreparedStatement ps = connection.prepareStatement(SEGMENT_SQL)) {
+                ps.setString(1, "default");
+                ps.setLong(2, dataset.lastId());
+                ps.setTimestamp(3, new Timestamp(now));
+                ps.executeUpdate();
+            }
+            connection.commit();
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("ANALYZE");
+            }
+        }
+        dataset.save();
+        System.out.printf("Generated %s in %d s%n", dataset, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started));
+        return dataset;
+    }
+
+    /**
+     * Products per merchant proportional to {@code 1 / rank^skew}, summing to
+     * {@code total}, with ranks shuffled over the merchant ids.
+     */
+    static long[] catalogSizes(long total, int merchants, double skew, SplittableRandom random) {
+        double[] weights = new double[merchants];
+        double sum = 0;
+        for (int i = 0; i < merchants; i++) {
+            weights[i] = 1 / Math.pow(i + 1, skew);
+            sum += weights[i];
+        }
+        long[] sizes = new long[merchants];
+        long assigned = 0;
+        for (int i = 0; i < merchants; i++) {
+            sizes[i] = (long) Math.floor(total * weights[i] / sum);
+            assigned += sizes[i];
+        }
+        for (int i = 0; assigned < total; i = (i + 1) % merchants) {
+            sizes[i]++;
+            assigned++;
+        }
+        for (int i = merchants - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long size = sizes[i];
+            sizes[i] = sizes[j];
+            sizes[j] = size;
+        }
+        return sizes;
+    }
+
+    /**
+     * {@code count} distinct indexes below {@code bound}, in ascending order.
+     */
+    private static int[] pick(int count, int bound, SplittableRandom random) {
+        int[] indexes = new int[bound];
+        for (int i = 0; i < bound; i++) {
+            indexes[i] = i;
+        }
+        for (int i = 0; i < count; i++) {
+            int j = i + random.nextInt(bound - i);
+            int index = indexes[i];
+            indexes[i] = indexes[j];
+            indexes[j] = index;
+        }
+        int[] picked = java.util.Arrays.copyOf(indexes, count);
+        java.util.Arrays.sort(picked);
+        return picked;
+    }
+
+    private interface RowBinder {
+        void bind(PreparedStatement ps, long index) throws SQLException;
+    }
+
+    private void insert(Connection connection, String table, String sql, long rows, RowBinder binder)
+            throws SQLException {
+        long started = System.nanoTime();
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            for (long i = 0; i < rows; i++) {
+                binder.bind(ps, i);
+                ps.addBatch();
+                if ((i + 1) % spec.batchSize == 0) {
+                    ps.executeBatch();
+                }
+                if ((i + 1) % 1_000_000 == 0) {
+                    System.out.printf("  %s: %,d of %,d%n", table, i + 1, rows);
+                }
+            }
+            ps.executeBatch();
+        }
+        long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        System.out.printf("%s: %,d rows in %,d ms (%,d rows/s)%n", table, rows, elapsedMs, rows * 1000 / elapsedMs);
+    }
+
+    private static void createSchema(String url) {
+        StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
+                .applySetting(AvailableSettings.URL, url)
+                .applySetting(AvailableSettings.DRIVER, "org.sqlite.JDBC")
+                .applySetting(AvailableSettings.DIALECT, SQLiteDialect.class.getName())
+                .applySetting(AvailableSettings.PHYSICAL_NAMING_STRATEGY, CamelCaseToUnderscoresNamingStrategy.class.getName())
+                .applySetting(AvailableSettings.IMPLICIT_NAMING_STRATEGY, SpringImplicitNamingStrategy.class.getName())
+                .applySetting("hibernate.schema_update.unique_constraint_strategy", "RECREATE_QUIETLY")
+                .build();
+        try {
+            MetadataSources sources = new MetadataSources(registry);
+            for (Class<?> entity : ENTITIES) {
+                sources.addAnnotatedClass(entity);
+            }
+            new SchemaUpdate().execute(EnumSet.of(TargetType.DATABASE), sources.buildMetadata());
+        } finally {
+            StandardServiceRegistryBuilder.destroy(registry);
+        }
+    }
+
+    private static BigDecimal money(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+}
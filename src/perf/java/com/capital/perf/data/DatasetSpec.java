@@ -0,0 +1,117 @@
+package com.capital.perf.data;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shape of a generated benchmark database. Product counts per merchant follow
+ * a Zipf distribution with exponent {@link #skew}, so a few merchants carry
+ * large catalogs and most carry small ones; 0 spreads products evenly.
+ */
+public final class DatasetSpec {
+
+    String path = "target/bench.db";
+    long users = 100_000;
+    int merchants = 10_000;
+    long products = 1_000_000;
+    double skew = 1.0;
+    int warns = 1_000;
+    long seed = 42;
+    /** Far above the ids the local generator hands out, so later inserts cannot collide. */
+    long firstId = 1_000_000_000L;
+    int batchSize = 10_000;
+    boolean force;
+
+    public DatasetSpec path(String path) {
+        this.path = path;
+        return this;
+    }
+
+    public DatasetSpec users(long users) {
+        this.users = users;
+        return this;
+    }
+
+    public DatasetSpec merchants(int merchants) {
+        this.merchants = merchants;
+        return this;
+    }
+
+    public DatasetSpec products(long products) {
+        this.products = products;
+        return this;
+    }
+
+    public DatasetSpec skew(double skew) {
+        this.skew = skew;
+        return this;
+    }
+
+    public DatasetSpec warns(int warns) {
+        this.warns = warns;
+        return this;
+    }
+
+    public DatasetSpec seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public DatasetSpec force(boolean force) {
+        this.force = force;
+        return this;
+    }
+
+    static DatasetSpec parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int split = arg.indexOf('=');
+            if (arg.equals("--force")) {
+                values.put("force", "true");
+            } else if (!arg.startsWith("--") || split < 0) {
+                throw new IllegalArgumentException("Unrecognized argument " + arg + "\n" + usage());
+            } else {
+                values.put(arg.substring(2, split), arg.substring(split + 1));
+            }
+        }
+        DatasetSpec spec = new DatasetSpec();
+        spec.path = values.getOrDefault("db", spec.path);
+        spec.users = Long.parseLong(values.getOrDefault("users", String.valueOf(spec.users)));
+        spec.merchants = Integer.parseInt(values.getOrDefault("merchants", String.valueOf(spec.merchants)));
+        spec.products = Long.parseLong(values.getOrDefault("products", String.valueOf(spec.products)));
+        spec.skew = Double.parseDouble(values.getOrDefault("skew", String.valueOf(spec.skew)));
+        spec.warns = Integer.parseInt(values.getOrDefault("warns", String.valueOf(spec.warns)));
+        spec.seed = Long.parseLong(values.getOrDefault("seed", String.valueOf(spec.seed)));
+        spec.firstId = Long.parseLong(values.getOrDefault("first-id", String.valueOf(spec.firstId)));
+        spec.batchSize = Integer.parseInt(values.getOrDefault("batch", String.valueOf(spec.batchSize)));
+        spec.force = Boolean.parseBoolean(values.getOrDefault("force", "false"));
+        spec.validate();
+        return spec;
+    }
+
+    static String usage() {
+        return "Options:\n"
+                + "  --db=target/bench.db        SQLite file to write\n"
+                + "  --users=100000              users, each with an account\n"
+                + "  --merchants=10000           merchants, each with an account and a monitor\n"
+                + "  --products=1000000          products over all merchants\n"
+                + "  --skew=1.0                  Zipf exponent of products per merchant, 0 for even\n"
+                + "  --warns=1000                historical settlement warnings, at most one per merchant\n"
+                + "  --seed=42 --first-id=1000000000 --batch=10000\n"
+                + "  --force                     regenerate even if the file already matches";
+    }
+
+    void validate() {
+        if (users <= 0 || merchants <= 0 || products < 0 || skew < 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("users, merchants and batch must be positive, products and skew not negative");
+        }
+        if (warns < 0 || warns > merchants) {
+            throw new IllegalArgumentException("warns must be between 0 and the number of merchants");
+        }
+    }
+
+    String describe() {
+        return "users=" + users + " merchants=" + merchants + " products=" + products + " skew=" + skew + " warns="
+                + warns + " seed=" + seed + " firstId=" + firstId;
+    }
+}
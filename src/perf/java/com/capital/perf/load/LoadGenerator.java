@@ -0,0 +1,258 @@
+package com.capital.perf.load;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Drives a running application over HTTP: seeds users, merchants and products
+ * through the public API, then sends a weighted mix of purchase, recharge,
+ * catalog read and restock calls at a fixed rate and reports latency
+ * percentiles and throughput per operation.
+ * <p>
+ * The schedule is open loop: request {@code i} is due at {@code start + i / rate}
+ * whether or not earlier ones were answered, and its latency counts from that
+ * due time. A server that stalls therefore shows the queueing it caused instead
+ * of slowing the generator down with it.
+ * <p>
+ * {@code mvn -Pperf test-compile exec:exec@load -Dload.args="--rate=500 --duration=120"}
+ */
+public class LoadGenerator {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+    private static final double MILLIS = 1000.0;
+
+    private final LoadOptions options;
+    private final HttpClient client;
+    private final String prefix = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+
+    private final List<Long> userIds = new ArrayList<>();
+    private final List<Long> merchantIds = new ArrayList<>();
+
+    private Operation[] weighted;
+
+    LoadGenerator(LoadOptions options) {
+        this.options = options;
+        this.client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new OperationStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadOptions options;
+        try {
+            options = LoadOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        LoadGenerator generator = new LoadGenerator(options);
+        generator.seed();
+        long[] perSecond = generator.run();
+        generator.report(System.out, perSecond);
+    }
+
+    void seed() throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        for (int i = 0; i < options.merchants; i++) {
+            String code = prefix + "-m" + i;
+            long merchantId = id(post("/api/v1/merchants/createMerchant",
+                    "{\"name\":\"Load merchant " + code + "\",\"code\":\"" + code + "\"}"));
+            StringBuilder csv = new StringBuilder("sku,name,price,stock_quantity\n");
+            for (int p = 0; p < options.productsPerMerchant; p++) {
+                csv.append(sku(p)).append(",Load product ").append(p).append(',')
+                        .append(1 + p % 50).append(".99,1000000\n");
+            }
+            send(HttpRequest.newBuilder(uri("/api/v1/merchants/" + merchantId + "/products/import"))
+                    .header("Content-Type", "text/csv").timeout(TIMEOUT)
+                    .POST(HttpRequest.BodyPublishers.ofString(csv.toString())).build());
+            merchantIds.add(merchantId);
+        }
+        for (int i = 0; i < options.users; i++) {
+            String name = prefix + "-u" + i;
+            long userId = id(post("/api/v1/users", "{\"username\":\"" + name + "\",\"email\":\"" + name + "@load.test\"}"));
+            post("/api/v1/users/" + userId + "/recharge", "{\"amount\":1000000000,\"currency\":\"CNY\"}");
+            userIds.add(userId);
+        }
+        System.out.printf("Seeded %d merchants with %d products each and %d users in %d ms%n", options.merchants,
+                options.productsPerMerchant, options.users, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    /**
+     * @return completed requests per recorded second
+     */
+    long[] run() throws InterruptedException {
+        weighted = weights(options.mix);
+        Semaphore inFlight = new Semaphore(options.maxInFlight);
+        AtomicLongArray completions = new AtomicLongArray(options.durationSeconds);
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.rate;
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+        System.out.printf("Sending %d requests/s: %d s warmup, %d s recorded%n", options.rate, options.warmupSeconds,
+                options.durationSeconds);
+
+        for (long i = 0;; i++) {
+            long due = start + i * interval;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = weighted[ThreadLocalRandom.current().nextInt(weighted.length)];
+            HttpRequest request = request(operation, ThreadLocalRandom.current());
+            // waiting for a slot still counts against the due time
+            inFlight.acquire();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).whenComplete((response, error) -> {
+                long now = System.nanoTime();
+                inFlight.release();
+                if (due < recordFrom) {
+                    return;
+                }
+                boolean failed = error != null || response.statusCode() / 100 != 2;
+                boolean rejected = !failed && !response.body().contains("\"success\":true");
+                stats.get(operation).record(now - due, failed, rejected);
+                int second = (int) ((now - recordFrom) / TimeUnit.SECONDS.toNanos(1));
+                if (second < completions.length()) {
+                    completions.incrementAndGet(second);
+                }
+            });
+        }
+        inFlight.acquire(options.maxInFlight);
+        long[] perSecond = new long[completions.length()];
+        for (int i = 0; i < perSecond.length; i++) {
+            perSecond[i] = completions.get(i);
+        }
+        return perSecond;
+    }
+
+    void report(PrintStream out, long[] perSecond) throws IOException {
+        Path dir = Paths.get(options.outputDir);
+        Files.createDirectories(dir);
+        out.printf("%n%-9s %9s %8s %8s %9s %9s %9s %9s %9s%n", "operation", "requests", "failed", "rejected",
+                "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        Histogram total = new Histogram(3);
+        for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+            OperationStats stat = entry.getValue();
+            if (stat.count() == 0) {
+                continue;
+            }
+            Histogram histogram = stat.histogram();
+            total.add(histogram);
+            printRow(out, entry.getKey().label(), histogram, stat.failures(), stat.rejected());
+            try (PrintStream file = new PrintStream(dir.resolve(entry.getKey().label() + ".hgrm").toFile(), "UTF-8")) {
+                histogram.outputPercentileDistribution(file, MILLIS);
+            }
+        }
+        long failures = stats.values().stream().mapToLong(OperationStats::failures).sum();
+        long rejected = stats.values().stream().mapToLong(OperationStats::rejected).sum();
+        printRow(out, "all", total, failures, rejected);
+
+        StringBuilder series = new StringBuilder();
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long count : perSecond) {
+            series.append(series.length() == 0 ? "" : " ").append(count);
+            min = Math.min(min, count);
+            max = Math.max(max, count);
+        }
+        out.printf("%nCompleted per second (min %d, max %d): %s%n", min, max, series);
+        out.printf("Percentile distributions (ms) written to %s%n", dir.toAbsolutePath());
+    }
+
+    private void printRow(PrintStream out, String label, Histogram histogram, long failures, long rejected) {
+        out.printf("%-9s %9d %8d %8d %9.1f %9.2f %9.2f %9.2f %9.2f%n", label, histogram.getTotalCount(), failures,
+                rejected, (double) histogram.getTotalCount() / options.durationSeconds,
+                histogram.getValueAtPercentile(50) / MILLIS, histogram.getValueAtPercentile(99) / MILLIS,
+                histogram.getValueAtPercentile(99.9) / MILLIS, histogram.getMaxValue() / MILLIS);
+    }
+
+    private HttpRequest request(Operation operation, ThreadLocalRandom random) {
+        long userId = userIds.get(random.nextInt(userIds.size()));
+        long merchantId = merchantIds.get(random.nextInt(merchantIds.size()));
+        String sku = sku(random.nextInt(options.productsPerMerchant));
+        switch (operation) {
+        case PURCHASE:
+            return postRequest("/api/v1/trading/purchase", "{\"userId\":" + userId + ",\"merchantId\":" + merchantId
+                    + ",\"sku\":\"" + sku + "\",\"quantity\":1}");
+        case RECHARGE:
+            return postRequest("/api/v1/users/" + userId + "/recharge", "{\"amount\":10.00,\"currency\":\"CNY\"}");
+        case CATALOG:
+            return HttpRequest.newBuilder(uri("/api/v1/merchants/" + sku + "/merchant/" + merchantId)).timeout(TIMEOUT)
+                    .GET().build();
+        case RESTOCK:
+            return postRequest("/api/v1/merchants/" + merchantId + "/products/increaseStock",
+                    "{\"sku\":\"" + sku + "\",\"quantity\":5}");
+        default:
+            throw new IllegalStateException("Unhandled operation " + operation);
+        }
+    }
+
+    private static Operation[] weights(Map<Operation, Integer> mix) {
+        List<Operation> slots = new ArrayList<>();
+        mix.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                slots.add(operation);
+            }
+        });
+        return slots.toArray(new Operation[0]);
+    }
+
+    private String post(String path, String json) throws IOException, InterruptedException {
+        return send(postRequest(path, json));
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        if (response.statusCode() / 100 != 2 || !response.body().contains("\"success\":true")) {
+            throw new IllegalStateException("Seeding failed at " + request.uri() + ": " + response.statusCode() + " "
+                    + response.body());
+        }
+        return response.body();
+    }
+
+    private HttpRequest postRequest(String path, String json) {
+        return HttpRequest.newBuilder(uri(path)).header("Content-Type", "application/json").timeout(TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(options.baseUrl + path);
+    }
+
+    private static long id(String body) {
+        JsonObject data = JsonParser.parseString(body).getAsJsonObject().getAsJsonObject("data");
+        return data.get("id").getAsLong();
+    }
+
+    private static String sku(int index) {
+        return "LOAD-" + index;
+    }
+}
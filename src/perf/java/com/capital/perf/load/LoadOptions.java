@@ -0,0 +1,92 @@
+package com.capital.perf.load;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code --name=value} arguments of {@link LoadGenerator}, with the defaults
+ * listed in {@link #usage()}.
+ */
+final class LoadOptions {
+
+    final String baseUrl;
+    final int rate;
+    final int warmupSeconds;
+    final int durationSeconds;
+    final int maxInFlight;
+    final int users;
+    final int merchants;
+    final int productsPerMerchant;
+    final Map<Operation, Integer> mix;
+    final String outputDir;
+
+    private LoadOptions(Map<String, String> values) {
+        baseUrl = trimSlash(values.getOrDefault("url", "http://localhost:8080"));
+        rate = positive(values, "rate", 200);
+        warmupSeconds = Integer.parseInt(values.getOrDefault("warmup", "10"));
+        durationSeconds = positive(values, "duration", 60);
+        maxInFlight = positive(values, "max-in-flight", 1024);
+        users = positive(values, "users", 200);
+        merchants = positive(values, "merchants", 20);
+        productsPerMerchant = positive(values, "products", 100);
+        mix = mix(values.getOrDefault("mix", "purchase=70,recharge=10,catalog=15,restock=5"));
+        outputDir = values.getOrDefault("out", "target/load");
+    }
+
+    static LoadOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (arg.equals("--help") || !arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException(arg.equals("--help") ? usage() : "Unrecognized argument " + arg + "\n" + usage());
+            }
+            int split = arg.indexOf('=');
+            values.put(arg.substring(2, split), arg.substring(split + 1));
+        }
+        return new LoadOptions(values);
+    }
+
+    static String usage() {
+        return "Options:\n"
+                + "  --url=http://localhost:8080   application under test\n"
+                + "  --rate=200                    requests per second, scheduled open loop\n"
+                + "  --warmup=10                   seconds of load before recording\n"
+                + "  --duration=60                 recorded seconds\n"
+                + "  --max-in-flight=1024          outstanding requests before sending stalls\n"
+                + "  --users=200 --merchants=20 --products=100   seeded data, products per merchant\n"
+                + "  --mix=purchase=70,recharge=10,catalog=15,restock=5   relative weights\n"
+                + "  --out=target/load             directory for the .hgrm percentile files";
+    }
+
+    private static Map<Operation, Integer> mix(String spec) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("Mix entries look like purchase=70, was " + part);
+            }
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("Mix weight of " + pair[0] + " must not be negative");
+            }
+            weights.put(Operation.of(pair[0].trim()), weight);
+        }
+        if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+            throw new IllegalArgumentException("Mix needs at least one positive weight");
+        }
+        return weights;
+    }
+
+    private static int positive(Map<String, String> values, String name, int defaultValue) {
+        String value = values.get(name);
+        int parsed = value == null ? defaultValue : Integer.parseInt(value);
+        if (parsed <= 0) {
+            throw new IllegalArgumentException("--" + name + " must be positive, was " + value);
+        }
+        return parsed;
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
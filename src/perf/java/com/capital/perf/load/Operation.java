@@ -0,0 +1,30 @@
+package com.capital.perf.load;
+
+import java.util.Locale;
+
+/**
+ * Calls the load generator mixes, one latency histogram each.
+ */
+enum Operation {
+
+    /** {@code POST /api/v1/trading/purchase} of one unit. */
+    PURCHASE,
+    /** {@code POST /api/v1/users/{userId}/recharge}. */
+    RECHARGE,
+    /** {@code GET /api/v1/merchants/{sku}/merchant/{merchantId}}. */
+    CATALOG,
+    /** {@code POST /api/v1/merchants/{merchantId}/products/increaseStock}. */
+    RESTOCK;
+
+    static Operation of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown operation " + name + ", expected purchase, recharge, catalog or restock");
+        }
+    }
+
+    String label() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
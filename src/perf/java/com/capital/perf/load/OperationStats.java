@@ -0,0 +1,49 @@
+package com.capital.perf.load;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies of one operation in microseconds, measured from the time the
+ * request was scheduled rather than sent, so a stalled server is charged for
+ * every request it delayed (coordinated omission).
+ */
+final class OperationStats {
+
+    private final Histogram histogram = new ConcurrentHistogram(TimeUnit.MINUTES.toMicros(10), 3);
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param failed transport error or non-2xx status
+     * @param businessError answered with {@code success: false}, e.g. out of stock
+     */
+    void record(long latencyNanos, boolean failed, boolean businessError) {
+        long micros = Math.max(1, TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+        histogram.recordValue(Math.min(micros, histogram.getHighestTrackableValue()));
+        if (failed) {
+            failures.increment();
+        } else if (businessError) {
+            rejected.increment();
+        }
+    }
+
+    Histogram histogram() {
+        return histogram;
+    }
+
+    long count() {
+        return histogram.getTotalCount();
+    }
+
+    long failures() {
+        return failures.sum();
+    }
+
+    long rejected() {
+        return rejected.sum();
+    }
+}
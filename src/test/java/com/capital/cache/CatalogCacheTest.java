@@ -0,0 +1,147 @@
+package com.capital.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.capital.domain.product.Product;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class CatalogCacheTest {
+
+    private MeterRegistry meterRegistry;
+    private CatalogCache cache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new CatalogCache();
+        ReflectionTestUtils.setField(cache, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(cache, "maxEntries", 2);
+        ReflectionTestUtils.setField(cache, "ttlMs", 60000L);
+        cache.init();
+    }
+
+    private Product load(Long merchantId, String sku) {
+        loads.incrementAndGet();
+        Product product = new Product();
+        product.setMerchantId(merchantId);
+        product.setSku(sku);
+        product.setPrice(new BigDecimal("1.00"));
+        product.setStockQuantity(10);
+        return product;
+    }
+
+    private double count(String name, String tag, String value) {
+        return meterRegistry.get(name).tag(tag, value).counter().count();
+    }
+
+    @Test
+    void testSecondReadIsAHit() {
+        // 执行
+        Product first = cache.product(1L, "A", () -> load(1L, "A"));
+        Product second = cache.product(1L, "A", () -> load(1L, "A"));
+
+        // 验证
+        assertSame(first, second);
+        assertEquals(1, loads.get());
+        assertEquals(1, count("trading.catalog.cache.hits", "kind", "product"));
+        assertEquals(1, count("trading.catalog.cache.misses", "kind", "product"));
+    }
+
+    @Test
+    void testInvalidateDropsProductAndMerchantList() {
+        // 准备
+        cache.product(1L, "A", () -> load(1L, "A"));
+        cache.products(1L, () -> Arrays.asList(load(1L, "A")));
+
+        // 执行
+        cache.invalidate(1L, "A");
+
+        // 验证
+        assertEquals(0, cache.size());
+        assertEquals(2, count("trading.catalog.cache.evictions", "cause", "invalidated"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedEvictedBeyondCapacity() {
+        // 准备
+        cache.product(1L, "A", () -> load(1L, "A"));
+        cache.product(1L, "B", () -> load(1L, "B"));
+        cache.product(1L, "A", () -> load(1L, "A"));
+
+        // 执行 - B 最久未用，被淘汰
+        cache.product(1L, "C", () -> load(1L, "C"));
+        cache.product(1L, "A", () -> load(1L, "A"));
+        cache.product(1L, "B", () -> load(1L, "B"));
+
+        // 验证
+        assertEquals(4, loads.get());
+        assertEquals(2, count("trading.catalog.cache.evictions", "cause", "size"));
+    }
+
+    @Test
+    void testExpiredEntryIsReloaded() {
+        // 准备
+        ReflectionTestUtils.setField(cache, "ttlMs", -1L);
+
+        // 执行
+        cache.product(1L, "A", () -> load(1L, "A"));
+        cache.product(1L, "A", () -> load(1L, "A"));
+
+        // 验证
+        assertEquals(2, loads.get());
+        assertEquals(1, count("trading.catalog.cache.evictions", "cause", "expired"));
+    }
+
+    @Test
+    void testLoadRacingAnInvalidationIsNotCached() {
+        // 执行 - 读取期间发生写入失效，旧值不能写回缓存
+        cache.product(1L, "A", () -> {
+            Product stale = load(1L, "A");
+            cache.invalidate(1L, "A");
+            return stale;
+        });
+        cache.product(1L, "A", () -> load(1L, "A"));
+
+        // 验证
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testMissingProductIsNotCached() {
+        // 执行
+        assertNull(cache.product(1L, "A", () -> null));
+        cache.product(1L, "A", () -> load(1L, "A"));
+
+        // 验证
+        assertEquals(1, loads.get());
+        assertEquals(2, count("trading.catalog.cache.misses", "kind", "product"));
+    }
+
+    @Test
+    void testProductListsAreCachedPerMerchant() {
+        // 执行
+        List<Product> first = cache.products(1L, () -> Arrays.asList(load(1L, "A"), load(1L, "B")));
+        List<Product> second = cache.products(1L, () -> Arrays.asList(load(1L, "C")));
+        cache.products(2L, () -> Arrays.asList(load(2L, "A")));
+
+        // 验证
+        assertEquals(2, first.size());
+        assertSame(first, second);
+        assertEquals(3, loads.get());
+        assertEquals(1, count("trading.catalog.cache.hits", "kind", "list"));
+    }
+}
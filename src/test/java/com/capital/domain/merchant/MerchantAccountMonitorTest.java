@@ -43,7 +43,8 @@ class MerchantAccountMonitorTest {
             TEST_MERCHANT_ID,
             TEST_ACCOUNT_ID,
             TEST_BALANCE,
-            TEST_CURRENCY
+            TEST_CURRENCY,
+            0L
         );
 
         assertEquals(TEST_MERCHANT_ID, fullMonitor.getMerchantId());
@@ -165,14 +166,16 @@ class MerchantAccountMonitorTest {
             TEST_MERCHANT_ID,
             TEST_ACCOUNT_ID,
             TEST_BALANCE,
-            TEST_CURRENCY
+            TEST_CURRENCY,
+            0L
         );
         
         MerchantAccountMonitor monitor2 = new MerchantAccountMonitor(
             TEST_MERCHANT_ID,
             TEST_ACCOUNT_ID,
             TEST_BALANCE,
-            TEST_CURRENCY
+            TEST_CURRENCY,
+            0L
         );
         
         // 测试相同的值
@@ -92,7 +92,8 @@ class ProductTest {
             "Full Description", 
             new BigDecimal("299.99"), 
             200, 
-            789L
+            789L, 
+            0L
         );
         
         assertEquals(10L, fullProduct.getId());
@@ -308,7 +309,8 @@ class ProductTest {
             "Test Description", 
             new BigDecimal("99.99"), 
             100, 
-            123L
+            123L, 
+            0L
         );
         
         Product differentProduct = new Product(
@@ -318,7 +320,8 @@ class ProductTest {
             "Different", 
             new BigDecimal("199.99"), 
             50, 
-            456L
+            456L, 
+            0L
         );
         
         // 测试相等性
@@ -374,7 +377,8 @@ class ProductTest {
             "Test Description",
             new BigDecimal("49.99"),
             50,
-            999L
+            999L,
+            0L
         );
         
         // 2. 验证初始状态
@@ -123,7 +123,7 @@ class AccountTest {
         BigDecimal dailySales = new BigDecimal("500.00");
         boolean active = true;
         
-        Account account = new Account(id, balance, currency, accountType, dailySales, active);
+        Account account = new Account(id, balance, currency, accountType, dailySales, active, 0L);
         
         assertThat(account.getId()).isEqualTo(id);
         assertThat(account.getBalance()).isEqualTo(balance);
@@ -0,0 +1,170 @@
+package com.capital.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.capital.cache.CatalogCache;
+import com.capital.domain.product.Product;
+import com.capital.scheduler.MerchantActivityTracker;
+import com.capital.scheduler.SettlementInvariantChecker;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class EngineWriteBehindTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private MerchantActivityTracker activityTracker;
+
+    @Mock
+    private SettlementInvariantChecker invariantChecker;
+
+    @InjectMocks
+    private EngineWriteBehind writeBehind;
+
+    private CatalogCache catalogCache;
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        catalogCache = new CatalogCache();
+        ReflectionTestUtils.setField(catalogCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(catalogCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(catalogCache, "ttlMs", 60000L);
+        catalogCache.init();
+        ReflectionTestUtils.setField(writeBehind, "catalogCache", catalogCache);
+
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void testFlush_InvalidatesCachedProductAfterWrite() {
+        // 准备
+        ProductSlot slot = new ProductSlot(product(50));
+        cachedProduct();
+        slot.reduceStock(2);
+        writeBehind.markDirty(slot);
+
+        // 执行
+        writeBehind.flush();
+
+        // 验证 - SQLite 写入后缓存被清除，下次读取重新加载
+        cachedProduct();
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testFlush_FailedWriteKeepsCachedProduct() {
+        // 准备
+        ProductSlot slot = new ProductSlot(product(50));
+        cachedProduct();
+        slot.reduceStock(2);
+        writeBehind.markDirty(slot);
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE products"), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("database is locked"));
+
+        // 执行
+        assertThrows(DataAccessResourceFailureException.class, () -> writeBehind.flush());
+
+        // 验证 - 数据库未更新，缓存仍然有效
+        cachedProduct();
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void testFlush_MarksMerchantActiveAfterWrite() {
+        // 准备
+        MerchantBook book = new MerchantBook(200L, 2000L, new BigDecimal("5000.00"), BigDecimal.ZERO);
+        book.credit(new BigDecimal("200.00"));
+        writeBehind.markDirty(book);
+
+        // 执行
+        writeBehind.flush();
+
+        // 验证 - 销售已写入 SQLite，下次增量结算才处理该商户
+        verify(activityTracker).markActive(200L);
+    }
+
+    @Test
+    void testFlush_ChecksSettlementInvariantAfterWrite() {
+        // 准备
+        MerchantBook book = new MerchantBook(200L, 2000L, new BigDecimal("5000.00"), BigDecimal.ZERO);
+        book.credit(new BigDecimal("200.00"));
+        writeBehind.markDirty(book);
+
+        // 执行
+        writeBehind.flush();
+
+        // 验证 - 引擎不发布 PurchaseCompletedEvent，由写回在提交后检查
+        verify(invariantChecker).checkCommitted(200L, new BigDecimal("5200.00"), new BigDecimal("200.00"));
+    }
+
+    @Test
+    void testFlush_FailedWriteDoesNotMarkMerchantActive() {
+        // 准备
+        MerchantBook book = new MerchantBook(200L, 2000L, new BigDecimal("5000.00"), BigDecimal.ZERO);
+        book.credit(new BigDecimal("200.00"));
+        writeBehind.markDirty(book);
+        when(jdbcTemplate.batchUpdate(startsWith("UPDATE accounts SET balance = balance + ?, daily_sales"), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("database is locked"));
+
+        // 执行
+        assertThrows(DataAccessResourceFailureException.class, () -> writeBehind.flush());
+
+        // 验证 - 结算看不到尚未写入的销售，商户留到下次成功写入后再标记
+        verify(activityTracker, never()).markActive(200L);
+        verify(invariantChecker, never()).checkCommitted(any(), any(), any());
+    }
+
+    private void cachedProduct() {
+        catalogCache.product(200L, "TEST_SKU", () -> {
+            loads.incrementAndGet();
+            return product(50);
+        });
+    }
+
+    private static Product product(int stock) {
+        Product product = new Product();
+        product.setId(300L);
+        product.setSku("TEST_SKU");
+        product.setPrice(new BigDecimal("100.00"));
+        product.setStockQuantity(stock);
+        product.setMerchantId(200L);
+        return product;
+    }
+}
@@ -0,0 +1,347 @@
+package com.capital.engine;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.capital.domain.dto.CheckoutLine;
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.product.Product;
+import com.capital.domain.shared.Account;
+import com.capital.exception.TradingException;
+import com.capital.journal.PurchaseJournal;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class PurchaseEngineTest {
+
+    @Mock
+    private EngineStateLoader stateLoader;
+
+    @Mock
+    private EngineWriteBehind writeBehind;
+
+    @InjectMocks
+    private PurchaseEngine purchaseEngine;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(purchaseEngine, "shardCount", 2);
+        ReflectionTestUtils.setField(purchaseEngine, "ringSize", 1024);
+        ReflectionTestUtils.setField(purchaseEngine, "requestTimeoutMs", 5000L);
+        purchaseEngine.start();
+
+        when(stateLoader.loadUser(100L)).thenAnswer(invocation -> userBalance(100L, "1000.00"));
+        when(stateLoader.loadMerchant(200L)).thenAnswer(invocation -> merchantBook(200L, 50));
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        purchaseEngine.stop();
+    }
+
+    @Test
+    void testPurchase_Success() {
+        PurchaseReceipt receipt = purchaseEngine.purchase(100L, 200L, "TEST_SKU", 2);
+
+        assertEquals(new BigDecimal("200.00"), receipt.getTotalCost());
+        assertEquals(2, receipt.getQuantity());
+        assertEquals(48, receipt.getProduct().getStockQuantity());
+        verify(writeBehind, times(1)).markDirty(any(UserBalance.class));
+        verify(writeBehind, times(1)).markDirty(any(MerchantBook.class));
+        verify(writeBehind, times(1)).markDirty(any(ProductSlot.class));
+    }
+
+    @Test
+    void testPurchase_LoadsStateOnlyOnce() {
+        purchaseEngine.purchase(100L, 200L, "TEST_SKU", 1);
+        purchaseEngine.purchase(100L, 200L, "TEST_SKU", 1);
+
+        verify(stateLoader, times(1)).loadUser(100L);
+        verify(stateLoader, times(1)).loadMerchant(200L);
+    }
+
+    @Test
+    void testPurchase_MerchantNotFound() {
+        when(stateLoader.loadMerchant(999L)).thenReturn(null);
+
+        TradingException exception = assertThrows(TradingException.class,
+                () -> purchaseEngine.purchase(100L, 999L, "TEST_SKU", 1));
+        assertEquals("4001", exception.getCode());
+    }
+
+    @Test
+    void testPurchase_ProductNotFound() {
+        TradingException exception = assertThrows(TradingException.class,
+                () -> purchaseEngine.purchase(100L, 200L, "MISSING", 1));
+        assertEquals("5001", exception.getCode());
+        verify(stateLoader, times(1)).loadProduct(200L, "MISSING");
+    }
+
+    @Test
+    void testPurchase_InsufficientStock() {
+        TradingException exception = assertThrows(TradingException.class,
+                () -> purchaseEngine.purchase(100L, 200L, "TEST_SKU", 51));
+        assertEquals("5003", exception.getCode());
+        verify(writeBehind, never()).markDirty(any(UserBalance.class));
+    }
+
+    @Test
+    void testPurchase_InsufficientBalanceLeavesStockUntouched() {
+        TradingException exception = assertThrows(TradingException.class,
+                () -> purchaseEngine.purchase(100L, 200L, "TEST_SKU", 11));
+        assertEquals("3003", exception.getCode());
+
+        Product product = purchaseEngine.restock(200L, "TEST_SKU", 1);
+        assertEquals(51, product.getStockQuantity());
+    }
+
+    @Test
+    void testPurchase_ConcurrentBuyersNeverOversell() throws Exception {
+        when(stateLoader.loadUser(101L)).thenAnswer(invocation -> userBalance(101L, "100000.00"));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 80; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    purchaseEngine.purchase(101L, 200L, "TEST_SKU", 1);
+                    return true;
+                } catch (TradingException e) {
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get(10, TimeUnit.SECONDS)) {
+                succeeded++;
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(50, succeeded);
+        assertEquals(0, purchaseEngine.restock(200L, "TEST_SKU", 0).getStockQuantity());
+    }
+
+    @Test
+    void testCheckout_AcrossShards() {
+        when(stateLoader.loadMerchant(201L)).thenAnswer(invocation -> merchantBook(201L, 5));
+
+        List<PurchaseReceipt> receipts = purchaseEngine.checkout(100L, Arrays.asList(
+                new CheckoutLine(200L, "TEST_SKU", 2), new CheckoutLine(201L, "TEST_SKU", 3),
+                new CheckoutLine(200L, "TEST_SKU", 1)));
+
+        assertEquals(3, receipts.size());
+        assertEquals(new BigDecimal("200.00"), receipts.get(0).getTotalCost());
+        assertEquals(new BigDecimal("300.00"), receipts.get(1).getTotalCost());
+        assertEquals(2, receipts.get(1).getProduct().getStockQuantity());
+        assertEquals(47, purchaseEngine.restock(200L, "TEST_SKU", 0).getStockQuantity());
+        assertEquals(new BigDecimal("401.00"), purchaseEngine.recharge(100L, BigDecimal.ONE).getBalance());
+        verify(writeBehind, times(2)).markDirty(any(MerchantBook.class));
+    }
+
+    @Test
+    void testCheckout_LaterMerchantFailureReversesEarlierOnes() {
+        when(stateLoader.loadMerchant(201L)).thenAnswer(invocation -> merchantBook(201L, 5));
+
+        TradingException exception = assertThrows(TradingException.class, () -> purchaseEngine.checkout(100L,
+                Arrays.asList(new CheckoutLine(200L, "TEST_SKU", 2), new CheckoutLine(201L, "TEST_SKU", 6))));
+        assertEquals("5003", exception.getCode());
+
+        assertEquals(50, purchaseEngine.restock(200L, "TEST_SKU", 0).getStockQuantity());
+        assertEquals(5, purchaseEngine.restock(201L, "TEST_SKU", 0).getStockQuantity());
+        assertEquals(new BigDecimal("1001.00"), purchaseEngine.recharge(100L, BigDecimal.ONE).getBalance());
+    }
+
+    @Test
+    void testPurchase_TimedOutBeforeStartIsNeverApplied() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(stateLoader.loadMerchant(202L)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return merchantBook(202L, 5);
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // occupies shard 0, which also owns merchant 200
+            Future<Product> blocker = executor.submit(() -> purchaseEngine.restock(202L, "TEST_SKU", 0));
+            verify(stateLoader, timeout(5000)).loadMerchant(202L);
+            ReflectionTestUtils.setField(purchaseEngine, "requestTimeoutMs", 100L);
+
+            TradingException exception = assertThrows(TradingException.class,
+                    () -> purchaseEngine.purchase(100L, 200L, "TEST_SKU", 2));
+            assertEquals("1003", exception.getCode());
+
+            release.countDown();
+            assertEquals(5, blocker.get(5, TimeUnit.SECONDS).getStockQuantity());
+        } finally {
+            executor.shutdownNow();
+        }
+        ReflectionTestUtils.setField(purchaseEngine, "requestTimeoutMs", 5000L);
+        assertEquals(50, purchaseEngine.restock(200L, "TEST_SKU", 0).getStockQuantity());
+        assertEquals(new BigDecimal("1001.00"), purchaseEngine.recharge(100L, BigDecimal.ONE).getBalance());
+    }
+
+    @Test
+    void testPurchase_StartedTaskIsWaitedForPastTimeout() {
+        when(stateLoader.loadMerchant(202L)).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return merchantBook(202L, 5);
+        });
+        ReflectionTestUtils.setField(purchaseEngine, "requestTimeoutMs", 100L);
+
+        PurchaseReceipt receipt = purchaseEngine.purchase(100L, 202L, "TEST_SKU", 2);
+
+        assertEquals(3, receipt.getProduct().getStockQuantity());
+    }
+
+    @Test
+    void testCheckout_SlowMerchantIsReversedWhenLaterOneFails() {
+        when(stateLoader.loadMerchant(202L)).thenAnswer(invocation -> {
+            Thread.sleep(300);
+            return merchantBook(202L, 5);
+        });
+        when(stateLoader.loadMerchant(201L)).thenAnswer(invocation -> merchantBook(201L, 5));
+        ReflectionTestUtils.setField(purchaseEngine, "requestTimeoutMs", 100L);
+
+        TradingException exception = assertThrows(TradingException.class, () -> purchaseEngine.checkout(100L,
+                Arrays.asList(new CheckoutLine(202L, "TEST_SKU", 2), new CheckoutLine(201L, "TEST_SKU", 6))));
+        assertEquals("5003", exception.getCode());
+
+        assertEquals(5, purchaseEngine.restock(202L, "TEST_SKU", 0).getStockQuantity());
+        assertEquals(new BigDecimal("1001.00"), purchaseEngine.recharge(100L, BigDecimal.ONE).getBalance());
+    }
+
+    @Test
+    void testRecharge_FailsWhenJournalIsNotDurable() {
+        PurchaseJournal journal = mock(PurchaseJournal.class);
+        when(journal.awaitDurable(anyLong(), anyLong())).thenReturn(false);
+        ReflectionTestUtils.setField(purchaseEngine, "journal", journal);
+
+        TradingException exception = assertThrows(TradingException.class,
+                () -> purchaseEngine.recharge(100L, BigDecimal.ONE));
+        assertEquals("9999", exception.getCode());
+    }
+
+    @Test
+    void testMerchantSettled_KeepsSalesMadeAfterTheSettledAmount() {
+        MerchantBook book = merchantBook(200L, 50);
+        when(stateLoader.loadMerchant(200L)).thenReturn(book);
+        purchaseEngine.purchase(100L, 200L, "TEST_SKU", 2);
+        purchaseEngine.purchase(100L, 200L, "TEST_SKU", 1);
+
+        // settlement only saw the first sale in SQLite
+        purchaseEngine.onMerchantSettled(
+                new MerchantSettledEvent(200L, 2L, new BigDecimal("5200.00"), new BigDecimal("200.00")));
+        purchaseEngine.restock(200L, "TEST_SKU", 0);
+
+        assertEquals(new BigDecimal("100.00"), book.getDailySales());
+        assertEquals(new BigDecimal("5300.00"), book.getBalance());
+    }
+
+    @Test
+    void testRestock_UnknownSkuReturnsNull() {
+        assertNull(purchaseEngine.restock(200L, "MISSING", 5));
+    }
+
+    @Test
+    void testBulkRestock_AppliesEveryLine() {
+        Map<String, Integer> increments = new LinkedHashMap<>();
+        increments.put("TEST_SKU", 5);
+
+        Map<String, Integer> stock = purchaseEngine.restock(200L, increments);
+
+        assertEquals(55, stock.get("TEST_SKU"));
+        verify(writeBehind, times(1)).markDirty(any(ProductSlot.class));
+    }
+
+    @Test
+    void testBulkRestock_UnknownSkuChangesNothing() {
+        Map<String, Integer> increments = new LinkedHashMap<>();
+        increments.put("TEST_SKU", 5);
+        increments.put("MISSING", 3);
+
+        TradingException exception = assertThrows(TradingException.class,
+                () -> purchaseEngine.restock(200L, increments));
+
+        assertEquals("5001", exception.getCode());
+        assertEquals(50, purchaseEngine.restock(200L, "TEST_SKU", 0).getStockQuantity());
+        verify(writeBehind, times(1)).markDirty(any(ProductSlot.class));
+    }
+
+    @Test
+    void testRecharge_CreditsResidentBalance() {
+        Account account = purchaseEngine.recharge(100L, new BigDecimal("50.00"));
+
+        assertEquals(new BigDecimal("1050.00"), account.getBalance());
+        verify(writeBehind, atLeastOnce()).markDirty(any(UserBalance.class));
+    }
+
+    @Test
+    void testRecharge_RejectsNonPositiveAmount() {
+        assertThrows(IllegalArgumentException.class, () -> purchaseEngine.recharge(100L, BigDecimal.ZERO));
+    }
+
+    @Test
+    void testShardOf_IsStableAndInRange() {
+        assertEquals(purchaseEngine.shardOf(200L), purchaseEngine.shardOf(200L));
+        assertEquals(0, purchaseEngine.shardOf(200L));
+        assertEquals(1, purchaseEngine.shardOf(201L));
+    }
+
+    private static UserBalance userBalance(Long userId, String balance) {
+        Account account = new Account();
+        account.setId(userId + 1000);
+        account.setBalance(new BigDecimal(balance));
+        account.setCurrency("CNY");
+        return new UserBalance(userId, account);
+    }
+
+    private static MerchantBook merchantBook(Long merchantId, int stock) {
+        Product product = new Product();
+        product.setId(300L);
+        product.setSku("TEST_SKU");
+        product.setName("Test Product");
+        product.setPrice(new BigDecimal("100.00"));
+        product.setStockQuantity(stock);
+        product.setMerchantId(merchantId);
+
+        MerchantBook book = new MerchantBook(merchantId, 2L, new BigDecimal("5000.00"), BigDecimal.ZERO);
+        book.putProduct(new ProductSlot(product));
+        return book;
+    }
+}
@@ -0,0 +1,259 @@
+package com.capital.importer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.validation.Validation;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.capital.cache.CatalogCache;
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+import com.capital.repository.MerchantRepository;
+import com.capital.util.LocalIdGenerator;
+import com.capital.util.LocalIdIdentifierGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ProductImporterTest {
+
+    @Mock
+    private MerchantRepository merchantRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private LocalIdGenerator localIdGenerator;
+
+    @Mock
+    private CatalogCache catalogCache;
+
+    @InjectMocks
+    private ProductImporter importer;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(importer, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(importer, "validator",
+                Validation.buildDefaultValidatorFactory().getValidator());
+        ReflectionTestUtils.setField(importer, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(importer, "batchSize", 2);
+        ReflectionTestUtils.setField(importer, "maxReportedRejects", 100);
+        lenient().when(localIdGenerator.maxBlockSize()).thenReturn(Integer.MAX_VALUE);
+        importer.init();
+    }
+
+    @Test
+    void testImportCsv_RejectsExistingDuplicateAndInvalidRows() throws Exception {
+        // 准备
+        when(merchantRepository.existsById(100L)).thenReturn(true);
+        existingSkus("OLD-1");
+        when(localIdGenerator.nextIdBlock(anyInt())).thenReturn(1000L);
+        String csv = "sku,name,description,price,stock_quantity\n"
+                + "A-1,Apple,\"red, sweet\",1.50,10\n"
+                + "OLD-1,Old,,2.00,1\n"
+                + "A-1,Apple again,,1.50,10\n"
+                + "B-1,,,3.00,5\n"
+                + "C-1,Cherry,,abc,5\n";
+
+        // 执行
+        ImportReport report = importer.importProducts(100L, stream(csv), ImportFormat.CSV);
+
+        // 验证
+        assertEquals(5, report.getRows());
+        assertEquals(1, report.getImported());
+        assertEquals(4, report.getRejected());
+        List<ImportReject> rejects = report.getRejects();
+        assertEquals(3, rejects.get(0).getLine());
+        assertEquals(StatusCode.PRODUCT_SKU_EXISTS.getMessage(), rejects.get(0).getReason());
+        assertEquals(4, rejects.get(1).getLine());
+        assertEquals(StatusCode.PRODUCT_SKU_EXISTS.getMessage(), rejects.get(1).getReason());
+        assertTrue(rejects.get(2).getReason().startsWith("name"));
+        assertTrue(rejects.get(3).getReason().startsWith("Unreadable row"));
+        verify(localIdGenerator).nextIdBlock(1);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+        verify(catalogCache).invalidate(100L, null);
+        assertEquals(1.0, meterRegistry.get("trading.import.rows").tag("outcome", "imported").counter().count());
+        assertEquals(4.0, meterRegistry.get("trading.import.rows").tag("outcome", "rejected").counter().count());
+    }
+
+    @Test
+    void testImportCsv_WritesFullBatches() throws Exception {
+        // 准备
+        when(merchantRepository.existsById(100L)).thenReturn(true);
+        when(localIdGenerator.nextIdBlock(anyInt())).thenReturn(1000L, 1002L, 1004L);
+        StringBuilder csv = new StringBuilder("sku,name,price,stockQuantity\n");
+        for (int i = 0; i < 5; i++) {
+            csv.append("S-").append(i).append(",Item ").append(i).append(",1.00,3\n");
+        }
+
+        // 执行
+        ImportReport report = importer.importProducts(100L, stream(csv.toString()), ImportFormat.CSV);
+
+        // 验证
+        assertEquals(5, report.getImported());
+        assertEquals(0, report.getRejected());
+        ArgumentCaptor<BatchPreparedStatementSetter> batches = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), batches.capture());
+        assertEquals(2, batches.getAllValues().get(0).getBatchSize());
+        assertEquals(2, batches.getAllValues().get(1).getBatchSize());
+        assertEquals(1, batches.getAllValues().get(2).getBatchSize());
+        verify(transactionManager, times(3)).commit(any());
+    }
+
+    @Test
+    void testImportNdjson_SkipsMalformedLine() throws Exception {
+        // 准备
+        when(merchantRepository.existsById(100L)).thenReturn(true);
+        when(localIdGenerator.nextIdBlock(anyInt())).thenReturn(1000L);
+        String ndjson = "{\"sku\":\"N-1\",\"name\":\"One\",\"price\":1.25,\"stockQuantity\":4}\n"
+                + "{\"sku\":\"N-2\",\"name\":\n"
+                + "\n"
+                + "{\"sku\":\"N-3\",\"name\":\"Three\",\"price\":2,\"stockQuantity\":0}\n";
+
+        // 执行
+        ImportReport report = importer.importProducts(100L, stream(ndjson), ImportFormat.NDJSON);
+
+        // 验证
+        assertEquals(3, report.getRows());
+        assertEquals(2, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertEquals(2, report.getRejects().get(0).getLine());
+        assertNull(report.getRejects().get(0).getSku());
+    }
+
+    @Test
+    void testImport_RefusedBatchIsRetriedRowByRow() throws Exception {
+        // 准备
+        when(merchantRepository.existsById(100L)).thenReturn(true);
+        when(localIdGenerator.nextIdBlock(anyInt())).thenReturn(1000L);
+        when(jdbcTemplate.batchUpdate(anyString(), any(BatchPreparedStatementSetter.class)))
+                .thenThrow(new DuplicateKeyException("batch"))
+                .thenReturn(new int[] { 1 })
+                .thenThrow(new DuplicateKeyException("row"));
+        String csv = "sku,name,price,stockQuantity\nR-1,One,1.00,1\nR-2,Two,1.00,1\n";
+
+        // 执行
+        ImportReport report = importer.importProducts(100L, stream(csv), ImportFormat.CSV);
+
+        // 验证
+        assertEquals(1, report.getImported());
+        assertEquals(1, report.getRejected());
+        assertEquals("R-2", report.getRejects().get(0).getSku());
+        assertTrue(report.getRejects().get(0).getReason().startsWith("Rejected by database"));
+        verify(jdbcTemplate, times(3)).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+    }
+
+    @Test
+    void testImport_IdsDoNotCollideWithAddedProducts() throws Exception {
+        // 准备 - 导入和JPA保存的商品共用同一个序列
+        LocalIdGenerator ids = new LocalIdGenerator();
+        ReflectionTestUtils.setField(importer, "idGenerator", ids);
+        LocalIdIdentifierGenerator entityIds = new LocalIdIdentifierGenerator();
+        ReflectionTestUtils.setField(entityIds, "localIdGenerator", ids);
+        when(merchantRepository.existsById(100L)).thenReturn(true);
+        Long added = (Long) entityIds.generate(null, null);
+        String csv = "sku,name,price,stockQuantity\nS-1,One,1.00,1\nS-2,Two,1.00,1\n";
+
+        // 执行
+        ImportReport report = importer.importProducts(100L, stream(csv), ImportFormat.CSV);
+        Long addedAfter = (Long) entityIds.generate(null, null);
+
+        // 验证
+        assertEquals(2, report.getImported());
+        ArgumentCaptor<BatchPreparedStatementSetter> batch = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), batch.capture());
+        PreparedStatement ps = mock(PreparedStatement.class);
+        batch.getValue().setValues(ps, 0);
+        batch.getValue().setValues(ps, 1);
+        ArgumentCaptor<Long> imported = ArgumentCaptor.forClass(Long.class);
+        verify(ps, times(2)).setLong(eq(1), imported.capture());
+        Set<Long> allIds = new HashSet<>(imported.getAllValues());
+        allIds.add(added);
+        allIds.add(addedAfter);
+        assertEquals(4, allIds.size());
+    }
+
+    @Test
+    void testImport_MerchantNotFound() {
+        // 准备
+        when(merchantRepository.existsById(999L)).thenReturn(false);
+
+        // 执行 & 验证
+        TradingException exception = assertThrows(TradingException.class,
+                () -> importer.importProducts(999L, stream("sku,name,price,stockQuantity\n"), ImportFormat.CSV));
+        assertEquals(StatusCode.MERCHANT_NOT_FOUND.getCode(), exception.getCode());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(BatchPreparedStatementSetter.class));
+    }
+
+    @Test
+    void testImportCsv_MissingRequiredColumn() {
+        // 准备
+        when(merchantRepository.existsById(100L)).thenReturn(true);
+
+        // 执行 & 验证
+        TradingException exception = assertThrows(TradingException.class,
+                () -> importer.importProducts(100L, stream("sku,name,price\nX,Y,1.00\n"), ImportFormat.CSV));
+        assertEquals(StatusCode.PARAM_VALIDATION_ERROR.getCode(), exception.getCode());
+    }
+
+    private void existingSkus(String... skus) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (String sku : skus) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString(1)).thenReturn(sku);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), eq(100L));
+    }
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,168 @@
+package com.capital.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class PurchaseJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private PurchaseJournal journal;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        file = tempDir.resolve("test.journal");
+        journal = open(1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    @Test
+    void testAppendAndReplayAfterReopen() throws Exception {
+        journal.append(purchase(1L, "900.00", 2L, "100.00", 300L, 49));
+        journal.append(JournalRecord.of(JournalRecordType.RECHARGE, new AccountImage(1L, new BigDecimal("1900.00"))));
+        long end = journal.position();
+        journal.close();
+
+        journal = open(1);
+        List<JournalRecord> records = new ArrayList<>();
+        assertEquals(end, journal.replay(0, records::add));
+        assertEquals(end, journal.position());
+        assertEquals(2, records.size());
+        assertEquals(JournalRecordType.PURCHASE, records.get(0).getType());
+        assertEquals(3, records.get(0).getImages().size());
+
+        RecoveredState state = new RecoveredState();
+        records.forEach(record -> record.applyTo(state));
+        assertEquals(new BigDecimal("1900.00"), state.getAccounts().get(1L).getBalance());
+        assertEquals(new BigDecimal("100.00"), state.getAccounts().get(2L).getDailySales());
+        assertEquals(49, state.getProducts().get(300L));
+    }
+
+    @Test
+    void testAppendDurableAfterSync() {
+        long position = journal.append(purchase(1L, "900.00", 2L, "100.00", 300L, 49));
+        journal.sync();
+        assertTrue(journal.awaitDurable(position, 10));
+        assertEquals(position, journal.durablePosition());
+    }
+
+    @Test
+    void testRecordsRollOverIntoNextRegion() throws Exception {
+        int count = 40000;
+        for (int i = 0; i < count; i++) {
+            journal.append(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(i, i)));
+        }
+        assertTrue(journal.position() > 1024 * 1024);
+        journal.close();
+
+        journal = open(1);
+        List<JournalRecord> records = new ArrayList<>();
+        journal.replay(0, records::add);
+        assertEquals(count, records.size());
+        assertEquals(count - 1, ((ProductImage) records.get(count - 1).getImages().get(0)).getStockQuantity());
+    }
+
+    @Test
+    void testTornTailIsDiscarded() throws Exception {
+        journal.append(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(1L, 10)));
+        long valid = journal.position();
+        journal.append(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(1L, 20)));
+        journal.close();
+        journal = null;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            raf.seek(valid + PurchaseJournal.FRAME_HEADER + 2);
+            raf.write(0x7F);
+        }
+
+        journal = open(1);
+        assertEquals(valid, journal.position());
+        RecoveredState state = new RecoveredState();
+        journal.replay(0, record -> record.applyTo(state));
+        assertEquals(10, state.getProducts().get(1L));
+    }
+
+    @Test
+    void testRolledBackRecordIsSkippedOnReplay() throws Exception {
+        long committed = journal.appendPinned(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(1L, 10)));
+        long rolledBack = journal.appendPinned(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(1L, 20)));
+        journal.append(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(2L, 5)));
+        journal.complete(rolledBack, false);
+        journal.complete(committed, true);
+        journal.close();
+
+        journal = open(1);
+        List<JournalRecord> records = new ArrayList<>();
+        journal.replay(0, records::add);
+        assertEquals(2, records.size());
+        assertEquals(10, ((ProductImage) records.get(0).getImages().get(0)).getStockQuantity());
+        assertEquals(5, ((ProductImage) records.get(1).getImages().get(0)).getStockQuantity());
+    }
+
+    @Test
+    void testUnresolvedRecordIsAbortedOnReopen() throws Exception {
+        journal.append(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(1L, 10)));
+        journal.appendPinned(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(1L, 20)));
+        journal.close();
+
+        journal = open(1);
+        long reopened = journal.position();
+        journal.append(JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(2L, 5)));
+        RecoveredState state = new RecoveredState();
+        journal.replay(0, record -> record.applyTo(state));
+        assertEquals(10, state.getProducts().get(1L));
+        assertEquals(5, state.getProducts().get(2L));
+
+        // the abort marker written on reopen lets a later replay pass the record without buffering
+        List<JournalRecord> records = new ArrayList<>();
+        journal.replay(reopened, records::add);
+        assertEquals(1, records.size());
+    }
+
+    @Test
+    void testSequencedAccountImagesKeepNewest() {
+        RecoveredState state = new RecoveredState();
+        state.applyAccount(1L, new BigDecimal("60.00"), null, 12L);
+        state.applyAccount(1L, new BigDecimal("80.00"), null, 11L);
+        assertEquals(new BigDecimal("60.00"), state.getAccounts().get(1L).getBalance());
+        assertNull(state.getAccounts().get(1L).getDailySales());
+    }
+
+    private PurchaseJournal open(int regionSizeMb) throws Exception {
+        PurchaseJournal opened = new PurchaseJournal();
+        ReflectionTestUtils.setField(opened, "path", file.toString());
+        ReflectionTestUtils.setField(opened, "regionSizeMb", regionSizeMb);
+        ReflectionTestUtils.setField(opened, "syncIntervalMs", 5L);
+        opened.open();
+        return opened;
+    }
+
+    private static JournalRecord purchase(long userAccountId, String userBalance, long merchantAccountId,
+            String dailySales, long productId, int stock) {
+        return JournalRecord.of(JournalRecordType.PURCHASE,
+                new AccountImage(userAccountId, new BigDecimal(userBalance)),
+                new AccountImage(merchantAccountId, new BigDecimal("5100.00"), new BigDecimal(dailySales)),
+                new ProductImage(productId, stock));
+    }
+}
@@ -0,0 +1,107 @@
+package com.capital.journal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class SnapshotStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private SnapshotStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new SnapshotStore();
+        ReflectionTestUtils.setField(store, "dir", tempDir.toString());
+        ReflectionTestUtils.setField(store, "retain", 2);
+        store.open();
+    }
+
+    @Test
+    void testWriteAndLoadLatest() throws Exception {
+        write(100L, "900.00", 49);
+
+        SnapshotStore.Snapshot snapshot = store.loadLatest();
+        assertEquals(100L, snapshot.getPosition());
+        assertEquals(4, snapshot.getEntries());
+        RecoveredState state = snapshot.getState();
+        assertEquals(new BigDecimal("900.00"), state.getAccounts().get(1L).getBalance());
+        assertNull(state.getAccounts().get(1L).getDailySales());
+        assertEquals(new BigDecimal("100.00"), state.getAccounts().get(2L).getDailySales());
+        assertEquals(49, state.getProducts().get(300L));
+        assertEquals(new BigDecimal("50.00"), state.getMonitors().get(7L));
+        // snapshot values came from SQLite, nothing to write back yet
+        assertTrue(state.isEmpty());
+    }
+
+    @Test
+    void testTailReplayOnlyMarksChangedEntries() throws Exception {
+        write(100L, "900.00", 49);
+        RecoveredState state = store.loadLatest().getState();
+
+        JournalRecord.of(JournalRecordType.RESTOCK, new ProductImage(300L, 60)).applyTo(state);
+
+        assertFalse(state.isEmpty());
+        assertEquals(60, state.getProducts().get(300L));
+        assertEquals(1, state.getChangedProducts().size());
+        assertTrue(state.getChangedAccounts().isEmpty());
+    }
+
+    @Test
+    void testCorruptNewestFallsBackToOlder() throws Exception {
+        write(100L, "900.00", 49);
+        Path newest = write(200L, "800.00", 48);
+        try (RandomAccessFile raf = new RandomAccessFile(newest.toFile(), "rw")) {
+            raf.seek(30);
+            raf.write(0x7F);
+        }
+
+        SnapshotStore.Snapshot snapshot = store.loadLatest();
+        assertEquals(100L, snapshot.getPosition());
+        assertEquals(49, snapshot.getState().getProducts().get(300L));
+    }
+
+    @Test
+    void testRetainsNewestSnapshots() throws Exception {
+        write(100L, "900.00", 49);
+        write(200L, "800.00", 48);
+        write(300L, "700.00", 47);
+
+        List<Path> files = store.list();
+        assertEquals(2, files.size());
+        assertEquals(300L, store.loadLatest().getPosition());
+    }
+
+    @Test
+    void testAbandonedWriterLeavesNoSnapshot() throws Exception {
+        try (SnapshotStore.Writer writer = store.begin(100L)) {
+            writer.product(300L, 49);
+        }
+
+        assertNull(store.loadLatest());
+        assertEquals(0, tempDir.toFile().list().length);
+    }
+
+    private Path write(long position, String userBalance, int stock) throws Exception {
+        try (SnapshotStore.Writer writer = store.begin(position)) {
+            writer.account(1L, new BigDecimal(userBalance), null);
+            writer.account(2L, new BigDecimal("1000.00"), new BigDecimal("100.00"));
+            writer.product(300L, stock);
+            writer.monitor(7L, new BigDecimal("50.00"));
+            return writer.commit();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.capital.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+import com.capital.scheduler.SettlementScheduler;
+import com.capital.service.MerchantService;
+import com.capital.service.TransactionService;
+import com.capital.service.UserService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class ServiceMetricsAspectTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ServiceMetricsAspect aspect;
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+
+    @Mock
+    private MethodSignature signature;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StageMetrics stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+        aspect = new ServiceMetricsAspect();
+        ReflectionTestUtils.setField(aspect, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(aspect, "stageMetrics", stageMetrics);
+        lenient().when(joinPoint.getSignature()).thenReturn(signature);
+    }
+
+    private double calls(String method, String outcome, String shard) {
+        return meterRegistry.get("trading.service.calls").tag("method", method).tag("outcome", outcome)
+                .tag("shard", shard).counter().count();
+    }
+
+    @Test
+    void testSuccessIsTaggedWithMerchantShard() throws Throwable {
+        // 准备
+        Object result = new Object();
+        when(signature.getMethod()).thenReturn(
+                TransactionService.class.getMethod("purchase", Long.class, Long.class, String.class, Integer.class));
+        when(signature.getParameterNames()).thenReturn(new String[] { "userId", "merchantId", "sku", "quantity" });
+        when(joinPoint.getArgs()).thenReturn(new Object[] { 100L, 5L, "SKU", 1 });
+        when(joinPoint.proceed()).thenReturn(result);
+
+        // 执行
+        assertSame(result, aspect.measure(joinPoint));
+
+        // 验证 - 只有商户分片作为标签，用户id不出现
+        assertEquals(1.0, calls("TransactionService.purchase(Long,Long,String,Integer)", "SUCCESS", "1"));
+        assertEquals(1L, meterRegistry.get("trading.service.latency").tag("outcome", "SUCCESS").timer().count());
+    }
+
+    @Test
+    void testRejectedCallIsCountedByStatusCode() throws Throwable {
+        // 准备
+        TradingException failure = StatusCode.USER_NOT_FOUND.toException();
+        when(signature.getMethod()).thenReturn(UserService.class.getMethod("recharge", Long.class, BigDecimal.class));
+        when(signature.getParameterNames()).thenReturn(new String[] { "userId", "amount" });
+        when(joinPoint.proceed()).thenThrow(failure);
+
+        // 执行
+        TradingException thrown = assertThrows(TradingException.class, () -> aspect.measure(joinPoint));
+
+        // 验证
+        assertSame(failure, thrown);
+        assertEquals(1.0, calls("UserService.recharge(Long,BigDecimal)", "USER_NOT_FOUND", StageMetrics.NO_SHARD));
+    }
+
+    @Test
+    void testUnexpectedFailureIsCountedAsSystemError() throws Throwable {
+        // 准备
+        when(signature.getMethod()).thenReturn(SettlementScheduler.class.getMethod("dailySettlement"));
+        when(signature.getParameterNames()).thenReturn(new String[0]);
+        when(joinPoint.proceed()).thenThrow(new IllegalStateException("database is locked"));
+
+        // 执行
+        assertThrows(IllegalStateException.class, () -> aspect.measure(joinPoint));
+        assertThrows(IllegalStateException.class, () -> aspect.measure(joinPoint));
+
+        // 验证
+        assertEquals(2.0, calls("SettlementScheduler.dailySettlement()", "SYSTEM_ERROR", StageMetrics.NO_SHARD));
+    }
+
+    @Test
+    void testOverloadsAreTaggedSeparately() throws Throwable {
+        // 准备
+        when(signature.getMethod()).thenReturn(
+                MerchantService.class.getMethod("increaseStock", Long.class, String.class, Integer.class),
+                MerchantService.class.getMethod("increaseStock", Long.class, List.class));
+        when(signature.getParameterNames()).thenReturn(new String[] { "merchantId", "sku", "quantity" },
+                new String[] { "merchantId", "lines" });
+        when(joinPoint.getArgs()).thenReturn(new Object[] { 5L, "SKU", 1 }, new Object[] { 5L, List.of() });
+
+        // 执行
+        aspect.measure(joinPoint);
+        aspect.measure(joinPoint);
+
+        // 验证 - 单个补货和批量补货各自计数
+        assertEquals(1.0, calls("MerchantService.increaseStock(Long,String,Integer)", "SUCCESS", "1"));
+        assertEquals(1.0, calls("MerchantService.increaseStock(Long,List)", "SUCCESS", "1"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.capital.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StageMetricsTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private StageMetrics stageMetrics;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+    }
+
+    private Timer timer(String operation, String stage, String shard) {
+        return meterRegistry.get("trading.stage.latency").tag("operation", operation).tag("stage", stage)
+                .tag("shard", shard).timer();
+    }
+
+    @Test
+    void testEachStageRecordsTimeSinceThePreviousOne() throws InterruptedException {
+        // 准备
+        StageMetrics.Stopwatch stopwatch = stageMetrics.start("purchase", 6L);
+
+        // 执行
+        Thread.sleep(20);
+        stopwatch.stage("user_lookup");
+        stopwatch.stage("save");
+
+        // 验证
+        assertEquals(1L, timer("purchase", "user_lookup", "2").count());
+        assertTrue(timer("purchase", "user_lookup", "2").totalTime(TimeUnit.MILLISECONDS) >= 20);
+        assertTrue(timer("purchase", "save", "2").totalTime(TimeUnit.MILLISECONDS) < 20);
+    }
+
+    @Test
+    void testShardFollowsMerchantId() {
+        // 执行
+        stageMetrics.start("restock", -1L).stage("save");
+        stageMetrics.start("restock", 7L).stage("save");
+        stageMetrics.start("recharge").stage("save");
+
+        // 验证 - 负数id与引擎一致取模
+        assertEquals(2L, timer("restock", "save", "3").count());
+        assertEquals(1L, timer("recharge", "save", StageMetrics.NO_SHARD).count());
+        assertEquals("0", stageMetrics.shardTag(8L));
+        assertEquals(StageMetrics.NO_SHARD, stageMetrics.shardTag(null));
+    }
+}
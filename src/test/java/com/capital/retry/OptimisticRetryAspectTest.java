@@ -0,0 +1,122 @@
+package com.capital.retry;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.persistence.OptimisticLockException;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.capital.domain.shared.Account;
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class OptimisticRetryAspectTest {
+
+    private RetryPolicy retryPolicy;
+    private MeterRegistry meterRegistry;
+    private OptimisticRetryAspect aspect;
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+
+    @Mock
+    private Signature signature;
+
+    @BeforeEach
+    void setUp() {
+        retryPolicy = new RetryPolicy();
+        meterRegistry = new SimpleMeterRegistry();
+        aspect = new OptimisticRetryAspect();
+        ReflectionTestUtils.setField(aspect, "retryPolicy", retryPolicy);
+        ReflectionTestUtils.setField(aspect, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(retryPolicy, "maxAttempts", 3);
+        ReflectionTestUtils.setField(retryPolicy, "initialBackoffMs", 0L);
+        ReflectionTestUtils.setField(retryPolicy, "maxBackoffMs", 0L);
+        lenient().when(joinPoint.getSignature()).thenReturn(signature);
+        lenient().when(signature.toShortString()).thenReturn("UserService.recharge(..)");
+    }
+
+    private static ObjectOptimisticLockingFailureException conflict() {
+        return new ObjectOptimisticLockingFailureException(Account.class, 1L);
+    }
+
+    private double count(String name) {
+        return meterRegistry.get(name).tag("method", "UserService.recharge(..)").counter().count();
+    }
+
+    @Test
+    void testRetriesUntilSuccess() throws Throwable {
+        Object result = new Object();
+        when(joinPoint.proceed()).thenThrow(conflict()).thenThrow(conflict()).thenReturn(result);
+
+        assertSame(result, aspect.retryOnConflict(joinPoint));
+
+        verify(joinPoint, times(3)).proceed();
+        assertEquals(1.0, count("trading.retry.calls"));
+        assertEquals(2.0, count("trading.retry.conflicts"));
+        assertEquals(2.0, count("trading.retry.retries"));
+        assertEquals(0.0, count("trading.retry.exhausted"));
+    }
+
+    @Test
+    void testExhaustedBudgetSurfacesConcurrentModification() throws Throwable {
+        when(joinPoint.proceed()).thenThrow(conflict());
+
+        TradingException exception = assertThrows(TradingException.class, () -> aspect.retryOnConflict(joinPoint));
+
+        assertEquals(StatusCode.CONCURRENT_MODIFICATION.getCode(), exception.getCode());
+        assertTrue(exception.getCause() instanceof ObjectOptimisticLockingFailureException);
+        verify(joinPoint, times(3)).proceed();
+        assertEquals(3.0, count("trading.retry.conflicts"));
+        assertEquals(2.0, count("trading.retry.retries"));
+        assertEquals(1.0, count("trading.retry.exhausted"));
+    }
+
+    @Test
+    void testOtherFailuresAreNotRetried() throws Throwable {
+        when(joinPoint.proceed()).thenThrow(StatusCode.USER_NOT_FOUND.toException());
+
+        TradingException exception = assertThrows(TradingException.class, () -> aspect.retryOnConflict(joinPoint));
+
+        assertEquals(StatusCode.USER_NOT_FOUND.getCode(), exception.getCode());
+        verify(joinPoint, times(1)).proceed();
+        assertEquals(0.0, count("trading.retry.conflicts"));
+    }
+
+    @Test
+    void testWrappedConflictIsDetected() {
+        assertTrue(OptimisticRetryAspect.isConflict(new RuntimeException(new OptimisticLockException())));
+    }
+
+    @Test
+    void testBackoffStaysWithinCeiling() {
+        ReflectionTestUtils.setField(retryPolicy, "initialBackoffMs", 5L);
+        ReflectionTestUtils.setField(retryPolicy, "maxBackoffMs", 100L);
+        for (int attempt = 1; attempt <= 10; attempt++) {
+            long ceiling = Math.min(100L, 5L << (attempt - 1));
+            for (int i = 0; i < 50; i++) {
+                long backoff = retryPolicy.backoffMs(attempt);
+                assertTrue(backoff >= 0 && backoff <= ceiling);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.capital.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.event.PurchaseCompletedEvent;
+import com.capital.domain.shared.SettlementWarn;
+import com.capital.repository.SettlementWarnRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class SettlementInvariantCheckerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private SettlementWarnRepository settlementWarnRepository;
+
+    @InjectMocks
+    private SettlementInvariantChecker checker;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(checker, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(checker, "enabled", true);
+        checker.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        checker.stop();
+    }
+
+    @Test
+    void testOnPurchaseCompleted_InvariantHoldsWithoutDatabaseRead() {
+        // 准备 - 结算后基线为1000
+        checker.onMerchantSettled(
+                new MerchantSettledEvent(1L, 11L, new BigDecimal("1000.00"), new BigDecimal("200.00")));
+
+        // 执行 - 售出200后余额1200，日销售额200
+        checker.onPurchaseCompleted(sale(1L, "1200.00", "200.00"));
+
+        // 验证
+        verifyNoInteractions(jdbcTemplate);
+        verifyNoInteractions(settlementWarnRepository);
+    }
+
+    @Test
+    void testOnPurchaseCompleted_ConfirmedDriftRaisesWarn() {
+        // 准备 - 数据库中的余额同样偏离
+        checker.onMerchantSettled(
+                new MerchantSettledEvent(1L, 11L, new BigDecimal("1000.00"), new BigDecimal("200.00")));
+        state(1L, "1250.00", "200.00", "1000.00");
+        when(settlementWarnRepository.findByMerchantIdIn(Collections.singletonList(1L)))
+                .thenReturn(Collections.emptyList());
+
+        // 执行
+        checker.onPurchaseCompleted(sale(1L, "1250.00", "200.00"));
+
+        // 验证
+        ArgumentCaptor<SettlementWarn> warn = ArgumentCaptor.forClass(SettlementWarn.class);
+        verify(settlementWarnRepository, timeout(5000)).save(warn.capture());
+        assertThat(warn.getValue().getMerchantId()).isEqualTo(1L);
+        assertThat(warn.getValue().getPreBalance()).isEqualByComparingTo("1000.00");
+        assertThat(warn.getValue().getDailySales()).isEqualByComparingTo("200.00");
+        assertThat(meterRegistry.get("trading.settlement.invariant.breaks").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void testCheck_StaleEventIsNotReported() {
+        // 准备 - 事件之后商户已被结算，数据库状态满足不变式
+        state(1L, "1250.00", "0", "1250.00");
+
+        // 执行
+        checker.check(1L);
+
+        // 验证 - 基线更新为数据库中的值
+        verify(settlementWarnRepository, never()).save(any(SettlementWarn.class));
+        checker.onPurchaseCompleted(sale(1L, "1300.00", "50.00"));
+        verify(jdbcTemplate).query(anyString(), ArgumentMatchers.<RowMapper<BigDecimal[]>>any(), eq(1L));
+    }
+
+    @Test
+    void testCheck_ConsistentMerchantRaisesNoWarn() {
+        // 准备 - 数据库中余额变化等于日销售额
+        state(1L, "1200.00", "200.00", "1000.00");
+
+        // 执行
+        checker.check(1L);
+
+        // 验证
+        verify(settlementWarnRepository, never()).save(any(SettlementWarn.class));
+        assertThat(meterRegistry.get("trading.settlement.invariant.breaks").counter().count()).isZero();
+    }
+
+    @Test
+    void testCheck_UpdatesExistingWarnOfMerchant() {
+        // 准备
+        SettlementWarn previous = new SettlementWarn();
+        previous.setMerchantId(1L);
+        state(1L, "900.00", "100.00", "1000.00");
+        when(settlementWarnRepository.findByMerchantIdIn(Collections.singletonList(1L)))
+                .thenReturn(Collections.singletonList(previous));
+
+        // 执行
+        checker.check(1L);
+
+        // 验证
+        verify(settlementWarnRepository).save(previous);
+        assertThat(previous.getBalance()).isEqualByComparingTo("900.00");
+    }
+
+    private void state(Long merchantId, String balance, String dailySales, String preBalance) {
+        List<BigDecimal[]> rows = Collections.singletonList(new BigDecimal[] { new BigDecimal(balance),
+                new BigDecimal(dailySales), new BigDecimal(preBalance) });
+        when(jdbcTemplate.query(anyString(), ArgumentMatchers.<RowMapper<BigDecimal[]>>any(),
+                eq(merchantId))).thenReturn(rows);
+    }
+
+    private static PurchaseCompletedEvent sale(Long merchantId, String balance, String dailySales) {
+        return new PurchaseCompletedEvent(10L, BigDecimal.ONE, merchantId, 11L, new BigDecimal(balance),
+                new BigDecimal(dailySales), 100L, "SKU", 1, 1, BigDecimal.TEN);
+    }
+}
@@ -0,0 +1,185 @@
+package com.capital.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.shared.SettlementRun;
+import com.capital.enums.SettlementRunStatus;
+import com.capital.repository.SettlementRunRepository;
+import com.capital.util.IdGenerator;
+
+@ExtendWith(MockitoExtension.class)
+class SettlementReconcilerTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private SettlementRunRepository runRepository;
+
+    @Mock
+    private IdGenerator idGenerator;
+
+    @InjectMocks
+    private SettlementReconciler reconciler;
+
+    @Test
+    void testReconcile_WarnsAndResetsWithSetBasedStatements() throws Exception {
+        // 准备 - 两个商户，其中一个需要预警
+        when(idGenerator.maxBlockSize()).thenReturn(Integer.MAX_VALUE);
+        slice(Integer.MAX_VALUE, 1, 3L);
+        when(idGenerator.nextIdBlock(1)).thenReturn(500L);
+        lenient().when(jdbcTemplate.update(startsWith("INSERT INTO settlement_warns"), eq(500L), any(Timestamp.class),
+                eq(Long.MIN_VALUE), eq(3L))).thenReturn(1);
+        settledMerchants(new long[] { 1L, 11L }, new long[] { 2L, 12L });
+
+        // 执行
+        SettlementReport report = reconciler.reconcile();
+
+        // 验证 - 先写预警，再按集合更新监控余额和日销售额，整个过程一次提交
+        assertThat(report.getMerchants()).isEqualTo(2);
+        assertThat(report.getWarnings()).isEqualTo(1);
+        assertThat(report.getPartitions()).isEmpty();
+        InOrder order = inOrder(jdbcTemplate, transactionManager);
+        order.verify(jdbcTemplate).update(startsWith("INSERT INTO settlement_warns"), eq(500L), any(Timestamp.class),
+                eq(Long.MIN_VALUE), eq(3L));
+        order.verify(jdbcTemplate).query(startsWith("SELECT m.id"), any(RowCallbackHandler.class));
+        order.verify(jdbcTemplate).update(startsWith("UPDATE merchant_account_monitor"));
+        order.verify(jdbcTemplate).update(startsWith("UPDATE accounts"));
+        order.verify(transactionManager).commit(any());
+        ArgumentCaptor<MerchantSettledEvent> events = ArgumentCaptor.forClass(MerchantSettledEvent.class);
+        verify(eventPublisher, times(2)).publishEvent(events.capture());
+        assertThat(events.getAllValues().get(1).getAccountId()).isEqualTo(12L);
+        ArgumentCaptor<SettlementRun> run = ArgumentCaptor.forClass(SettlementRun.class);
+        verify(runRepository).save(run.capture());
+        assertThat(run.getValue().getStatus()).isEqualTo(SettlementRunStatus.COMPLETED);
+        assertThat(run.getValue().getWarnings()).isEqualTo(1);
+    }
+
+    @Test
+    void testReconcile_NoMismatchSkipsWarnInsert() {
+        // 准备
+        when(idGenerator.maxBlockSize()).thenReturn(Integer.MAX_VALUE);
+        slice(Integer.MAX_VALUE, 0, 0L);
+
+        // 执行
+        SettlementReport report = reconciler.reconcile();
+
+        // 验证
+        assertThat(report.getWarnings()).isZero();
+        verify(idGenerator, never()).nextIdBlock(anyInt());
+        verify(jdbcTemplate, never()).update(startsWith("INSERT INTO settlement_warns"), anyLong(), any(), any(), any());
+        verify(jdbcTemplate).update(startsWith("UPDATE accounts"));
+    }
+
+    @Test
+    void testReconcile_WarnsInSlicesOfOneIdBlock() {
+        // 准备 - 每个id块最多2个，共3个商户需要预警
+        when(idGenerator.maxBlockSize()).thenReturn(2);
+        slice(2, 2, 2L);
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*)"), ArgumentMatchers.<RowMapper<long[]>>any(),
+                eq(2L), eq(2))).thenReturn(new long[] { 1, 5L });
+        when(idGenerator.nextIdBlock(2)).thenReturn(100L);
+        when(idGenerator.nextIdBlock(1)).thenReturn(200L);
+
+        // 执行
+        reconciler.reconcile();
+
+        // 验证 - 每片使用各自的id块，第二片从上一片最后一个商户之后开始
+        verify(jdbcTemplate).update(startsWith("INSERT INTO settlement_warns"), eq(100L), any(Timestamp.class),
+                eq(Long.MIN_VALUE), eq(2L));
+        verify(jdbcTemplate).update(startsWith("INSERT INTO settlement_warns"), eq(200L), any(Timestamp.class),
+                eq(2L), eq(5L));
+    }
+
+    @Test
+    void testReconcile_WarnsOnlyMerchantsBreakingTheInvariant() {
+        // 准备 - 在SQLite上执行真实语句：商户1余额变化等于日销售额，商户2多出50
+        SingleConnectionDataSource dataSource = new SingleConnectionDataSource("jdbc:sqlite::memory:", true);
+        JdbcTemplate sqlite = new JdbcTemplate(dataSource);
+        sqlite.execute("CREATE TABLE accounts (id INTEGER PRIMARY KEY, balance NUMERIC, daily_sales NUMERIC, version INTEGER)");
+        sqlite.execute("CREATE TABLE merchants (id INTEGER PRIMARY KEY, account_id INTEGER)");
+        sqlite.execute("CREATE TABLE merchant_account_monitor (id INTEGER PRIMARY KEY, merchant_id INTEGER,"
+                + " balance NUMERIC, version INTEGER)");
+        sqlite.execute("CREATE TABLE settlement_warns (id INTEGER PRIMARY KEY, merchant_id INTEGER UNIQUE,"
+                + " pre_balance NUMERIC, balance NUMERIC, daily_sales NUMERIC, created_at TIMESTAMP)");
+        sqlite.update("INSERT INTO accounts VALUES (11, 1200.00, 200.00, 0), (12, 1250.00, 200.00, 0)");
+        sqlite.update("INSERT INTO merchants VALUES (1, 11), (2, 12)");
+        sqlite.update("INSERT INTO merchant_account_monitor VALUES (1, 1, 1000.00, 0), (2, 2, 1000.00, 0)");
+        ReflectionTestUtils.setField(reconciler, "jdbcTemplate", sqlite);
+        when(idGenerator.maxBlockSize()).thenReturn(100);
+        when(idGenerator.nextIdBlock(1)).thenReturn(500L);
+
+        try {
+            // 执行
+            SettlementReport report = reconciler.reconcile();
+
+            // 验证 - 一致的商户不产生预警
+            assertThat(report.getWarnings()).isEqualTo(1);
+            List<Long> warned = sqlite.queryForList("SELECT merchant_id FROM settlement_warns", Long.class);
+            assertThat(warned).containsExactly(2L);
+        } finally {
+            dataSource.destroy();
+        }
+    }
+
+    private void slice(int size, long count, long lastId) {
+        when(jdbcTemplate.queryForObject(startsWith("SELECT COUNT(*)"), ArgumentMatchers.<RowMapper<long[]>>any(),
+                eq(Long.MIN_VALUE), eq(size))).thenReturn(new long[] { count, lastId });
+    }
+
+    private void settledMerchants(long[]... rows) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (long[] row : rows) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong(1)).thenReturn(row[0]);
+                when(rs.getLong(2)).thenReturn(row[1]);
+                when(rs.getBigDecimal(3)).thenReturn(BigDecimal.TEN);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+    }
+}
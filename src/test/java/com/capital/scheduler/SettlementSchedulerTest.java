@@ -2,29 +2,56 @@ package com.capital.scheduler;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.capital.domain.event.MerchantSettledEvent;
+import com.capital.domain.event.PurchaseCompletedEvent;
 import com.capital.domain.merchant.Merchant;
 import com.capital.domain.merchant.MerchantAccountMonitor;
 import com.capital.domain.shared.Account;
+import com.capital.domain.shared.SettlementCheckpoint;
+import com.capital.domain.shared.SettlementRun;
 import com.capital.domain.shared.SettlementWarn;
+import com.capital.enums.SettlementRunStatus;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.MerchantRepository;
+import com.capital.repository.SettlementCheckpointRepository;
+import com.capital.repository.SettlementRunRepository;
 import com.capital.repository.SettlementWarnRepository;
+import com.capital.retry.RetryPolicy;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 class SettlementSchedulerTest {
@@ -34,6 +61,30 @@ class SettlementSchedulerTest {
     
     @Mock
     private SettlementWarnRepository settlementWarnRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private RetryPolicy retryPolicy;
+
+    @Mock
+    private MerchantActivityTracker activityTracker;
+
+    @Mock
+    private SettlementRunRepository runRepository;
+
+    @Mock
+    private SettlementCheckpointRepository checkpointRepository;
+
+    @Mock
+    private SettlementReconciler reconciler;
     
     @InjectMocks
     private SettlementScheduler settlementScheduler;
@@ -44,6 +95,12 @@ class SettlementSchedulerTest {
     
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(settlementScheduler, "chunkSize", 500);
+        StageMetrics stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+        ReflectionTestUtils.setField(settlementScheduler, "stageMetrics", stageMetrics);
+
         // 创建正常的商户1
         merchant1 = new Merchant();
         merchant1.setId(1L);
@@ -87,13 +144,13 @@ class SettlementSchedulerTest {
     @Test
     void testDailySettlement_NoMerchants() {
         // 当没有商户时
-        when(merchantRepository.findAll()).thenReturn(Arrays.asList());
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(Arrays.asList());
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
         verify(settlementWarnRepository, times(0)).save(any(SettlementWarn.class));
     }
     
@@ -101,13 +158,13 @@ class SettlementSchedulerTest {
     void testDailySettlement_WithNormalMerchants() {
         // 设置正常商户列表
         List<Merchant> merchants = Arrays.asList(merchant1, merchant2);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
         
         // 验证reset方法被调用
         assertThat(merchant1.getAccount().getDailySales()).isEqualByComparingTo(BigDecimal.ZERO);
@@ -120,20 +177,36 @@ class SettlementSchedulerTest {
             .isEqualByComparingTo(merchant2.getMerchantAccountMonitor().getBalance());
     }
     
+    @Test
+    void testDailySettlement_ConsistentMerchantsRaiseNoWarn() {
+        // 准备 - 余额变化等于日销售额，不变式成立
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(Arrays.asList(merchant1, merchant2));
+
+        // 执行
+        SettlementReport report = settlementScheduler.dailySettlement();
+
+        // 验证
+        assertThat(report.getWarnings()).isZero();
+        verify(settlementWarnRepository, never()).save(any(SettlementWarn.class));
+    }
+
     @Test
     void testDailySettlement_WithMismatchMerchant() {
         // 设置包含不匹配商户的列表
         List<Merchant> merchants = Arrays.asList(merchant1, merchantWithMismatch);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
         
-        // 验证警告被保存
-        verify(settlementWarnRepository, times(1)).save(any(SettlementWarn.class));
+        // 验证只为不匹配的商户保存警告
+        ArgumentCaptor<SettlementWarn> warn = ArgumentCaptor.forClass(SettlementWarn.class);
+        verify(settlementWarnRepository, times(1)).save(warn.capture());
+        assertThat(warn.getValue().getMerchantId()).isEqualTo(3L);
+        assertThat(warn.getValue().getPreBalance()).isEqualByComparingTo("800.00");
         
         // 验证不匹配商户的reset仍然执行
         assertThat(merchantWithMismatch.getAccount().getDailySales()).isEqualByComparingTo(BigDecimal.ZERO);
@@ -145,20 +218,20 @@ class SettlementSchedulerTest {
     void testDailySettlement_AllMismatchMerchants() {
         // 所有商户都不匹配的极端情况
         List<Merchant> merchants = Arrays.asList(merchantWithMismatch);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
     }
     
     @Test
     void testDailySettlement_SettlementWarnCreation() {
         // 测试SettlementWarn对象的创建和属性设置
         List<Merchant> merchants = Arrays.asList(merchantWithMismatch);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 捕获保存的SettlementWarn对象
         SettlementWarn capturedWarn = new SettlementWarn();
@@ -186,13 +259,13 @@ class SettlementSchedulerTest {
         zeroValueMerchant.setMerchantAccountMonitor(monitor);
         
         List<Merchant> merchants = Arrays.asList(zeroValueMerchant);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
         
         // 验证reset后值正确
         assertThat(zeroValueMerchant.getAccount().getDailySales()).isEqualByComparingTo(BigDecimal.ZERO);
@@ -215,13 +288,13 @@ class SettlementSchedulerTest {
         negativeMerchant.setMerchantAccountMonitor(monitor);
         
         List<Merchant> merchants = Arrays.asList(negativeMerchant);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
     }
     
     @Test
@@ -240,20 +313,20 @@ class SettlementSchedulerTest {
         decimalMerchant.setMerchantAccountMonitor(monitor);
         
         List<Merchant> merchants = Arrays.asList(decimalMerchant);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
     }
     
     @Test
     void testDailySettlement_AccountMethodsCalled() {
         // 验证Account的resetDailySales方法被调用
         List<Merchant> merchants = Arrays.asList(merchant1);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 记录初始值
         BigDecimal initialDailySales = merchant1.getAccount().getDailySales(); // 应该是500.00
@@ -272,6 +345,255 @@ class SettlementSchedulerTest {
         assertThat(monitorBalance).isEqualByComparingTo(new BigDecimal("500.00"));
     }
     
+    @Test
+    void testDailySettlement_CommitsPerChunk() {
+        // 准备 - 每块2个商户，共3个商户分两块
+        ReflectionTestUtils.setField(settlementScheduler, "chunkSize", 2);
+        when(merchantRepository.findSettlementChunk(Long.MIN_VALUE, Long.MAX_VALUE, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(merchant1, merchant2));
+        when(merchantRepository.findSettlementChunk(2L, Long.MAX_VALUE, PageRequest.of(0, 2)))
+                .thenReturn(Arrays.asList(merchantWithMismatch));
+
+        // 执行
+        settlementScheduler.dailySettlement();
+
+        // 验证 - 每块加载后刷新、清空持久化上下文并单独提交
+        InOrder order = inOrder(merchantRepository, entityManager, transactionManager);
+        order.verify(merchantRepository).findSettlementChunk(eq(Long.MIN_VALUE), eq(Long.MAX_VALUE), any());
+        order.verify(entityManager).flush();
+        order.verify(entityManager).clear();
+        order.verify(transactionManager).commit(any());
+        order.verify(merchantRepository).findSettlementChunk(eq(2L), eq(Long.MAX_VALUE), any());
+        order.verify(entityManager).flush();
+        order.verify(entityManager).clear();
+        order.verify(transactionManager).commit(any());
+        assertThat(merchantWithMismatch.getAccount().getDailySales()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void testDailySettlement_PartitionsRunInParallel() throws Exception {
+        // 准备 - 两个工作线程，按id边界切分为三个分区
+        ReflectionTestUtils.setField(settlementScheduler, "parallelism", 2);
+        ReflectionTestUtils.setField(settlementScheduler, "partitionCount", 2);
+        settlementScheduler.start();
+        when(merchantRepository.findPartitionBounds(2)).thenReturn(Arrays.<Number>asList(1L, 3L));
+        when(merchantRepository.findSettlementChunk(eq(Long.MIN_VALUE), eq(1L), any()))
+                .thenReturn(Arrays.asList(merchant1));
+        when(merchantRepository.findSettlementChunk(eq(1L), eq(3L), any()))
+                .thenReturn(Arrays.asList(merchant2, merchantWithMismatch));
+        when(merchantRepository.findSettlementChunk(eq(3L), eq(Long.MAX_VALUE), any()))
+                .thenReturn(Arrays.asList());
+
+        try {
+            // 执行
+            SettlementReport report = settlementScheduler.dailySettlement();
+
+            // 验证 - 汇总各分区结果
+            assertThat(report.getPartitions()).hasSize(3);
+            assertThat(report.getMerchants()).isEqualTo(3);
+            assertThat(report.getWarnings()).isEqualTo(1);
+            assertThat(report.getFailed()).isEmpty();
+            assertThat(report.getPartitions().get(1).getMerchants()).isEqualTo(2);
+            verify(checkpointRepository, times(3)).advance(any(), any(Long.class), anyInt(), anyInt(), eq(true));
+            // 运行记录的创建和完成各占一次提交
+            verify(transactionManager, times(5)).commit(any());
+        } finally {
+            settlementScheduler.stop();
+        }
+    }
+
+    @Test
+    void testDailySettlement_RecordsRunAndAdvancesCheckpointWithEachChunk() {
+        // 准备
+        when(merchantRepository.findSettlementChunk(any(), any(), any()))
+                .thenReturn(Arrays.asList(merchant1, merchantWithMismatch));
+
+        // 执行
+        SettlementReport report = settlementScheduler.dailySettlement();
+
+        // 验证 - 检查点与该块在同一事务中推进，运行以完成状态结束
+        assertThat(report.getMerchants()).isEqualTo(2);
+        verify(checkpointRepository).saveAll(any());
+        verify(checkpointRepository).advance(any(), eq(3L), eq(2), eq(1), eq(true));
+        ArgumentCaptor<SettlementRun> run = ArgumentCaptor.forClass(SettlementRun.class);
+        verify(runRepository, times(2)).save(run.capture());
+        assertThat(run.getValue().getStatus()).isEqualTo(SettlementRunStatus.COMPLETED);
+        assertThat(run.getValue().getExecutions()).isEqualTo(1);
+        assertThat(run.getValue().getFinishedAt()).isNotNull();
+    }
+
+    @Test
+    void testDailySettlement_ResumesUnfinishedRunFromCheckpoint() {
+        // 准备 - 上次运行在商户1之后中断
+        SettlementRun unfinished = new SettlementRun();
+        unfinished.setId(7L);
+        unfinished.setStatus(SettlementRunStatus.FAILED);
+        unfinished.setExecutions(1);
+        SettlementCheckpoint checkpoint = new SettlementCheckpoint();
+        checkpoint.setId(70L);
+        checkpoint.setRunId(7L);
+        checkpoint.setAfterId(Long.MIN_VALUE);
+        checkpoint.setUpToId(Long.MAX_VALUE);
+        checkpoint.setLastSettledId(1L);
+        checkpoint.setMerchants(1);
+        SettlementCheckpoint done = new SettlementCheckpoint();
+        done.setPartitionIndex(1);
+        done.setCompleted(true);
+        done.setMerchants(5);
+        when(runRepository.findFirstByStatusInOrderByStartedAtDesc(any())).thenReturn(unfinished);
+        when(checkpointRepository.findByRunIdOrderByPartitionIndexAsc(7L)).thenReturn(Arrays.asList(checkpoint, done));
+        when(merchantRepository.findSettlementChunk(eq(1L), eq(Long.MAX_VALUE), any()))
+                .thenReturn(Arrays.asList(merchant2, merchantWithMismatch));
+
+        // 执行
+        SettlementReport report = settlementScheduler.dailySettlement();
+
+        // 验证 - 只续跑未完成的分区，且从检查点之后继续
+        assertThat(report.getRunId()).isEqualTo(7L);
+        assertThat(report.getPartitions()).hasSize(1);
+        assertThat(report.getMerchants()).isEqualTo(2);
+        verify(merchantRepository, never()).findSettlementChunk(eq(Long.MIN_VALUE), any(), any());
+        verify(checkpointRepository).advance(eq(70L), eq(3L), eq(2), anyInt(), eq(true));
+        verify(checkpointRepository, never()).saveAll(any());
+        verify(activityTracker, never()).drain();
+        assertThat(unfinished.getStatus()).isEqualTo(SettlementRunStatus.COMPLETED);
+        assertThat(unfinished.getExecutions()).isEqualTo(2);
+        assertThat(unfinished.getMerchants()).isEqualTo(6);
+    }
+
+    @Test
+    void testDailySettlement_FailedPartitionLeavesRunFailedAtLastCommittedChunk() {
+        // 准备 - 每块1个商户，第二块失败且不自动重试
+        ReflectionTestUtils.setField(settlementScheduler, "chunkSize", 1);
+        ReflectionTestUtils.setField(settlementScheduler, "partitionAttempts", 1);
+        when(merchantRepository.findSettlementChunk(eq(Long.MIN_VALUE), eq(Long.MAX_VALUE), any()))
+                .thenReturn(Arrays.asList(merchant1));
+        when(merchantRepository.findSettlementChunk(eq(1L), eq(Long.MAX_VALUE), any()))
+                .thenThrow(new IllegalStateException("database is locked"));
+
+        // 执行
+        SettlementReport report = settlementScheduler.dailySettlement();
+
+        // 验证 - 检查点停在已提交的块，运行记为失败以便下次续跑
+        assertThat(report.getFailed()).hasSize(1);
+        assertThat(report.getFailed().get(0).getCursor()).isEqualTo(1L);
+        assertThat(report.getFailed().get(0).getFailure()).contains("database is locked");
+        verify(checkpointRepository, times(1)).advance(any(), eq(1L), eq(1), anyInt(), eq(false));
+        verify(eventPublisher, times(1)).publishEvent(any(MerchantSettledEvent.class));
+        verify(transactionManager, times(1)).rollback(any());
+        ArgumentCaptor<SettlementRun> run = ArgumentCaptor.forClass(SettlementRun.class);
+        verify(runRepository, times(2)).save(run.capture());
+        assertThat(run.getValue().getStatus()).isEqualTo(SettlementRunStatus.FAILED);
+        assertThat(run.getValue().getFailure()).contains("database is locked");
+    }
+
+    @Test
+    void testDailySettlement_SkipsWhilePreviousRunInProgress() throws Exception {
+        // 准备 - 第一次运行阻塞在加载商户上
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Collections.emptyList();
+        });
+        CompletableFuture<SettlementReport> running = CompletableFuture.supplyAsync(settlementScheduler::dailySettlement);
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // 执行
+        SettlementReport overlapping = settlementScheduler.dailySettlement();
+        release.countDown();
+
+        // 验证
+        assertThat(overlapping).isNull();
+        assertThat(running.get(5, TimeUnit.SECONDS)).isNotNull();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
+    }
+
+    @Test
+    void testDailySettlement_UpdatesExistingWarnOfMerchant() {
+        // 准备 - merchant_id 唯一，已有预警的商户应覆盖原记录
+        SettlementWarn previous = new SettlementWarn();
+        previous.setMerchantId(3L);
+        when(merchantRepository.findSettlementChunk(any(), any(), any()))
+                .thenReturn(Arrays.asList(merchantWithMismatch));
+        when(settlementWarnRepository.findByMerchantIdIn(Arrays.asList(3L))).thenReturn(Arrays.asList(previous));
+
+        // 执行
+        settlementScheduler.dailySettlement();
+
+        // 验证
+        verify(settlementWarnRepository, times(1)).save(previous);
+        assertThat(previous.getDailySales()).isEqualByComparingTo(new BigDecimal("500.00"));
+    }
+
+    @Test
+    void testDailySettlement_SetBasedModeDelegatesToReconciler() {
+        // 准备
+        ReflectionTestUtils.setField(settlementScheduler, "setBased", true);
+        SettlementReport reconciled = new SettlementReport(1L, Collections.emptyList(), 3, 1, 5);
+        when(reconciler.reconcile()).thenReturn(reconciled);
+
+        // 执行
+        SettlementReport report = settlementScheduler.dailySettlement();
+
+        // 验证 - 不再逐块加载商户
+        assertThat(report).isSameAs(reconciled);
+        verify(merchantRepository, never()).findSettlementChunk(any(), any(), any());
+        verify(activityTracker).drain();
+    }
+
+    @Test
+    void testDailySettlement_IncrementalVisitsOnlyActiveMerchants() {
+        // 准备 - 启动后第一次为全量扫描，之后只结算有交易的商户
+        MerchantActivityTracker tracker = new MerchantActivityTracker();
+        ReflectionTestUtils.setField(settlementScheduler, "activityTracker", tracker);
+        ReflectionTestUtils.setField(settlementScheduler, "incremental", true);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(Arrays.asList());
+        when(merchantRepository.findSettlementBatch(Arrays.asList(1L, 3L)))
+                .thenReturn(Arrays.asList(merchant1, merchantWithMismatch));
+
+        // 执行
+        settlementScheduler.dailySettlement();
+        tracker.onPurchaseCompleted(new PurchaseCompletedEvent(10L, BigDecimal.ONE, 3L, 30L, BigDecimal.TEN,
+                BigDecimal.TEN, 300L, "SKU", 1, 1, BigDecimal.TEN));
+        tracker.markActive(1L);
+        SettlementReport incremental = settlementScheduler.dailySettlement();
+        SettlementReport idle = settlementScheduler.dailySettlement();
+
+        // 验证
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
+        verify(merchantRepository, times(1)).findSettlementBatch(any());
+        assertThat(incremental.getMerchants()).isEqualTo(2);
+        assertThat(merchantWithMismatch.getAccount().getDailySales()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(idle.getPartitions()).isEmpty();
+
+        // 按需全量扫描
+        tracker.requestFullSweep();
+        settlementScheduler.dailySettlement();
+        verify(merchantRepository, times(2)).findSettlementChunk(any(), any(), any());
+    }
+
+    @Test
+    void testDailySettlement_FullSweepEveryNthIncrementalRun() {
+        // 准备 - 每3次结算做一次全量扫描
+        MerchantActivityTracker tracker = new MerchantActivityTracker();
+        ReflectionTestUtils.setField(settlementScheduler, "activityTracker", tracker);
+        ReflectionTestUtils.setField(settlementScheduler, "incremental", true);
+        ReflectionTestUtils.setField(settlementScheduler, "fullSweepEvery", 3);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(Arrays.asList());
+
+        // 执行 - 启动后的全量扫描，两次空闲的增量结算，然后第三次
+        settlementScheduler.dailySettlement();
+        settlementScheduler.dailySettlement();
+        settlementScheduler.dailySettlement();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
+        settlementScheduler.dailySettlement();
+
+        // 验证
+        verify(merchantRepository, times(2)).findSettlementChunk(any(), any(), any());
+    }
+
     @Test
     void testLoggerInitialization() {
         // 测试日志器初始化（覆盖静态logger字段）
@@ -311,13 +633,13 @@ class SettlementSchedulerTest {
         exactMerchant.setMerchantAccountMonitor(monitor);
         
         List<Merchant> merchants = Arrays.asList(exactMerchant);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
     }
     
     @Test
@@ -348,13 +670,13 @@ class SettlementSchedulerTest {
         mismatch2.setMerchantAccountMonitor(monitor2);
         
         List<Merchant> merchants = Arrays.asList(mismatch1, mismatch2);
-        when(merchantRepository.findAll()).thenReturn(merchants);
+        when(merchantRepository.findSettlementChunk(any(), any(), any())).thenReturn(merchants);
         
         // 执行
         settlementScheduler.dailySettlement();
         
         // 验证
-        verify(merchantRepository, times(1)).findAll();
+        verify(merchantRepository, times(1)).findSettlementChunk(any(), any(), any());
     }
     
     @Test
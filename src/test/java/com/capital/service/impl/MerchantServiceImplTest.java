@@ -2,35 +2,63 @@ package com.capital.service.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import com.capital.cache.CatalogCache;
+import com.capital.domain.dto.IncreaseStockRequest;
+import com.capital.domain.dto.ProductPage;
+import com.capital.domain.event.StockChangedEvent;
 import com.capital.domain.merchant.Merchant;
 import com.capital.domain.product.Product;
 import com.capital.domain.shared.Account;
 import com.capital.enums.AccountType;
+import com.capital.exception.StatusCode;
 import com.capital.exception.TradingException;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.AccountRepository;
 import com.capital.repository.MerchantRepository;
-import com.capital.util.LocalIdGenerator;
+import com.capital.repository.ProductRepository;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 class MerchantServiceImplTest {
@@ -42,11 +70,19 @@ class MerchantServiceImplTest {
     private AccountRepository accountRepository;
 
     @Mock
-    private LocalIdGenerator localIdGenerator;
+    private ProductRepository productRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
 
     @InjectMocks
     private MerchantServiceImpl merchantService;
 
+    private CatalogCache catalogCache;
+
     private Merchant mockMerchant;
     private Product mockProduct;
     private Account mockAccount;
@@ -80,6 +116,18 @@ class MerchantServiceImplTest {
         List<Product> products = new ArrayList<>();
         products.add(mockProduct);
         mockMerchant.setProducts(products);
+
+        catalogCache = new CatalogCache();
+        ReflectionTestUtils.setField(catalogCache, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(catalogCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(catalogCache, "ttlMs", 60000L);
+        catalogCache.init();
+        ReflectionTestUtils.setField(merchantService, "catalogCache", catalogCache);
+
+        StageMetrics stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+        ReflectionTestUtils.setField(merchantService, "stageMetrics", stageMetrics);
     }
 
     // ... 其他测试方法 ...
@@ -205,7 +253,7 @@ class MerchantServiceImplTest {
         product.setMerchantId(999L);
         product.setSku("SKU999");
         
-        when(merchantRepository.findById(999L)).thenReturn(Optional.empty());
+        when(merchantRepository.existsById(999L)).thenReturn(false);
 
         // 执行和验证
         TradingException exception = assertThrows(TradingException.class, () -> {
@@ -220,8 +268,8 @@ class MerchantServiceImplTest {
         assertTrue("4001".equals(code) || "MERCHANT_NOT_FOUND".equals(code) || 
                   (exception.getMessage() != null && exception.getMessage().contains("not found")));
         
-        verify(merchantRepository, times(1)).findById(999L);
-        verify(merchantRepository, never()).save(any());
+        verify(merchantRepository, times(1)).existsById(999L);
+        verify(productRepository, never()).saveAndFlush(any());
     }
 
     @Test
@@ -231,7 +279,8 @@ class MerchantServiceImplTest {
         existingProduct.setMerchantId(1L);
         existingProduct.setSku("SKU001"); // 与已有的SKU相同
         
-        when(merchantRepository.findById(1L)).thenReturn(Optional.of(mockMerchant));
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.existsByMerchantIdAndSku(1L, "SKU001")).thenReturn(true);
 
         // 执行和验证
         TradingException exception = assertThrows(TradingException.class, () -> {
@@ -247,8 +296,365 @@ class MerchantServiceImplTest {
                   (exception.getMessage() != null && exception.getMessage().contains("SKU") || 
                    exception.getMessage().contains("exists")));
         
-        verify(merchantRepository, times(1)).findById(1L);
-        verify(merchantRepository, never()).save(any());
+        verify(productRepository, times(1)).existsByMerchantIdAndSku(1L, "SKU001");
+        verify(merchantRepository, never()).findById(anyLong());
+        verify(productRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void testAddProduct_SavesProductWithoutLoadingMerchant() {
+        // 准备
+        Product product = new Product();
+        product.setMerchantId(1L);
+        product.setSku("SKU002");
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.existsByMerchantIdAndSku(1L, "SKU002")).thenReturn(false);
+        when(productRepository.saveAndFlush(product)).thenReturn(product);
+
+        // 执行
+        Product result = merchantService.addProduct(product);
+
+        // 验证
+        assertEquals(product, result);
+        verify(productRepository, times(1)).saveAndFlush(product);
+        verify(merchantRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void testAddProduct_ConcurrentDuplicateSkuIsRejected() {
+        // 准备 - 检查时SKU尚不存在，保存时被并发添加的同一SKU抢先
+        Product product = new Product();
+        product.setMerchantId(1L);
+        product.setSku("SKU002");
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.existsByMerchantIdAndSku(1L, "SKU002")).thenReturn(false);
+        when(productRepository.saveAndFlush(product))
+                .thenThrow(new DataIntegrityViolationException("UNIQUE constraint failed: products.merchant_id, products.sku"));
+
+        // 执行
+        TradingException exception = assertThrows(TradingException.class, () -> merchantService.addProduct(product));
+
+        // 验证
+        assertEquals(StatusCode.PRODUCT_SKU_EXISTS.getCode(), exception.getCode());
+    }
+
+    @Test
+    void testAddProduct_OtherIntegrityViolationPropagates() {
+        // 准备 - 主键冲突不是SKU重复
+        Product product = new Product();
+        product.setMerchantId(1L);
+        product.setSku("SKU002");
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.existsByMerchantIdAndSku(1L, "SKU002")).thenReturn(false);
+        DataIntegrityViolationException violation = new DataIntegrityViolationException(
+                "could not execute statement",
+                new SQLException("[SQLITE_CONSTRAINT_PRIMARYKEY] A PRIMARY KEY constraint failed "
+                        + "(UNIQUE constraint failed: products.id)", null, 19));
+        when(productRepository.saveAndFlush(product)).thenThrow(violation);
+
+        // 执行和验证
+        assertSame(violation, assertThrows(DataIntegrityViolationException.class,
+                () -> merchantService.addProduct(product)));
+    }
+
+    @Test
+    void testGetProductBySku_UsesIndexedLookup() {
+        // 准备
+        when(productRepository.findByMerchantIdAndSku(1L, "SKU001")).thenReturn(mockProduct);
+
+        // 执行
+        Product result = merchantService.getProductBySku("SKU001", 1L);
+
+        // 验证 - 只按 (merchant_id, sku) 取一行，不加载商户的商品集合
+        assertEquals(mockProduct, result);
+        verify(merchantRepository, never()).findById(anyLong());
+        verify(merchantRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    void testGetProductBySku_ProductNotFound() {
+        // 准备
+        when(productRepository.findByMerchantIdAndSku(1L, "MISSING")).thenReturn(null);
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            merchantService.getProductBySku("MISSING", 1L);
+        });
+        assertEquals("5001", exception.getCode());
+    }
+
+    @Test
+    void testGetProductBySku_MerchantNotFound() {
+        // 准备
+        when(productRepository.findByMerchantIdAndSku(999L, "SKU001")).thenReturn(null);
+        when(merchantRepository.existsById(999L)).thenReturn(false);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            merchantService.getProductBySku("SKU001", 999L);
+        });
+        assertEquals("4001", exception.getCode());
+    }
+
+    @Test
+    void testIncreaseStock_UsesIndexedLookup() {
+        // 准备
+        when(productRepository.findByMerchantIdAndSku(1L, "SKU001")).thenReturn(mockProduct);
+
+        // 执行
+        Product result = merchantService.increaseStock(1L, "SKU001", 5);
+
+        // 验证
+        assertEquals(105, result.getStockQuantity());
+        verify(productRepository, times(1)).save(mockProduct);
+        verify(merchantRepository, never()).findById(anyLong());
+        verify(eventPublisher, times(1)).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void testGetProductBySku_ServedFromCacheUntilStockChanges() {
+        // 准备
+        when(productRepository.findByMerchantIdAndSku(1L, "SKU001")).thenReturn(mockProduct);
+
+        // 执行 - 两次读取只查一次库，补货后再次读取重新查库
+        merchantService.getProductBySku("SKU001", 1L);
+        merchantService.getProductBySku("SKU001", 1L);
+        merchantService.increaseStock(1L, "SKU001", 5);
+        Product result = merchantService.getProductBySku("SKU001", 1L);
+
+        // 验证
+        assertEquals(105, result.getStockQuantity());
+        verify(productRepository, times(3)).findByMerchantIdAndSku(1L, "SKU001");
+    }
+
+    @Test
+    void testFindAllProducts_CachedPerMerchant() {
+        // 准备
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(productRepository.findByMerchantIdOrderByIdAsc(1L)).thenReturn(mockMerchant.getProducts());
+
+        // 执行
+        List<Product> first = merchantService.findAllProducts(1L);
+        List<Product> second = merchantService.findAllProducts(1L);
+
+        // 验证
+        assertEquals(1, first.size());
+        assertEquals(first, second);
+        verify(productRepository, times(1)).findByMerchantIdOrderByIdAsc(1L);
+    }
+
+    @Test
+    void testFindAllProducts_MerchantNotFound() {
+        // 准备
+        when(merchantRepository.existsById(999L)).thenReturn(false);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            merchantService.findAllProducts(999L);
+        });
+        assertEquals("4001", exception.getCode());
+        verify(productRepository, never()).findByMerchantIdOrderByIdAsc(anyLong());
+    }
+
+    private Product product(Long id) {
+        Product product = new Product();
+        product.setId(id);
+        product.setSku("SKU" + id);
+        product.setMerchantId(1L);
+        return product;
+    }
+
+    @Test
+    void testFindProductPage_ReturnsCursorWhenMoreRowsFollow() {
+        // 准备 - 多取一行用于判断是否还有下一页
+        when(productRepository.findByMerchantIdAndIdGreaterThanOrderByIdAsc(1L, 10L, PageRequest.of(0, 3)))
+                .thenReturn(Arrays.asList(product(11L), product(12L), product(13L)));
+
+        // 执行
+        ProductPage page = merchantService.findProductPage(1L, 10L, 2);
+
+        // 验证
+        assertEquals(2, page.getItems().size());
+        assertEquals(12L, page.getNextCursor());
+        verify(merchantRepository, never()).existsById(anyLong());
+    }
+
+    @Test
+    void testFindProductPage_LastPageHasNoCursor() {
+        // 准备
+        when(productRepository.findByMerchantIdAndIdGreaterThanOrderByIdAsc(1L, Long.MIN_VALUE, PageRequest.of(0, 101)))
+                .thenReturn(Arrays.asList(product(11L)));
+
+        // 执行
+        ProductPage page = merchantService.findProductPage(1L, null, 100);
+
+        // 验证
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void testFindProductPage_LimitIsCapped() {
+        // 准备
+        when(productRepository.findByMerchantIdAndIdGreaterThanOrderByIdAsc(1L, 0L, PageRequest.of(0, 501)))
+                .thenReturn(Arrays.asList(product(1L)));
+
+        // 执行
+        merchantService.findProductPage(1L, 0L, 100000);
+
+        // 验证
+        verify(productRepository, times(1)).findByMerchantIdAndIdGreaterThanOrderByIdAsc(1L, 0L, PageRequest.of(0, 501));
+    }
+
+    @Test
+    void testFindProductPage_MerchantNotFound() {
+        // 准备
+        when(productRepository.findByMerchantIdAndIdGreaterThanOrderByIdAsc(anyLong(), anyLong(), any()))
+                .thenReturn(new ArrayList<>());
+        when(merchantRepository.existsById(999L)).thenReturn(false);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            merchantService.findProductPage(999L, null, 10);
+        });
+        assertEquals("4001", exception.getCode());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamProducts_EmitsEveryRow() {
+        // 准备 - 不足一页，只查询一次
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(1L), eq(Long.MIN_VALUE), eq(500)))
+                .thenReturn(Arrays.asList(product(11L), product(12L)));
+
+        // 执行
+        List<Product> streamed = new ArrayList<>();
+        merchantService.streamProducts(1L, streamed::add);
+
+        // 验证
+        assertEquals(2, streamed.size());
+        assertEquals(11L, streamed.get(0).getId());
+        assertEquals(12L, streamed.get(1).getId());
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowMapper.class), any(), any(), any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testStreamProducts_ReadsKeysetPages() {
+        // 准备 - 满页之后从最后一个id继续
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        List<Product> first = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            first.add(product(id));
+        }
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(1L), eq(Long.MIN_VALUE), eq(500)))
+                .thenReturn(first);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class), eq(1L), eq(500L), eq(500)))
+                .thenReturn(Arrays.asList(product(501L)));
+
+        // 执行
+        List<Product> streamed = new ArrayList<>();
+        merchantService.streamProducts(1L, streamed::add);
+
+        // 验证
+        assertEquals(501, streamed.size());
+        assertEquals(501L, streamed.get(500).getId());
+    }
+
+    @Test
+    void testStreamProducts_MerchantNotFound() {
+        // 准备
+        when(merchantRepository.existsById(999L)).thenReturn(false);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            merchantService.streamProducts(999L, product -> { });
+        });
+        assertEquals("4001", exception.getCode());
+        verify(jdbcTemplate, never()).query(anyString(), any(RowMapper.class), any(), any(), any());
+    }
+
+    @Test
+    void testIncreaseStock_UnknownSkuReturnsNull() {
+        // 准备
+        when(productRepository.findByMerchantIdAndSku(1L, "MISSING")).thenReturn(null);
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+
+        // 执行和验证
+        assertEquals(null, merchantService.increaseStock(1L, "MISSING", 5));
+        verify(productRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBulkIncreaseStock_OneBatchUpdateAndStockPerSku() throws Exception {
+        // 准备 - 同一SKU的多行合并为一次增量
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        stockRows(new Object[] { 101L, "SKU002", 23 }, new Object[] { 100L, "SKU001", 115 });
+        List<IncreaseStockRequest> lines = Arrays.asList(new IncreaseStockRequest("SKU001", 10),
+                new IncreaseStockRequest("SKU002", 3), new IncreaseStockRequest("SKU001", 5));
+
+        // 执行
+        Map<String, Integer> stock = merchantService.increaseStock(1L, lines);
+
+        // 验证
+        assertEquals(Arrays.asList("SKU001", "SKU002"), new ArrayList<>(stock.keySet()));
+        assertEquals(115, stock.get("SKU001"));
+        assertEquals(23, stock.get("SKU002"));
+        ArgumentCaptor<Collection<Map.Entry<String, Integer>>> rows = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(anyString(), rows.capture(), eq(2),
+                any(ParameterizedPreparedStatementSetter.class));
+        assertEquals(15, rows.getValue().iterator().next().getValue());
+        verify(productRepository, never()).saveAndFlush(any());
+        verify(eventPublisher, times(2)).publishEvent(any(StockChangedEvent.class));
+    }
+
+    @Test
+    void testBulkIncreaseStock_UnknownSkuFailsRequest() throws Exception {
+        // 准备
+        when(merchantRepository.existsById(1L)).thenReturn(true);
+        stockRows(new Object[] { 100L, "SKU001", 110 });
+        List<IncreaseStockRequest> lines = Arrays.asList(new IncreaseStockRequest("SKU001", 10),
+                new IncreaseStockRequest("MISSING", 3));
+
+        // 执行和验证 - 整个请求失败，事务回滚已执行的行
+        TradingException exception = assertThrows(TradingException.class,
+                () -> merchantService.increaseStock(1L, lines));
+        assertEquals("5001", exception.getCode());
+        verify(eventPublisher, never()).publishEvent(any(StockChangedEvent.class));
+    }
+
+    private void stockRows(Object[]... rows) throws Exception {
+        List<ResultSet> resultSets = new ArrayList<>();
+        for (Object[] row : rows) {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getLong(1)).thenReturn((Long) row[0]);
+            when(rs.getString(2)).thenReturn((String) row[1]);
+            when(rs.getInt(3)).thenReturn((Integer) row[2]);
+            resultSets.add(rs);
+        }
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet rs : resultSets) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class), any());
+    }
+
+    @Test
+    void testBulkIncreaseStock_MerchantNotFound() {
+        // 准备
+        when(merchantRepository.existsById(999L)).thenReturn(false);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class,
+                () -> merchantService.increaseStock(999L, Arrays.asList(new IncreaseStockRequest("SKU001", 1))));
+        assertEquals("4001", exception.getCode());
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), any(Collection.class), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
     }
 
     // 添加一个工具方法来帮助验证异常
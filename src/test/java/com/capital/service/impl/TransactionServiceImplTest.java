@@ -2,39 +2,59 @@ package com.capital.service.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
-import static org.mockito.Mockito.doAnswer;
-import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
-import com.capital.domain.merchant.Merchant;
+import com.capital.cache.CatalogCache;
+import com.capital.domain.dto.CheckoutLine;
+import com.capital.domain.event.PurchaseCompletedEvent;
 import com.capital.domain.product.Product;
 import com.capital.domain.shared.Account;
 import com.capital.domain.user.User;
+import com.capital.exception.StatusCode;
 import com.capital.exception.TradingException;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.AccountRepository;
 import com.capital.repository.MerchantRepository;
+import com.capital.repository.ProductRepository;
 import com.capital.repository.UserRepository;
 
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @ExtendWith(MockitoExtension.class)
 class TransactionServiceImplTest {
 
@@ -47,17 +67,37 @@ class TransactionServiceImplTest {
     @Mock
     private MerchantRepository merchantRepository;
 
+    @Mock
+    private ProductRepository productRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private CatalogCache catalogCache;
+
     @InjectMocks
     private TransactionServiceImpl transactionService;
 
     private User mockUser;
     private Account mockUserAccount;
-    private Merchant mockMerchant;
     private Product mockProduct;
     private Account mockMerchantAccount;
 
+    // 模拟数据库中的行，条件更新直接作用于这些对象
+    private final Map<Long, Account> accounts = new HashMap<>();
+    private final Map<Long, Product> products = new HashMap<>();
+
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        StageMetrics stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+        ReflectionTestUtils.setField(transactionService, "stageMetrics", stageMetrics);
+
         // 初始化用户账户
         mockUserAccount = new Account();
         mockUserAccount.setId(1L);
@@ -82,34 +122,65 @@ class TransactionServiceImplTest {
         mockMerchantAccount.setDailySales(BigDecimal.ZERO);
 
         // 初始化产品
-        mockProduct = new Product();
-        mockProduct.setId(300L);
-        mockProduct.setSku("TEST_SKU");
-        mockProduct.setName("Test Product");
-        mockProduct.setPrice(new BigDecimal("100.00"));
-        mockProduct.setStockQuantity(50);
-        mockProduct.setMerchantId(200L);
+        mockProduct = product(300L, "TEST_SKU", "100.00", 50);
+
+        accounts.put(1L, mockUserAccount);
+        accounts.put(2L, mockMerchantAccount);
+
+        lenient().when(merchantRepository.findAccountIdById(200L)).thenReturn(2L);
+        lenient().when(accountRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(accounts.get(invocation.getArgument(0))));
+        lenient().when(productRepository.findById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(products.get(invocation.getArgument(0))));
+        lenient().when(productRepository.findByMerchantIdAndSkuIn(anyLong(), any())).thenAnswer(invocation -> {
+            Long merchantId = invocation.getArgument(0);
+            Collection<String> skus = invocation.getArgument(1);
+            return products.values().stream()
+                    .filter(p -> merchantId.equals(p.getMerchantId()) && skus.contains(p.getSku()))
+                    .collect(Collectors.toList());
+        });
+        lenient().when(accountRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Account> found = new ArrayList<>();
+            invocation.<Iterable<Long>>getArgument(0).forEach(id -> found.add(accounts.get(id)));
+            return found;
+        });
+        lenient().when(productRepository.findAllById(any())).thenAnswer(invocation -> {
+            List<Product> found = new ArrayList<>();
+            invocation.<Iterable<Long>>getArgument(0).forEach(id -> found.add(products.get(id)));
+            return found;
+        });
+        lenient().when(productRepository.decrementStock(anyLong(), anyInt())).thenAnswer(invocation -> {
+            Product product = products.get(invocation.getArgument(0));
+            Integer quantity = invocation.getArgument(1);
+            return product.reduceStock(quantity) ? 1 : 0;
+        });
+        lenient().when(accountRepository.debit(anyLong(), any(BigDecimal.class))).thenAnswer(invocation -> {
+            Account account = accounts.get(invocation.getArgument(0));
+            return account.deduct(invocation.getArgument(1)) ? 1 : 0;
+        });
+        lenient().when(accountRepository.creditSale(anyLong(), any(BigDecimal.class))).thenAnswer(invocation -> {
+            accounts.get(invocation.<Long>getArgument(0)).addBalance(invocation.getArgument(1));
+            return 1;
+        });
+    }
 
-        // 初始化商户（使用mock对象）
-        mockMerchant = mock(Merchant.class);
-//        when(mockMerchant.getId()).thenReturn(200L);
-//        when(mockMerchant.getAccount()).thenReturn(mockMerchantAccount);
-//        when(mockMerchant.getAccountId()).thenReturn(mockMerchantAccount.getId());
+    private Product product(Long id, String sku, String price, int stock) {
+        Product product = new Product();
+        product.setId(id);
+        product.setSku(sku);
+        product.setName("Product " + sku);
+        product.setPrice(new BigDecimal(price));
+        product.setStockQuantity(stock);
+        product.setMerchantId(200L);
+        products.put(id, product);
+        lenient().when(productRepository.findByMerchantIdAndSku(200L, sku)).thenReturn(product);
+        return product;
     }
 
     @Test
     void testPurchase_Success() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
 
         // 执行
         Map<String, Object> result = transactionService.purchase(100L, 200L, "TEST_SKU", 2);
@@ -129,9 +200,89 @@ class TransactionServiceImplTest {
         assertEquals(new BigDecimal("200.00"), mockMerchantAccount.getDailySales());
 
         verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("200.00"));
+        verify(productRepository, times(1)).decrementStock(300L, 2);
+        verify(accountRepository, times(1)).debit(1L, new BigDecimal("200.00"));
+        verify(accountRepository, times(1)).creditSale(2L, new BigDecimal("200.00"));
+        verify(accountRepository, never()).save(any());
+    }
+
+    @Test
+    void testPurchase_RecordsStageLatencyByMerchantShard() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行
+        transactionService.purchase(100L, 200L, "TEST_SKU", 1);
+
+        // 验证 - 商户200落在分片0
+        for (String stage : Arrays.asList("user_lookup", "merchant_lookup", "sku_lookup", "deduct", "save")) {
+            assertEquals(1L, stageTimer(stage, "0").count(), stage);
+        }
+    }
+
+    @Test
+    void testPurchase_FailedPurchaseRecordsStagesReached() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行
+        assertThrows(TradingException.class, () -> transactionService.purchase(100L, 200L, "MISSING_SKU", 1));
+
+        // 验证
+        assertEquals(1L, stageTimer("merchant_lookup", "0").count());
+        assertNull(stageTimer("sku_lookup", "0"));
+    }
+
+    private Timer stageTimer(String stage, String shard) {
+        return meterRegistry.find("trading.stage.latency").tag("operation", "purchase").tag("stage", stage)
+                .tag("shard", shard).timer();
+    }
+
+    @Test
+    void testPurchase_DoesNotLoadMerchantAggregate() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行
+        transactionService.purchase(100L, 200L, "TEST_SKU", 1);
+
+        // 验证 - 不再加载商户及其商品集合
+        verify(merchantRepository, never()).findById(anyLong());
+        verify(merchantRepository, times(1)).findAccountIdById(200L);
+        verify(productRepository, times(1)).findByMerchantIdAndSku(200L, "TEST_SKU");
+    }
+
+    @Test
+    void testPurchase_InvalidatesCachedProduct() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行
+        transactionService.purchase(100L, 200L, "TEST_SKU", 1);
+
+        // 验证
+        verify(catalogCache, times(1)).invalidate(200L, "TEST_SKU");
+    }
+
+    @Test
+    void testPurchase_PublishesPostImages() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行
+        transactionService.purchase(100L, 200L, "TEST_SKU", 2);
+
+        // 验证 - 事件携带更新后的余额和库存
+        ArgumentCaptor<PurchaseCompletedEvent> captor = ArgumentCaptor.forClass(PurchaseCompletedEvent.class);
+        verify(eventPublisher, times(1)).publishEvent(captor.capture());
+        PurchaseCompletedEvent event = captor.getValue();
+        assertEquals(1L, event.getUserAccountId());
+        assertEquals(new BigDecimal("800.00"), event.getUserBalance());
+        assertEquals(2L, event.getMerchantAccountId());
+        assertEquals(new BigDecimal("5200.00"), event.getMerchantBalance());
+        assertEquals(new BigDecimal("200.00"), event.getMerchantDailySales());
+        assertEquals(300L, event.getProductId());
+        assertEquals(48, event.getStockQuantity());
     }
 
     @Test
@@ -144,12 +295,11 @@ class TransactionServiceImplTest {
             transactionService.purchase(999L, 200L, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
+        assertEquals(StatusCode.USER_NOT_FOUND.getCode(), exception.getCode());
         verify(userRepository, times(1)).findByIdAndActive(999L, true);
-        verify(merchantRepository, never()).findById(anyLong());
-        verify(accountRepository, never()).save(any());
+        verify(merchantRepository, never()).findAccountIdById(anyLong());
+        verify(accountRepository, never()).debit(anyLong(), any());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
     }
 
     @Test
@@ -162,11 +312,10 @@ class TransactionServiceImplTest {
             transactionService.purchase(100L, 200L, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
         assertNotNull(exception.getMessage());
         verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, never()).findById(anyLong());
-        verify(accountRepository, never()).save(any());
+        verify(merchantRepository, never()).findAccountIdById(anyLong());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
@@ -176,7 +325,7 @@ class TransactionServiceImplTest {
         userWithoutAccount.setId(100L);
         userWithoutAccount.setActive(true);
         userWithoutAccount.setAccount(null);
-        
+
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(userWithoutAccount);
 
         // 执行和验证
@@ -184,206 +333,170 @@ class TransactionServiceImplTest {
             transactionService.purchase(100L, 200L, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, never()).findById(anyLong());
-        verify(accountRepository, never()).save(any());
+        assertEquals(StatusCode.ACCOUNT_NOT_FOUND.getCode(), exception.getCode());
+        verify(merchantRepository, never()).findAccountIdById(anyLong());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_MerchantNotFound() {
         // 准备
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(999L)).thenReturn(Optional.empty());
+        when(merchantRepository.findAccountIdById(999L)).thenReturn(null);
 
         // 执行和验证
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 999L, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(999L);
-        verify(accountRepository, never()).save(any());
+        assertEquals(StatusCode.MERCHANT_NOT_FOUND.getCode(), exception.getCode());
+        verify(merchantRepository, times(1)).findAccountIdById(999L);
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_ProductNotFound() {
         // 准备
-        when(mockMerchant.findProductBySku("INVALID_SKU")).thenReturn(null);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
         // 执行和验证 - 使用不存在的SKU
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, "INVALID_SKU", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("INVALID_SKU");
+        assertEquals(StatusCode.PRODUCT_NOT_FOUND.getCode(), exception.getCode());
+        verify(productRepository, times(1)).findByMerchantIdAndSku(200L, "INVALID_SKU");
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_InsufficientStock() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
-        // 执行和验证 - 购买数量超过库存
+        // 执行和验证 - 购买数量超过库存，条件更新影响0行
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, "TEST_SKU", 100);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("TEST_SKU");
+        assertEquals(StatusCode.INSUFFICIENT_STOCK.getCode(), exception.getCode());
+        assertEquals(50, mockProduct.getStockQuantity());
+        verify(productRepository, times(1)).decrementStock(300L, 100);
+        verify(accountRepository, never()).debit(anyLong(), any());
+        verify(accountRepository, never()).creditSale(anyLong(), any());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void testPurchase_StockTakenConcurrently() {
+        // 准备 - 读取时库存充足，但更新前已被其他买家买走
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+        doReturn(0).when(productRepository).decrementStock(300L, 2);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            transactionService.purchase(100L, 200L, "TEST_SKU", 2);
+        });
+
+        assertEquals(StatusCode.INSUFFICIENT_STOCK.getCode(), exception.getCode());
+        assertEquals(new BigDecimal("1000.00"), mockUserAccount.getBalance());
+        verify(accountRepository, never()).debit(anyLong(), any());
+        verify(accountRepository, never()).creditSale(anyLong(), any());
     }
 
     @Test
     void testPurchase_ZeroQuantity() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
         // 执行和验证 - 购买数量为0
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, "TEST_SKU", 0);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("TEST_SKU");
+        assertEquals(StatusCode.INSUFFICIENT_STOCK.getCode(), exception.getCode());
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_NegativeQuantity() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
         // 执行和验证 - 购买数量为负数
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, "TEST_SKU", -1);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("TEST_SKU");
+        assertEquals(StatusCode.INSUFFICIENT_STOCK.getCode(), exception.getCode());
+        assertEquals(50, mockProduct.getStockQuantity());
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_InsufficientBalance() {
         // 准备 - 用户余额不足
         mockUserAccount.setBalance(new BigDecimal("50.00")); // 余额只有50
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
-        // 执行和验证 - 购买2件产品需要200元，但余额只有50
+        // 执行和验证 - 购买2件产品需要200元，但余额只有50，条件扣款影响0行
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("TEST_SKU");
+        assertEquals(StatusCode.INSUFFICIENT_BALANCE.getCode(), exception.getCode());
+        assertEquals(new BigDecimal("50.00"), mockUserAccount.getBalance());
+        verify(accountRepository, times(1)).debit(1L, new BigDecimal("200.00"));
+        verify(accountRepository, never()).creditSale(anyLong(), any());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
     }
 
     @Test
     void testPurchase_NullSku() {
         // 准备
-        when(mockMerchant.findProductBySku(null)).thenReturn(null);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
         // 执行和验证
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, null, 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(mockMerchant, times(1)).findProductBySku(null);
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
+        assertEquals(StatusCode.PRODUCT_NOT_FOUND.getCode(), exception.getCode());
+        verify(productRepository, times(1)).findByMerchantIdAndSku(200L, null);
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_EmptySku() {
         // 准备
-        when(mockMerchant.findProductBySku("")).thenReturn(null);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
         // 执行和验证
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, 200L, "", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(mockMerchant, times(1)).findProductBySku("");
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
+        assertEquals(StatusCode.PRODUCT_NOT_FOUND.getCode(), exception.getCode());
+        verify(productRepository, times(1)).findByMerchantIdAndSku(200L, "");
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_NullQuantity() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
 
         // 执行和验证
-        NullPointerException exception = assertThrows(NullPointerException.class, () -> {
+        assertThrows(NullPointerException.class, () -> {
             transactionService.purchase(100L, 200L, "TEST_SKU", null);
         });
 
-        assertNotNull(exception);
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("TEST_SKU");
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
@@ -393,47 +506,33 @@ class TransactionServiceImplTest {
             transactionService.purchase(null, 200L, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
         assertNotNull(exception.getMessage());
-        
         verify(userRepository, never()).findByIdAndActive(anyLong(), anyBoolean());
-        verify(merchantRepository, never()).findById(anyLong());
-        verify(accountRepository, never()).save(any());
+        verify(merchantRepository, never()).findAccountIdById(anyLong());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_NullMerchantId() {
         // 准备
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+        when(merchantRepository.findAccountIdById(null)).thenReturn(null);
 
         // 执行和验证
         TradingException exception = assertThrows(TradingException.class, () -> {
             transactionService.purchase(100L, null, "TEST_SKU", 2);
         });
 
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
+        assertEquals(StatusCode.MERCHANT_NOT_FOUND.getCode(), exception.getCode());
         verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, never()).findById(anyLong());
-        verify(accountRepository, never()).save(any());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
 
     @Test
     void testPurchase_ExactBalance() {
         // 准备 - 用户余额正好等于总价
         mockUserAccount.setBalance(new BigDecimal("200.00"));
-        
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
 
         // 执行
         Map<String, Object> result = transactionService.purchase(100L, 200L, "TEST_SKU", 2);
@@ -445,26 +544,12 @@ class TransactionServiceImplTest {
         assertEquals(48, mockProduct.getStockQuantity());
         assertEquals(new BigDecimal("5200.00"), mockMerchantAccount.getBalance());
         assertEquals(new BigDecimal("200.00"), mockMerchantAccount.getDailySales());
-
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("200.00"));
     }
 
     @Test
     void testPurchase_SingleItem() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
 
         // 执行 - 购买1件
         Map<String, Object> result = transactionService.purchase(100L, 200L, "TEST_SKU", 1);
@@ -477,26 +562,13 @@ class TransactionServiceImplTest {
         assertEquals(49, mockProduct.getStockQuantity()); // 50 - 1
         assertEquals(new BigDecimal("5100.00"), mockMerchantAccount.getBalance()); // 5000 + 100
         assertEquals(new BigDecimal("100.00"), mockMerchantAccount.getDailySales());
-
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("100.00"));
     }
 
     @Test
-    void testPurchase_AccountSaveFailure() {
+    void testPurchase_DebitFailure() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenThrow(new RuntimeException("Database error"));
+        doThrow(new RuntimeException("Database error")).when(accountRepository).debit(1L, new BigDecimal("200.00"));
 
         // 执行和验证
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -504,25 +576,15 @@ class TransactionServiceImplTest {
         });
 
         assertEquals("Database error", exception.getMessage());
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("200.00"));
+        verify(productRepository, times(1)).decrementStock(300L, 2);
+        verify(accountRepository, never()).creditSale(anyLong(), any());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
     }
 
     @Test
     void testPurchase_ResultMapStructure() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
         when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
 
         // 执行
         Map<String, Object> result = transactionService.purchase(100L, 200L, "TEST_SKU", 3);
@@ -533,69 +595,17 @@ class TransactionServiceImplTest {
         assertTrue(result.containsKey("totalCost"));
         assertTrue(result.containsKey("quantity"));
         assertTrue(result.containsKey("product"));
-        
+
         assertEquals(new BigDecimal("300.00"), result.get("totalCost"));
         assertEquals(3, result.get("quantity"));
         assertSame(mockProduct, result.get("product"));
     }
 
-    @Test
-    void testPurchase_FailedToReduceStock() {
-        // 准备 - 创建一个会返回false的reduceStock方法的产品
-        Product problematicProduct = new Product() {
-            @Override
-            public boolean reduceStock(Integer quantity) {
-                return false; // 总是返回false，模拟减少库存失败
-            }
-        };
-        problematicProduct.setId(301L);
-        problematicProduct.setSku("PROBLEM_SKU");
-        problematicProduct.setName("Problem Product");
-        problematicProduct.setPrice(new BigDecimal("100.00"));
-        problematicProduct.setStockQuantity(50);
-        problematicProduct.setMerchantId(200L);
-        
-        // 为这个特殊SKU设置返回有问题的产品
-        when(mockMerchant.findProductBySku("PROBLEM_SKU")).thenReturn(problematicProduct);
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-
-        // 执行和验证
-        TradingException exception = assertThrows(TradingException.class, () -> {
-            transactionService.purchase(100L, 200L, "PROBLEM_SKU", 2);
-        });
-
-        assertNotNull(exception);
-        assertNotNull(exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, times(1)).findProductBySku("PROBLEM_SKU");
-    }
-
     @Test
     void testPurchase_WithDecimalPrice() {
         // 准备 - 创建小数价格的产品
-        Product decimalProduct = new Product();
-        decimalProduct.setId(302L);
-        decimalProduct.setSku("DECIMAL_SKU");
-        decimalProduct.setName("Decimal Product");
-        decimalProduct.setPrice(new BigDecimal("19.99"));
-        decimalProduct.setStockQuantity(20);
-        decimalProduct.setMerchantId(200L);
-        
-        when(mockMerchant.findProductBySku("DECIMAL_SKU")).thenReturn(decimalProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
+        Product decimalProduct = product(302L, "DECIMAL_SKU", "19.99", 20);
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
 
         // 执行 - 购买3件小数价格产品
         Map<String, Object> result = transactionService.purchase(100L, 200L, "DECIMAL_SKU", 3);
@@ -609,10 +619,8 @@ class TransactionServiceImplTest {
         assertEquals(new BigDecimal("5059.97"), mockMerchantAccount.getBalance()); // 5000 + 59.97
         assertEquals(new BigDecimal("59.97"), mockMerchantAccount.getDailySales());
 
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("59.97"));
+        verify(accountRepository, times(1)).debit(1L, new BigDecimal("59.97"));
+        verify(accountRepository, times(1)).creditSale(2L, new BigDecimal("59.97"));
     }
 
     @Test
@@ -620,17 +628,7 @@ class TransactionServiceImplTest {
         // 准备 - 购买全部库存
         // 首先增加用户余额，使其足够支付50件商品（100 * 50 = 5000）
         mockUserAccount.setBalance(new BigDecimal("5000.00"));
-        
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
 
         // 执行 - 购买全部50件
         Map<String, Object> result = transactionService.purchase(100L, 200L, "TEST_SKU", 50);
@@ -643,32 +641,12 @@ class TransactionServiceImplTest {
         assertEquals(0, mockProduct.getStockQuantity()); // 50 - 50
         assertEquals(new BigDecimal("10000.00"), mockMerchantAccount.getBalance()); // 5000 + 5000
         assertEquals(new BigDecimal("5000.00"), mockMerchantAccount.getDailySales());
-
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("5000.00"));
     }
 
     @Test
     void testPurchase_MultiplePurchases() {
         // 准备
-        when(mockMerchant.findProductBySku("TEST_SKU")).thenReturn(mockProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
-
-        // 重置产品和账户状态
-        mockProduct.setStockQuantity(50);
-        mockUserAccount.setBalance(new BigDecimal("1000.00"));
-        mockMerchantAccount.setBalance(new BigDecimal("5000.00"));
-        mockMerchantAccount.setDailySales(BigDecimal.ZERO);
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
 
         // 第一次购买
         Map<String, Object> result1 = transactionService.purchase(100L, 200L, "TEST_SKU", 2);
@@ -696,63 +674,33 @@ class TransactionServiceImplTest {
         assertEquals(new BigDecimal("1000.00"), mockMerchantAccount.getDailySales()); // 200 + 300 + 500
 
         verify(userRepository, times(3)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(3)).findById(200L);
-        verify(accountRepository, times(3)).save(mockUserAccount);
-        verify(mockMerchant, times(3)).addBalance(any(BigDecimal.class));
+        verify(productRepository, times(3)).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, times(3)).creditSale(anyLong(), any(BigDecimal.class));
+        verify(eventPublisher, times(3)).publishEvent(any(PurchaseCompletedEvent.class));
     }
 
     @Test
     void testPurchase_ProductWithZeroPrice() {
         // 准备 - 创建免费产品
-        Product freeProduct = new Product();
-        freeProduct.setId(303L);
-        freeProduct.setSku("FREE_SKU");
-        freeProduct.setName("Free Product");
-        freeProduct.setPrice(BigDecimal.ZERO);
-        freeProduct.setStockQuantity(10);
-        freeProduct.setMerchantId(200L);
-        
-        when(mockMerchant.findProductBySku("FREE_SKU")).thenReturn(freeProduct);
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-
-        // 执行和验证 - 购买免费产品会抛出IllegalArgumentException
-        // 因为Account.deduct()要求金额必须为正数
+        product(303L, "FREE_SKU", "0", 10);
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行和验证 - 扣款金额必须为正数
         IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> {
             transactionService.purchase(100L, 200L, "FREE_SKU", 5);
         });
 
         assertEquals("Deduct amount must be positive", exception.getMessage());
-        
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, never()).save(any());
-        verify(mockMerchant, never()).addBalance(any(BigDecimal.class));
-        verify(mockMerchant, times(1)).findProductBySku("FREE_SKU");
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
+        verify(accountRepository, never()).creditSale(anyLong(), any());
     }
 
     @Test
     void testPurchase_ProductWithVerySmallPrice() {
         // 准备 - 创建价格非常小的产品
-        Product smallPriceProduct = new Product();
-        smallPriceProduct.setId(304L);
-        smallPriceProduct.setSku("SMALL_PRICE_SKU");
-        smallPriceProduct.setName("Small Price Product");
-        smallPriceProduct.setPrice(new BigDecimal("0.01")); // 1分钱
-        smallPriceProduct.setStockQuantity(100);
-        smallPriceProduct.setMerchantId(200L);
-        
-        when(mockMerchant.findProductBySku("SMALL_PRICE_SKU")).thenReturn(smallPriceProduct);
-        doAnswer(invocation -> {
-            BigDecimal amount = invocation.getArgument(0);
-            mockMerchantAccount.addBalance(amount);
-            return null;
-        }).when(mockMerchant).addBalance(any(BigDecimal.class));
-        
-        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
-        when(merchantRepository.findById(200L)).thenReturn(Optional.of(mockMerchant));
-        when(accountRepository.save(any(Account.class))).thenReturn(mockUserAccount);
+        Product smallPriceProduct = product(304L, "SMALL_PRICE_SKU", "0.01", 100); // 1分钱
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
 
         // 执行 - 购买100件非常便宜的产品
         Map<String, Object> result = transactionService.purchase(100L, 200L, "SMALL_PRICE_SKU", 100);
@@ -765,10 +713,141 @@ class TransactionServiceImplTest {
         assertEquals(0, smallPriceProduct.getStockQuantity()); // 100 - 100
         assertEquals(new BigDecimal("5001.00"), mockMerchantAccount.getBalance()); // 5000 + 1.00
         assertEquals(new BigDecimal("1.00"), mockMerchantAccount.getDailySales());
+    }
 
-        verify(userRepository, times(1)).findByIdAndActive(100L, true);
-        verify(merchantRepository, times(1)).findById(200L);
-        verify(accountRepository, times(1)).save(mockUserAccount);
-        verify(mockMerchant, times(1)).addBalance(new BigDecimal("1.00"));
+    private Account secondMerchant() {
+        Account account = new Account();
+        account.setId(3L);
+        account.setBalance(new BigDecimal("100.00"));
+        account.setActive(true);
+        account.setCurrency("CNY");
+        account.setAccountType("MERCHANT");
+        account.setDailySales(BigDecimal.ZERO);
+        accounts.put(3L, account);
+        lenient().when(merchantRepository.findAccountIdById(201L)).thenReturn(3L);
+        Product other = product(400L, "OTHER_SKU", "50.00", 10);
+        other.setMerchantId(201L);
+        return account;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testCheckout_MultipleMerchants() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+        Account otherMerchant = secondMerchant();
+        Product second = product(301L, "SECOND_SKU", "10.00", 5);
+
+        // 执行
+        Map<String, Object> result = transactionService.checkout(100L, Arrays.asList(
+                new CheckoutLine(200L, "TEST_SKU", 2),
+                new CheckoutLine(201L, "OTHER_SKU", 1),
+                new CheckoutLine(200L, "SECOND_SKU", 3)));
+
+        // 验证
+        assertEquals(new BigDecimal("280.00"), result.get("totalCost"));
+        List<Map<String, Object>> lines = (List<Map<String, Object>>) result.get("lines");
+        assertEquals(3, lines.size());
+        assertEquals(new BigDecimal("200.00"), lines.get(0).get("totalCost"));
+        assertEquals(new BigDecimal("50.00"), lines.get(1).get("totalCost"));
+        assertEquals(new BigDecimal("30.00"), lines.get(2).get("totalCost"));
+
+        assertEquals(new BigDecimal("720.00"), mockUserAccount.getBalance());
+        assertEquals(48, mockProduct.getStockQuantity());
+        assertEquals(2, second.getStockQuantity());
+        assertEquals(new BigDecimal("5230.00"), mockMerchantAccount.getBalance());
+        assertEquals(new BigDecimal("150.00"), otherMerchant.getBalance());
+
+        // 每个商户只查询一次、只入账一次，用户只扣款一次
+        verify(merchantRepository, times(1)).findAccountIdById(200L);
+        verify(merchantRepository, times(1)).findAccountIdById(201L);
+        verify(productRepository, times(2)).findByMerchantIdAndSkuIn(anyLong(), any());
+        verify(accountRepository, times(1)).debit(1L, new BigDecimal("280.00"));
+        verify(accountRepository, times(1)).creditSale(2L, new BigDecimal("230.00"));
+        verify(accountRepository, times(1)).creditSale(3L, new BigDecimal("50.00"));
+        verify(eventPublisher, times(3)).publishEvent(any(PurchaseCompletedEvent.class));
+    }
+
+    @Test
+    void testCheckout_SameSkuAggregated() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行
+        transactionService.checkout(100L, Arrays.asList(
+                new CheckoutLine(200L, "TEST_SKU", 1),
+                new CheckoutLine(200L, "TEST_SKU", 2)));
+
+        // 验证 - 同一商品合并为一次条件更新
+        assertEquals(47, mockProduct.getStockQuantity());
+        verify(productRepository, times(1)).decrementStock(300L, 3);
+        verify(accountRepository, times(1)).debit(1L, new BigDecimal("300.00"));
+    }
+
+    @Test
+    void testCheckout_AggregatedInsufficientStock() {
+        // 准备 - 单行都不超过库存，合计超过
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            transactionService.checkout(100L, Arrays.asList(
+                    new CheckoutLine(200L, "TEST_SKU", 30),
+                    new CheckoutLine(200L, "TEST_SKU", 30)));
+        });
+
+        assertEquals(StatusCode.INSUFFICIENT_STOCK.getCode(), exception.getCode());
+        assertEquals(50, mockProduct.getStockQuantity());
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+        verify(accountRepository, never()).debit(anyLong(), any());
+    }
+
+    @Test
+    void testCheckout_InsufficientBalance() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+        secondMerchant();
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            transactionService.checkout(100L, Arrays.asList(
+                    new CheckoutLine(200L, "TEST_SKU", 9),
+                    new CheckoutLine(201L, "OTHER_SKU", 3)));
+        });
+
+        assertEquals(StatusCode.INSUFFICIENT_BALANCE.getCode(), exception.getCode());
+        verify(accountRepository, never()).creditSale(anyLong(), any());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void testCheckout_MerchantNotFound() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+        when(merchantRepository.findAccountIdById(999L)).thenReturn(null);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            transactionService.checkout(100L, Arrays.asList(
+                    new CheckoutLine(200L, "TEST_SKU", 1),
+                    new CheckoutLine(999L, "TEST_SKU", 1)));
+        });
+
+        assertEquals(StatusCode.MERCHANT_NOT_FOUND.getCode(), exception.getCode());
+        verify(productRepository, never()).decrementStock(anyLong(), anyInt());
+    }
+
+    @Test
+    void testCheckout_ProductNotFound() {
+        // 准备
+        when(userRepository.findByIdAndActive(100L, true)).thenReturn(mockUser);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> {
+            transactionService.checkout(100L, Arrays.asList(new CheckoutLine(200L, "MISSING_SKU", 1)));
+        });
+
+        assertEquals(StatusCode.PRODUCT_NOT_FOUND.getCode(), exception.getCode());
+        verify(accountRepository, never()).debit(anyLong(), any());
     }
-}
\ No newline at end of file
+}
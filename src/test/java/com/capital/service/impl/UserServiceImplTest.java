@@ -12,14 +12,20 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import com.capital.domain.event.AccountRechargedEvent;
 import com.capital.domain.shared.Account;
 import com.capital.domain.user.User;
 import com.capital.enums.AccountType;
 import com.capital.exception.TradingException;
+import com.capital.metrics.StageMetrics;
 import com.capital.repository.AccountRepository;
 import com.capital.repository.UserRepository;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @ExtendWith(MockitoExtension.class)
 class UserServiceImplTest {
 
@@ -29,6 +35,9 @@ class UserServiceImplTest {
     @Mock
     private AccountRepository accountRepository;
 
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private UserServiceImpl userService;
 
@@ -59,6 +68,11 @@ class UserServiceImplTest {
         testUser.setAccountId(testAccount.getId());
         testUser.setAccount(testAccount);
         testUser.setActive(true);
+
+        StageMetrics stageMetrics = new StageMetrics();
+        ReflectionTestUtils.setField(stageMetrics, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(stageMetrics, "merchantShards", 4);
+        ReflectionTestUtils.setField(userService, "stageMetrics", stageMetrics);
     }
 
     @Test
@@ -78,6 +92,7 @@ class UserServiceImplTest {
         assertEquals(TEST_AMOUNT.add(originalBalance), result.getBalance());
         
         verify(userRepository).findByIdAndActive(TEST_USER_ID, true);
+        verify(eventPublisher).publishEvent(any(AccountRechargedEvent.class));
         verify(userRepository).save(testUser);
     }
 
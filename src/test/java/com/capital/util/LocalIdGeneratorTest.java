@@ -5,6 +5,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -546,4 +549,101 @@ class LocalIdGeneratorTest {
             assertEquals(Long.MAX_VALUE - 5 + i, id);
         }
     }
-}
\ No newline at end of file
+
+    @Test
+    void testNextIdBlockReservesConsecutiveIds() {
+        Long before = idGenerator.nextId("product");
+        long first = idGenerator.nextIdBlock("product", 100);
+        Long after = idGenerator.nextId("product");
+
+        assertEquals(before + 1, first);
+        assertEquals(first + 100, after);
+    }
+
+    @Test
+    void testNextIdBlockRejectsEmptyBlock() {
+        assertThrows(IllegalArgumentException.class, () -> idGenerator.nextIdBlock("product", 0));
+    }
+
+    @Test
+    void testNextIdBlockFromDefaultSequence() {
+        Long before = idGenerator.nextId();
+        long first = idGenerator.nextIdBlock(5);
+        Long after = idGenerator.nextId();
+
+        assertEquals(before + 1, first);
+        assertEquals(first + 5, after);
+    }
+
+    @Test
+    void testNextIdRangeFromDefaultSequence() {
+        Long before = idGenerator.nextId();
+        IdRange range = idGenerator.nextIdRange(3);
+        Long after = idGenerator.nextId();
+
+        assertEquals(before + 1, range.getFirst());
+        assertEquals(before + 3, range.getLast());
+        assertEquals(3, range.getSize());
+        assertEquals(before + 2, range.get(1));
+        assertArrayEquals(new long[] { before + 1, before + 2, before + 3 }, range.toArray());
+        assertTrue(range.contains(before + 3));
+        assertFalse(range.contains(after));
+        assertThrows(IndexOutOfBoundsException.class, () -> range.get(3));
+    }
+
+    @Test
+    void testThreadBlockServesConsecutiveIdsToOneThread() {
+        idGenerator.setThreadBlockSize(4);
+
+        Long id1 = idGenerator.nextId();
+        Long id2 = idGenerator.nextId();
+        long other = idGenerator.nextIdBlock(1);
+
+        assertEquals(10000L, id1);
+        assertEquals(10001L, id2);
+        assertEquals(10004L, other);
+        assertEquals(10002L, idGenerator.nextId());
+        assertEquals(10003L, idGenerator.nextId());
+        assertEquals(10005L, idGenerator.nextId());
+    }
+
+    @Test
+    void testThreadBlockIsDroppedWhenSequenceMoves() {
+        idGenerator.setThreadBlockSize(100);
+        idGenerator.nextId();
+
+        idGenerator.setStartId(50000L);
+
+        assertEquals(50000L, idGenerator.nextId());
+    }
+
+    @Test
+    void testThreadBlockRejectsNegativeSize() {
+        assertThrows(IllegalArgumentException.class, () -> idGenerator.setThreadBlockSize(-1));
+    }
+
+    @Test
+    void testConcurrentThreadBlocksAreUnique() throws InterruptedException {
+        idGenerator.setThreadBlockSize(64);
+        final int threadCount = 8;
+        final int iterations = 1000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < iterations; j++) {
+                    ids.add(idGenerator.nextId());
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(threadCount * iterations, ids.size());
+    }
+}
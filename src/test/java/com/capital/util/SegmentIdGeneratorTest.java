@@ -0,0 +1,186 @@
+package com.capital.util;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SegmentIdGeneratorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private SegmentIdGenerator idGenerator;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(idGenerator, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(idGenerator, "step", 10);
+        ReflectionTestUtils.setField(idGenerator, "prefetchRatio", 0.2);
+        ReflectionTestUtils.setField(idGenerator, "startId", 1000L);
+        ReflectionTestUtils.setField(idGenerator, "preload", Arrays.asList("default"));
+        idGenerator.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        idGenerator.stop();
+    }
+
+    @Test
+    void testIdsAreServedFromConsecutiveSegments() {
+        // 准备
+        segments("default", 1009L, 1019L);
+
+        // 执行
+        long[] ids = new long[12];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idGenerator.nextId();
+        }
+
+        // 验证
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(1000L + i, ids[i]);
+        }
+        verify(jdbcTemplate, times(2)).update(startsWith("INSERT OR IGNORE"), eq("default"), eq(999L), any());
+    }
+
+    @Test
+    void testNextSegmentIsPrefetchedBeforeTheCurrentRunsOut() {
+        // 准备
+        segments("default", 1009L, 1019L);
+
+        // 执行 - 取走9个，剩余1个低于20%
+        for (int i = 0; i < 9; i++) {
+            idGenerator.nextId();
+        }
+
+        // 验证 - 当前段用完之前后台已预取下一段
+        verify(jdbcTemplate, timeout(5000).times(2)).queryForObject(anyString(), eq(Long.class), eq("default"));
+        assertEquals(1009L, idGenerator.nextId());
+        assertEquals(1010L, idGenerator.nextId());
+        assertEquals(9L, idGenerator.remaining("default"));
+        assertEquals(9.0, meterRegistry.get("trading.id.segment.remaining").tag("type", "default").gauge().value());
+        assertEquals(2L, meterRegistry.get("trading.id.segment.refill").tag("type", "default").timer().count());
+    }
+
+    @Test
+    void testBusinessTypesHaveSeparateSegments() {
+        // 准备
+        segments("default", 1009L);
+        segments("product", 1009L);
+
+        // 执行 & 验证
+        assertEquals(1000L, idGenerator.nextId());
+        assertEquals(1000L, idGenerator.nextId("product"));
+        assertEquals(1001L, idGenerator.nextId("product"));
+    }
+
+    @Test
+    void testBlockLargerThanRemainderStartsNextSegment() {
+        // 准备
+        segments("product", 1009L, 1019L);
+        idGenerator.nextIdBlock("product", 8);
+
+        // 执行
+        long first = idGenerator.nextIdBlock("product", 5);
+
+        // 验证
+        assertEquals(1010L, first);
+        assertThrows(IllegalArgumentException.class, () -> idGenerator.nextIdBlock("product", 11));
+    }
+
+    @Test
+    void testRestartContinuesAfterReservedSegments() {
+        // 准备 - 重启前的实例已预留到1019
+        segments("default", 1029L);
+
+        // 执行
+        Long id = idGenerator.nextId();
+
+        // 验证
+        assertEquals(1020L, id);
+    }
+
+    @Test
+    void testFailedRefillIsRetriedOnNextCall() {
+        // 准备
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq("default")))
+                .thenThrow(new IllegalStateException("database is locked"))
+                .thenReturn(1009L);
+
+        // 执行 & 验证
+        assertThrows(IllegalStateException.class, () -> idGenerator.nextId());
+        assertEquals(1000L, idGenerator.nextId());
+    }
+
+    @Test
+    void testTakeInsideTransactionFailsFastWhileRefilling() {
+        // 准备 - 刷新段需要的写锁被当前事务占用
+        CountDownLatch lockReleased = new CountDownLatch(1);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq("default"))).thenAnswer(invocation -> {
+            lockReleased.await(5, TimeUnit.SECONDS);
+            return 1009L;
+        });
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        TradingException exception;
+        try {
+            // 执行
+            exception = assertThrows(TradingException.class, () -> idGenerator.nextId());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+            lockReleased.countDown();
+        }
+
+        // 验证 - 不等待刷新，刷新继续进行供重试使用
+        assertEquals(StatusCode.SYSTEM_BUSY.getCode(), exception.getCode());
+        assertEquals(1000L, idGenerator.nextId());
+        verify(jdbcTemplate, times(1)).queryForObject(anyString(), eq(Long.class), eq("default"));
+    }
+
+    @Test
+    void testPreloadFetchesConfiguredTypes() {
+        // 准备
+        segments("default", 1009L);
+
+        // 执行
+        idGenerator.preload();
+
+        // 验证
+        assertEquals(10L, idGenerator.remaining("default"));
+        assertEquals("SEGMENT", idGenerator.getType());
+        assertEquals(10, idGenerator.maxBlockSize());
+    }
+
+    private void segments(String businessType, Long first, Long... more) {
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class), eq(businessType))).thenReturn(first, more);
+    }
+}
@@ -0,0 +1,141 @@
+package com.capital.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = SnowflakeIdGenerator.EPOCH + 1_000_000L;
+
+    @Test
+    void testIdLayout() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5, () -> NOW);
+
+        long id = generator.nextId();
+
+        assertEquals(1_000_000L, id >>> 22);
+        assertEquals(5L, (id >>> 12) & SnowflakeIdGenerator.MAX_NODE_ID);
+        assertEquals(0L, id & SnowflakeIdGenerator.SEQUENCE_MASK);
+        assertEquals("SNOWFLAKE", generator.getType());
+    }
+
+    @Test
+    void testIdsIncreaseWithinTheSameMillisecond() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, () -> NOW);
+
+        Long id1 = generator.nextId();
+        Long id2 = generator.nextId();
+
+        assertEquals(id1 + 1, id2);
+    }
+
+    @Test
+    void testNodesNeverCollide() {
+        SnowflakeIdGenerator node1 = new SnowflakeIdGenerator(1, () -> NOW);
+        SnowflakeIdGenerator node2 = new SnowflakeIdGenerator(2, () -> NOW);
+        Set<Long> ids = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(ids.add(node1.nextId()));
+            assertTrue(ids.add(node2.nextId()));
+        }
+    }
+
+    @Test
+    void testSequenceOverflowMovesToNextMillisecond() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, () -> NOW);
+        Long last = null;
+
+        for (int i = 0; i <= SnowflakeIdGenerator.SEQUENCE_MASK + 1; i++) {
+            Long id = generator.nextId();
+            if (last != null) {
+                assertTrue(id > last);
+            }
+            last = id;
+        }
+
+        assertEquals(1_000_001L, last >>> 22);
+        assertEquals(0L, last & SnowflakeIdGenerator.SEQUENCE_MASK);
+    }
+
+    @Test
+    void testClockRegressionKeepsIdsIncreasing() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, clock::get);
+
+        Long before = generator.nextId();
+        clock.set(NOW - 5000);
+        Long during = generator.nextId();
+        clock.set(NOW + 10);
+        Long after = generator.nextId();
+
+        assertTrue(during > before);
+        assertTrue(after > during);
+        assertEquals(1_000_000L, during >>> 22);
+    }
+
+    @Test
+    void testNextIdBlockReservesConsecutiveIds() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, () -> NOW);
+
+        Long before = generator.nextId();
+        long first = generator.nextIdBlock(100);
+        Long after = generator.nextId();
+
+        assertEquals(before + 1, first);
+        assertEquals(first + 100, after);
+    }
+
+    @Test
+    void testNextIdBlockNeverSpansMilliseconds() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, () -> NOW);
+        generator.nextIdBlock(4000);
+
+        long first = generator.nextIdBlock(200);
+
+        assertEquals(1_000_001L, first >>> 22);
+        assertEquals(0L, first & SnowflakeIdGenerator.SEQUENCE_MASK);
+    }
+
+    @Test
+    void testNextIdBlockRejectsOversizedBlock() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(0, () -> NOW);
+
+        assertThrows(IllegalArgumentException.class, () -> generator.nextIdBlock(generator.maxBlockSize() + 1));
+        assertThrows(IllegalArgumentException.class, () -> generator.nextIdBlock(0));
+    }
+
+    @Test
+    void testInvalidNodeId() {
+        assertThrows(IllegalStateException.class, () -> new SnowflakeIdGenerator(1024, () -> NOW));
+        assertThrows(IllegalStateException.class, () -> new SnowflakeIdGenerator(-1, () -> NOW));
+    }
+
+    @Test
+    void testConcurrentGenerationIsUnique() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, System::currentTimeMillis);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int t = 0; t < 8; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    ids.add(generator.nextId());
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(80000, ids.size());
+    }
+}
@@ -0,0 +1,219 @@
+package com.capital.write;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.capital.exception.StatusCode;
+import com.capital.exception.TradingException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+class WritePipelineTest {
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private MeterRegistry meterRegistry;
+    private WritePipeline pipeline;
+    private ExecutorService callers;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        meterRegistry = new SimpleMeterRegistry();
+        pipeline = new WritePipeline();
+        ReflectionTestUtils.setField(pipeline, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(pipeline, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 16);
+        ReflectionTestUtils.setField(pipeline, "maxBatchSize", 64);
+        ReflectionTestUtils.setField(pipeline, "maxLingerMs", 0L);
+        ReflectionTestUtils.setField(pipeline, "requestTimeoutMs", 5000L);
+        pipeline.start();
+        callers = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        callers.shutdownNow();
+        pipeline.stop();
+    }
+
+    /**
+     * Occupies the writer thread until the returned latch is released.
+     */
+    private CountDownLatch blockWriter() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        submit(() -> {
+            started.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return release;
+    }
+
+    private <T> Future<T> submit(WriteCommand<T> command) {
+        return callers.submit(() -> {
+            try {
+                return pipeline.execute("command", command);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private void awaitQueued(int depth) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (meterRegistry.get("trading.write.queue.depth").gauge().value() < depth) {
+            assertTrue(System.currentTimeMillis() < deadline, "commands were not queued");
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void testQueuedCommandsShareOneTransaction() throws Exception {
+        // 准备 - 写线程被占用时排队的命令
+        CountDownLatch release = blockWriter();
+        Future<Integer> first = submit(() -> 1);
+        Future<Integer> second = submit(() -> 2);
+        Future<Integer> third = submit(() -> 3);
+        awaitQueued(3);
+
+        // 执行
+        release.countDown();
+
+        // 验证 - 阻塞命令一次提交，三个排队命令合并为一次提交
+        assertEquals(1, first.get(5, TimeUnit.SECONDS));
+        assertEquals(2, second.get(5, TimeUnit.SECONDS));
+        assertEquals(3, third.get(5, TimeUnit.SECONDS));
+        verify(transactionManager, times(2)).commit(any());
+        assertEquals(4, meterRegistry.get("trading.write.batch.size").summary().totalAmount());
+    }
+
+    @Test
+    void testFailingCommandDoesNotFailItsNeighbours() throws Exception {
+        // 准备
+        CountDownLatch release = blockWriter();
+        Future<String> before = submit(() -> "before");
+        Future<String> failing = submit(() -> {
+            throw StatusCode.INSUFFICIENT_BALANCE.toException();
+        });
+        Future<String> after = submit(() -> "after");
+        awaitQueued(3);
+
+        // 执行
+        release.countDown();
+
+        // 验证 - 批次回滚后逐条重跑，只有失败的命令收到异常
+        assertEquals("before", before.get(5, TimeUnit.SECONDS));
+        assertEquals("after", after.get(5, TimeUnit.SECONDS));
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> failing.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof TradingException);
+        assertEquals(StatusCode.INSUFFICIENT_BALANCE.getCode(), ((TradingException) exception.getCause()).getCode());
+        verify(transactionManager, times(2)).rollback(any());
+        assertEquals(1, meterRegistry.get("trading.write.fallbacks").counter().count());
+    }
+
+    @Test
+    void testSingleCommandFailurePropagates() {
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> pipeline.execute("fail", () -> {
+            throw StatusCode.USER_NOT_FOUND.toException();
+        }));
+
+        assertEquals(StatusCode.USER_NOT_FOUND.getCode(), exception.getCode());
+        verify(transactionManager, times(1)).rollback(any());
+        assertEquals(0, meterRegistry.get("trading.write.fallbacks").counter().count());
+    }
+
+    @Test
+    void testFullQueueRejectsWithSystemBusy() throws Exception {
+        // 准备 - 队列容量为1，写线程被占用
+        pipeline.stop();
+        ReflectionTestUtils.setField(pipeline, "queueCapacity", 1);
+        meterRegistry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(pipeline, "meterRegistry", meterRegistry);
+        pipeline.start();
+        CountDownLatch release = blockWriter();
+        Future<Integer> queued = submit(() -> 1);
+        awaitQueued(1);
+
+        // 执行和验证
+        TradingException exception = assertThrows(TradingException.class, () -> pipeline.execute("rejected", () -> 2));
+        assertEquals(StatusCode.SYSTEM_BUSY.getCode(), exception.getCode());
+
+        release.countDown();
+        assertEquals(1, queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTimedOutQueuedCommandIsNeverRun() throws Exception {
+        // 准备 - 写线程被占用，请求超时很短
+        ReflectionTestUtils.setField(pipeline, "requestTimeoutMs", 50L);
+        CountDownLatch release = blockWriter();
+        AtomicBoolean ran = new AtomicBoolean();
+
+        // 执行
+        TradingException exception = assertThrows(TradingException.class,
+                () -> pipeline.execute("late", () -> ran.getAndSet(true)));
+        release.countDown();
+
+        // 验证 - 排队中超时的命令被撤回，之后也不会提交
+        assertEquals(StatusCode.SYSTEM_BUSY.getCode(), exception.getCode());
+        ReflectionTestUtils.setField(pipeline, "requestTimeoutMs", 5000L);
+        assertEquals(1, submit(() -> 1).get(5, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void testStartedCommandIsWaitedForPastTimeout() throws Throwable {
+        // 准备
+        ReflectionTestUtils.setField(pipeline, "requestTimeoutMs", 50L);
+
+        // 执行 - 命令已开始执行，超时后仍等待其结果
+        int result = pipeline.execute("slow", () -> {
+            Thread.sleep(200);
+            return 7;
+        });
+
+        // 验证
+        assertEquals(7, result);
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    void testWriterThreadIsRecognised() throws Throwable {
+        // 执行和验证
+        assertTrue(pipeline.execute("probe", pipeline::isWriterThread));
+        assertEquals(64, meterRegistry.get("trading.write.max.batch.size").gauge().value());
+    }
+}